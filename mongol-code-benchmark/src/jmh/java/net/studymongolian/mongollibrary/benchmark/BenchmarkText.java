@@ -0,0 +1,76 @@
+package net.studymongolian.mongollibrary.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input text shared by the benchmarks
+ */
+final class BenchmarkText {
+
+    static final String SHORT_WORD = "ᠮᠣᠩᠭᠣᠯ"; // MONGGOL
+
+    // BICHIG + YIN + DAGAN + I + ECHE + BAR
+    static final String SUFFIX_CHAIN = "ᠪᠢᠴᠢᠭ ᠦᠨ ᠳᠡᠭᠡᠨ ᠢ ᠡᠴᠡ ᠪᠡᠷ";
+
+    static final String MIXED_TEXT = "ᠮᠣᠩᠭᠣᠯ ᠪᠢᠴᠢᠭ (Mongolian script) 蒙古文 "
+            + "ᠨᠠ‍ᠢᠮᠠ 2018 ᠣᠨ ᠤ ᠰᠠᠷ᠎ᠠ᠂ монгол бичиг! ";
+
+    // about this many chars for the whole document input
+    private static final int DOCUMENT_LENGTH = 100_000;
+
+    private static final String WORD_LIST = "/UnicodeWordTestList.txt";
+
+    private BenchmarkText() {
+    }
+
+    static String get(String name) {
+        switch (name) {
+            case "shortWord":
+                return SHORT_WORD;
+            case "suffixChain":
+                return SUFFIX_CHAIN;
+            case "mixedText":
+                return MIXED_TEXT;
+            case "document":
+                return document();
+            default:
+                throw new IllegalArgumentException("Unknown input: " + name);
+        }
+    }
+
+    // the demo app word list repeated as space separated words
+    static String document() {
+        List<String> words = wordList();
+        StringBuilder builder = new StringBuilder(DOCUMENT_LENGTH + 100);
+        while (builder.length() < DOCUMENT_LENGTH) {
+            for (String word : words) {
+                builder.append(word).append(' ');
+            }
+            builder.append(MIXED_TEXT).append('\n');
+        }
+        return builder.toString();
+    }
+
+    static List<String> wordList() {
+        List<String> words = new ArrayList<>();
+        try (InputStream stream = BenchmarkText.class.getResourceAsStream(WORD_LIST);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            // the first line is a title
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) words.add(line.trim());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + WORD_LIST, e);
+        }
+        return words;
+    }
+}
@@ -0,0 +1,47 @@
+package net.studymongolian.mongollibrary.benchmark;
+
+import net.studymongolian.mongollibrary.MongolCode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Throughput of converting whole strings in both directions.
+ * Run with the gc profiler to see the bytes allocated per conversion.
+ */
+@State(Scope.Thread)
+public class ConversionBenchmark {
+
+    @Param({"shortWord", "suffixChain", "mixedText", "document"})
+    public String input;
+
+    private final MongolCode converter = MongolCode.INSTANCE;
+    private String unicode;
+    private String menksoft;
+    private char[] glyphs;
+
+    @Setup
+    public void setUp() {
+        unicode = BenchmarkText.get(input);
+        menksoft = converter.unicodeToMenksoft(unicode);
+        glyphs = new char[unicode.length()];
+    }
+
+    @Benchmark
+    public String unicodeToMenksoft() {
+        return converter.unicodeToMenksoft(unicode);
+    }
+
+    @Benchmark
+    public int unicodeToMenksoftIntoCharArray() {
+        return converter.unicodeToMenksoft(unicode, 0, unicode.length(), glyphs, 0);
+    }
+
+    @Benchmark
+    public String menksoftToUnicode() {
+        return converter.menksoftToUnicode(menksoft);
+    }
+}
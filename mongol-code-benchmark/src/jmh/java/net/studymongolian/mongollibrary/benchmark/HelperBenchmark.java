@@ -0,0 +1,81 @@
+package net.studymongolian.mongollibrary.benchmark;
+
+import net.studymongolian.mongollibrary.MongolCode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Throughput of the static helper methods that the keyboards and the
+ * suffix candidates call on every key press.
+ */
+@State(Scope.Thread)
+public class HelperBenchmark {
+
+    private String[] words;
+    private MongolCode.Gender[] genders;
+    private char[] lastChars;
+    private String[] textBefore;
+    private String[] textAfter;
+
+    @Setup
+    public void setUp() {
+        List<String> wordList = BenchmarkText.wordList();
+        wordList.add(BenchmarkText.SHORT_WORD);
+        wordList.add(BenchmarkText.SUFFIX_CHAIN);
+        int count = wordList.size();
+        words = wordList.toArray(new String[0]);
+        genders = new MongolCode.Gender[count];
+        lastChars = new char[count];
+        textBefore = new String[count];
+        textAfter = new String[count];
+        for (int i = 0; i < count; i++) {
+            String word = words[i];
+            genders[i] = MongolCode.getWordGender(word);
+            lastChars[i] = word.charAt(word.length() - 1);
+            int middle = word.length() / 2;
+            textBefore[i] = word.substring(0, middle);
+            textAfter[i] = word.substring(middle);
+        }
+    }
+
+    @Benchmark
+    public void getWordGender(Blackhole blackhole) {
+        for (String word : words) {
+            blackhole.consume(MongolCode.getWordGender(word));
+        }
+    }
+
+    @Benchmark
+    public void getSuffixes(Blackhole blackhole) {
+        for (int i = 0; i < words.length; i++) {
+            MongolCode.Gender gender = genders[i];
+            char lastChar = lastChars[i];
+            blackhole.consume(MongolCode.getSuffixYinUnU(gender, lastChar));
+            blackhole.consume(MongolCode.getSuffixTuDu(gender, lastChar));
+            blackhole.consume(MongolCode.getSuffixTaganDagan(gender, lastChar));
+            blackhole.consume(MongolCode.getSuffixTaqiDaqi(gender, lastChar));
+            blackhole.consume(MongolCode.getSuffixYiI(lastChar));
+            blackhole.consume(MongolCode.getSuffixBarIyar(gender, lastChar));
+            blackhole.consume(MongolCode.getSuffixBanIyan(gender, lastChar));
+            blackhole.consume(MongolCode.getSuffixAchaEche(gender));
+            blackhole.consume(MongolCode.getSuffixTaiTei(gender));
+            blackhole.consume(MongolCode.getSuffixUu(gender));
+            blackhole.consume(MongolCode.getSuffixUd(gender));
+            blackhole.consume(MongolCode.getSuffixNugud(gender));
+            blackhole.consume(MongolCode.getSuffixChu(gender));
+        }
+    }
+
+    @Benchmark
+    public void getLocation(Blackhole blackhole) {
+        for (int i = 0; i < words.length; i++) {
+            blackhole.consume(MongolCode.getLocation(textBefore[i], textAfter[i]));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package net.studymongolian.mongollibrary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The horizontal advance of every char in a TrueType font, read straight from
+ * its cmap and hmtx tables. This lets Menksoft glyph text be measured without
+ * an Android Paint, so that it can be done on any thread or in a JVM test.
+ *
+ * Advances are stored in font units per char in the same kind of two level
+ * table that MongolCode uses for char classes. Only the 256 char pages that
+ * the font actually maps take memory. Chars the font doesn't have get the
+ * advance of the missing glyph (glyph 0). Like Paint, the direction and line
+ * separator format controls are always 0 wide, and so are ZWJ and ZWNJ when
+ * the font has no glyph for them.
+ */
+public final class GlyphAdvanceTable {
+
+    private static final int TRUE_TYPE = 0x00010000;
+    private static final int OPEN_TYPE = 0x4F54544F; // "OTTO"
+    private static final int CMAP = 0x636D6170;
+    private static final int HEAD = 0x68656164;
+    private static final int HHEA = 0x68686561;
+    private static final int HMTX = 0x686D7478;
+    private static final int MAXP = 0x6D617870;
+
+    private static final char ZWNJ = '\u200C';
+    private static final char ZWJ = '\u200D';
+    private static final char[] ZERO_WIDTH_FORMAT_CONTROLS = {
+            '\u200E', '\u200F', // LRM, RLM
+            '\u2028', '\u2029', // line and paragraph separators
+            '\u202A', '\u202B', '\u202C', '\u202D', '\u202E' // LRE, RLE, PDF, LRO, RLO
+    };
+
+    private final int unitsPerEm;
+    private final char missingGlyphAdvance;
+    private final char[][] pages;
+
+    private GlyphAdvanceTable(int unitsPerEm, char missingGlyphAdvance, char[][] pages) {
+        this.unitsPerEm = unitsPerEm;
+        this.missingGlyphAdvance = missingGlyphAdvance;
+        this.pages = pages;
+    }
+
+    /**
+     * Reads the font from the stream (which is not closed).
+     */
+    public static GlyphAdvanceTable read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return parse(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /**
+     * Parses the font in font, from its position to its limit.
+     *
+     * @throws IOException if it is not a TrueType/OpenType font with a Unicode cmap
+     */
+    public static GlyphAdvanceTable parse(ByteBuffer font) throws IOException {
+        ByteBuffer data = font.slice();
+        try {
+            return parseTables(data);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("font file is truncated", e);
+        }
+    }
+
+    private static GlyphAdvanceTable parseTables(ByteBuffer data) throws IOException {
+        int version = data.getInt(0);
+        if (version != TRUE_TYPE && version != OPEN_TYPE)
+            throw new IOException("not a TrueType or OpenType font");
+
+        int cmap = -1, head = -1, hhea = -1, hmtx = -1, maxp = -1;
+        int numTables = data.getChar(4);
+        for (int i = 0; i < numTables; i++) {
+            int record = 12 + 16 * i;
+            int tag = data.getInt(record);
+            int offset = data.getInt(record + 8);
+            if (tag == CMAP) cmap = offset;
+            else if (tag == HEAD) head = offset;
+            else if (tag == HHEA) hhea = offset;
+            else if (tag == HMTX) hmtx = offset;
+            else if (tag == MAXP) maxp = offset;
+        }
+        if (cmap < 0 || head < 0 || hhea < 0 || hmtx < 0 || maxp < 0)
+            throw new IOException("font is missing a cmap, head, hhea, hmtx or maxp table");
+
+        int unitsPerEm = data.getChar(head + 18);
+        int numberOfHMetrics = data.getChar(hhea + 34);
+        int numGlyphs = data.getChar(maxp + 4);
+        if (unitsPerEm == 0 || numberOfHMetrics == 0)
+            throw new IOException("font has no horizontal metrics");
+
+        // glyphs after the last long metric share its advance
+        char[] glyphAdvances = new char[Math.max(numGlyphs, numberOfHMetrics)];
+        for (int glyph = 0; glyph < glyphAdvances.length; glyph++) {
+            int metric = Math.min(glyph, numberOfHMetrics - 1);
+            glyphAdvances[glyph] = data.getChar(hmtx + 4 * metric);
+        }
+
+        char missingGlyphAdvance = glyphAdvances[0];
+        char[] defaultPage = new char[256];
+        Arrays.fill(defaultPage, missingGlyphAdvance);
+        char[][] pages = new char[256][];
+        Arrays.fill(pages, defaultPage);
+        // the cmap overwrites these if the font has glyphs for them
+        setAdvance(pages, defaultPage, ZWNJ, (char) 0);
+        setAdvance(pages, defaultPage, ZWJ, (char) 0);
+        readCmapFormat4(data, findUnicodeCmap(data, cmap), glyphAdvances, defaultPage, pages);
+        for (char control : ZERO_WIDTH_FORMAT_CONTROLS) {
+            setAdvance(pages, defaultPage, control, (char) 0);
+        }
+        return new GlyphAdvanceTable(unitsPerEm, missingGlyphAdvance, pages);
+    }
+
+    // prefers the Windows Unicode BMP subtable, which is the one Menksoft fonts use
+    private static int findUnicodeCmap(ByteBuffer data, int cmap) throws IOException {
+        int found = -1;
+        int numSubtables = data.getChar(cmap + 2);
+        for (int i = 0; i < numSubtables; i++) {
+            int record = cmap + 4 + 8 * i;
+            int platform = data.getChar(record);
+            int encoding = data.getChar(record + 2);
+            int subtable = cmap + data.getInt(record + 4);
+            if (data.getChar(subtable) != 4) continue;
+            if (platform == 3 && encoding == 1) return subtable;
+            if (platform == 0 || (platform == 3 && encoding == 0)) found = subtable;
+        }
+        if (found < 0) throw new IOException("font has no Unicode cmap (format 4)");
+        return found;
+    }
+
+    private static void readCmapFormat4(ByteBuffer data, int subtable, char[] glyphAdvances,
+                                        char[] defaultPage, char[][] pages) {
+        int segCount = data.getChar(subtable + 6) / 2;
+        int endCodes = subtable + 14;
+        int startCodes = endCodes + 2 * segCount + 2;
+        int idDeltas = startCodes + 2 * segCount;
+        int idRangeOffsets = idDeltas + 2 * segCount;
+        for (int segment = 0; segment < segCount; segment++) {
+            int startCode = data.getChar(startCodes + 2 * segment);
+            int endCode = data.getChar(endCodes + 2 * segment);
+            int idDelta = data.getChar(idDeltas + 2 * segment);
+            int idRangeOffsetIndex = idRangeOffsets + 2 * segment;
+            int idRangeOffset = data.getChar(idRangeOffsetIndex);
+            for (int character = startCode; character <= endCode && character != 0xFFFF; character++) {
+                int glyph;
+                if (idRangeOffset == 0) {
+                    glyph = (character + idDelta) & 0xFFFF;
+                } else {
+                    glyph = data.getChar(idRangeOffsetIndex + idRangeOffset
+                            + 2 * (character - startCode));
+                    if (glyph != 0) glyph = (glyph + idDelta) & 0xFFFF;
+                }
+                if (glyph == 0 || glyph >= glyphAdvances.length) continue;
+                setAdvance(pages, defaultPage, character, glyphAdvances[glyph]);
+            }
+        }
+    }
+
+    private static void setAdvance(char[][] pages, char[] defaultPage, int character, char advance) {
+        int pageIndex = character >>> 8;
+        if (pages[pageIndex] == defaultPage) {
+            pages[pageIndex] = defaultPage.clone();
+        }
+        pages[pageIndex][character & 0xFF] = advance;
+    }
+
+    public int getUnitsPerEm() {
+        return unitsPerEm;
+    }
+
+    /**
+     * @return the advance of the char's glyph in font units
+     */
+    public int getAdvance(char character) {
+        return pages[character >>> 8][character & 0xFF];
+    }
+
+    /**
+     * @return the advance of the char's glyph in pixels at the given text size
+     */
+    public float getAdvance(char character, float textSize) {
+        return getAdvance(character) * textSize / unitsPerEm;
+    }
+
+    /**
+     * @return the advance that is used for chars the font doesn't have, in font units
+     */
+    public int getMissingGlyphAdvance() {
+        return missingGlyphAdvance;
+    }
+}
@@ -1,5 +1,21 @@
 package net.studymongolian.mongollibrary;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
 /*
  * Mongol Code
  *
@@ -22,6 +38,11 @@ package net.studymongolian.mongollibrary;
  * in the PUA starting at \uE234. It is recommended that all external
  * text use Unicode. However, Menksoft code can also be converted back
  * into Unicode.
+ *
+ * Thread safety: all of the conversion methods can be called from any number
+ * of threads at once. The word renderers and buffers that they reuse belong to
+ * the calling thread and the optional word cache is synchronized, so no
+ * external locking is needed.
  */
 @SuppressWarnings({"unused", "WeakerAccess", "SwitchStatementWithTooFewBranches"})
 public final class MongolCode {
@@ -29,6 +50,7 @@ public final class MongolCode {
     // this is a singleton class (should it just be a static class?)
     public final static MongolCode INSTANCE = new MongolCode();
     private final static char SPACE = ' ';
+    private static final int PARALLEL_SEGMENT_LENGTH = 32 * 1024;
 
     public enum Location {
         ISOLATE, INITIAL, MEDIAL, FINAL
@@ -38,150 +60,717 @@ public final class MongolCode {
         MASCULINE, FEMININE, NEUTER
     }
 
+    // Scratch objects (the Unicode and Menksoft word converters and the glyph
+    // buffer) are kept per thread so that converting text does not allocate
+    // anything beyond the returned result and threads never share state.
+    private static final ThreadLocal<ConversionContext> CONTEXT =
+            new ThreadLocal<ConversionContext>() {
+                @Override
+                protected ConversionContext initialValue() {
+                    return new ConversionContext();
+                }
+            };
+
+    // Character class flags. Every predicate that runs for each char of the
+    // text is a single lookup in a two level table (256 pages of 256 chars)
+    // instead of a chain of comparisons. Pages without any flags share one
+    // empty page, so only the Latin-1, Mongolian, General Punctuation, Menksoft
+    // PUA and Vertical Forms pages take up memory.
+    private static final int MONGOLIAN = 1;
+    private static final int NON_PRINTING = 1 << 1;
+    private static final int CONVERTIBLE_PUNCTUATION = 1 << 2;
+    private static final int MENKSOFT_INITIAL_ISOLATE = 1 << 3;
+    private static final int MENKSOFT_FINAL_ISOLATE = 1 << 4;
+    private static final int SUFFIX_SEPARATOR = 1 << 5;
+    // everything that renderSameIndex() doesn't just copy
+    private static final int SHAPED = MONGOLIAN | SUFFIX_SEPARATOR | CONVERTIBLE_PUNCTUATION;
+
+    private static final char[] MENKSOFT_INITIAL_ISOLATE_GLYPHS = {
+            Glyph.ISOL_A, Glyph.ISOL_A_FVS1, Glyph.INIT_A, Glyph.MEDI_A_FVS2, Glyph.ISOL_E,
+            Glyph.INIT_E, Glyph.INIT_E_FVS1, Glyph.ISOL_I, Glyph.ISOL_I_SUFFIX, Glyph.INIT_I,
+            Glyph.INIT_O, Glyph.ISOL_O, Glyph.ISOL_U, Glyph.U_START, Glyph.ISOL_OE, Glyph.INIT_OE,
+            Glyph.ISOL_OE_FVS1, Glyph.INIT_UE, Glyph.UE_START, Glyph.ISOL_UE_FVS1, Glyph.ISOL_EE,
+            Glyph.INIT_EE, Glyph.INIT_NA_STEM, Glyph.INIT_NA_TOOTH, Glyph.INIT_NA_FVS1_STEM,
+            Glyph.INIT_NA_FVS1_TOOTH, Glyph.INIT_BA, Glyph.INIT_BA_OU, Glyph.INIT_BA_STEM,
+            Glyph.INIT_PA, Glyph.INIT_PA_OU, Glyph.INIT_PA_STEM, Glyph.INIT_QA_FEM,
+            Glyph.INIT_QA_FEM_OU, Glyph.INIT_QA_FVS1_FEM, Glyph.INIT_QA_FVS1_FEM_OU,
+            Glyph.INIT_QA_FVS1_STEM, Glyph.INIT_QA_FVS1_TOOTH, Glyph.INIT_QA_STEM,
+            Glyph.INIT_QA_TOOTH, Glyph.INIT_GA_FEM, Glyph.INIT_GA_FEM_OU, Glyph.INIT_GA_FVS1_STEM,
+            Glyph.INIT_GA_FVS1_TOOTH, Glyph.INIT_GA_STEM, Glyph.INIT_GA_TOOTH, Glyph.INIT_MA_TOOTH,
+            Glyph.INIT_MA_STEM_LONG, Glyph.INIT_LA_TOOTH, Glyph.INIT_LA_STEM_LONG,
+            Glyph.INIT_SA_STEM, Glyph.INIT_SA_TOOTH, Glyph.INIT_SHA_STEM, Glyph.INIT_SHA_TOOTH,
+            Glyph.INIT_TA_STEM, Glyph.INIT_TA_TOOTH, Glyph.INIT_DA_FVS1, Glyph.INIT_DA_STEM,
+            Glyph.INIT_DA_TOOTH, Glyph.INIT_CHA, Glyph.INIT_JA_STEM, Glyph.INIT_JA_TOOTH,
+            Glyph.INIT_YA, Glyph.INIT_YA_FVS1, Glyph.INIT_RA_STEM, Glyph.INIT_RA_TOOTH,
+            Glyph.INIT_WA, Glyph.INIT_FA, Glyph.INIT_FA_OU, Glyph.INIT_FA_STEM, Glyph.INIT_KA,
+            Glyph.INIT_KA_OU, Glyph.INIT_KHA, Glyph.INIT_KHA_OU, Glyph.INIT_TSA, Glyph.INIT_ZA,
+            Glyph.INIT_HAA, Glyph.INIT_ZRA, Glyph.INIT_LHA
+    };
+
+    private static final char[] MENKSOFT_FINAL_ISOLATE_GLYPHS = {
+            Glyph.ISOL_A, Glyph.ISOL_A_FVS1, Glyph.FINA_A, Glyph.FINA_A_BP, Glyph.FINA_A_FVS1,
+            Glyph.FINA_A_MVS, Glyph.ISOL_E, Glyph.FINA_E, Glyph.FINA_E_BP, Glyph.FINA_E_MVS,
+            Glyph.ISOL_I, Glyph.ISOL_I_SUFFIX, Glyph.FINA_I, Glyph.FINA_I_BP, Glyph.ISOL_O,
+            Glyph.FINA_O, Glyph.FINA_O_FVS1, Glyph.ISOL_U, Glyph.FINA_U, Glyph.FINA_U_BP,
+            Glyph.FINA_U_FVS1, Glyph.ISOL_OE, Glyph.ISOL_OE_FVS1, Glyph.FINA_OE, Glyph.FINA_OE_BP,
+            Glyph.FINA_OE_FVS1, Glyph.FINA_OE_FVS1_BP, Glyph.FINA_OE_FVS2, Glyph.ISOL_UE,
+            Glyph.ISOL_UE_FVS1, Glyph.FINA_UE, Glyph.FINA_UE_BP, Glyph.FINA_UE_FVS1,
+            Glyph.FINA_UE_FVS1_BP, Glyph.FINA_UE_FVS2, Glyph.ISOL_EE, Glyph.FINA_EE, Glyph.FINA_NA,
+            Glyph.FINA_ANG, Glyph.FINA_BA, Glyph.FINA_BA_FVS1, Glyph.FINA_PA, Glyph.FINA_QA,
+            Glyph.FINA_GA, Glyph.FINA_GA_FVS2, Glyph.FINA_MA, Glyph.FINA_LA, Glyph.FINA_SA,
+            Glyph.FINA_SA_FVS1, Glyph.FINA_SHA, Glyph.FINA_TA, Glyph.FINA_DA, Glyph.FINA_DA_FVS1,
+            Glyph.FINA_CHA, Glyph.FINA_JA, Glyph.FINA_YA, Glyph.FINA_RA, Glyph.FINA_WA,
+            Glyph.FINA_WA_FVS1, Glyph.FINA_FA, Glyph.FINA_KA, Glyph.FINA_KHA, Glyph.FINA_TSA,
+            Glyph.FINA_ZA, Glyph.FINA_HAA, Glyph.FINA_ZRA
+    };
+
+    private static final byte[] EMPTY_PAGE = new byte[256];
+    private static final byte[][] CHAR_CLASS_PAGES = buildCharClassPages();
+
+    private static int charClass(char character) {
+        return CHAR_CLASS_PAGES[character >>> 8][character & 0xFF];
+    }
+
+    private static byte[][] buildCharClassPages() {
+        byte[][] pages = new byte[256][];
+        Arrays.fill(pages, EMPTY_PAGE);
+
+        // Mongolian/TodoScript letters, MVS, FVS1-3, NIRUGU, ZWJ, ZWNJ (but not NNBS)
+        addFlag(pages, Uni.A, Uni.CHI, MONGOLIAN);
+        addFlag(pages, Uni.TODO_LONG_VOWEL_SIGN, Uni.TODO_DZA, MONGOLIAN);
+        addFlag(pages, Uni.MONGOLIAN_NIRUGU, Uni.MVS, MONGOLIAN);
+        addFlag(pages, Uni.ZWJ, Uni.ZWJ, MONGOLIAN);
+        addFlag(pages, Uni.ZWNJ, Uni.ZWNJ, MONGOLIAN);
+        addFlag(pages, Uni.NNBS, Uni.NNBS, SUFFIX_SEPARATOR);
+
+        addFlag(pages, Uni.MVS, Uni.MVS, NON_PRINTING);
+        addFlag(pages, Uni.ZWJ, Uni.ZWJ, NON_PRINTING);
+        addFlag(pages, Uni.ZWNJ, Uni.ZWNJ, NON_PRINTING);
+        addFlag(pages, Uni.WJ, Uni.WJ, NON_PRINTING);
+        addFlag(pages, Uni.FVS1, Uni.FVS3, NON_PRINTING);
+
+        addFlag(pages, Uni.VERTICAL_COMMA, Uni.VERTICAL_RIGHT_SQUARE_BRACKET,
+                CONVERTIBLE_PUNCTUATION);
+        addFlag(pages, Uni.MONGOLIAN_BIRGA, Uni.MONGOLIAN_MANCHU_FULL_STOP,
+                CONVERTIBLE_PUNCTUATION);
+        addFlag(pages, Uni.MONGOLIAN_DIGIT_ZERO, Uni.MONGOLIAN_DIGIT_NINE,
+                CONVERTIBLE_PUNCTUATION);
+        addFlag(pages, Uni.MIDDLE_DOT, Uni.MIDDLE_DOT, CONVERTIBLE_PUNCTUATION);
+        addFlag(pages, Uni.REFERENCE_MARK, Uni.REFERENCE_MARK, CONVERTIBLE_PUNCTUATION);
+        addFlag(pages, Uni.QUESTION_EXCLAMATION_MARK, Uni.EXCLAMATION_QUESTION_MARK,
+                CONVERTIBLE_PUNCTUATION);
+        addFlag(pages, Uni.PUNCTUATION_X, Uni.PUNCTUATION_X, CONVERTIBLE_PUNCTUATION);
+
+        for (char glyph : MENKSOFT_INITIAL_ISOLATE_GLYPHS) {
+            addFlag(pages, glyph, glyph, MENKSOFT_INITIAL_ISOLATE);
+        }
+        for (char glyph : MENKSOFT_FINAL_ISOLATE_GLYPHS) {
+            addFlag(pages, glyph, glyph, MENKSOFT_FINAL_ISOLATE);
+        }
+        return pages;
+    }
+
+    private static void addFlag(byte[][] pages, char first, char last, int flag) {
+        for (int character = first; character <= last; character++) {
+            int pageIndex = character >>> 8;
+            if (pages[pageIndex] == EMPTY_PAGE) {
+                pages[pageIndex] = new byte[256];
+            }
+            pages[pageIndex][character & 0xFF] |= flag;
+        }
+    }
+
+    // null when the cache is turned off (the default)
+    private volatile WordCache wordCache;
+    // null unless the app has loaded one
+    private volatile ShapedWordDictionary shapedWordDictionary;
+
     // Constructor
     private MongolCode() {
     }
 
+    /**
+     * Turns on a cache of shaped words. Mongolian text repeats the same stems
+     * and suffixes so often that most words can then be copied instead of
+     * being shaped again. The cache is shared by all threads.
+     *
+     * @param maxSizeInBytes the approximate amount of memory the cache may use.
+     *                       Setting 0 turns the cache off and clears it.
+     */
+    public void setWordCacheSize(long maxSizeInBytes) {
+        if (maxSizeInBytes < 0)
+            throw new IllegalArgumentException("maxSizeInBytes cannot be negative");
+        synchronized (this) {
+            if (maxSizeInBytes == 0) {
+                wordCache = null;
+            } else if (wordCache == null) {
+                wordCache = new WordCache(maxSizeInBytes);
+            } else {
+                wordCache.resize(maxSizeInBytes);
+            }
+        }
+    }
+
+    /**
+     * @return the shaped word cache, or null if it has not been turned on
+     * with {@link #setWordCacheSize(long)}
+     */
+    public WordCache getWordCache() {
+        return wordCache;
+    }
+
+    /**
+     * Sets a precompiled dictionary of shaped words that is looked up before a
+     * word is shaped by the rules. Words that are not in it are shaped as usual.
+     * The dictionary should be rebuilt with {@link ShapedWordDictionaryBuilder}
+     * whenever this library is updated, so that its shapes match the rules.
+     *
+     * @param dictionary the dictionary, or null to stop using one
+     */
+    public void setShapedWordDictionary(ShapedWordDictionary dictionary) {
+        shapedWordDictionary = dictionary;
+    }
+
+    public ShapedWordDictionary getShapedWordDictionary() {
+        return shapedWordDictionary;
+    }
+
     public String unicodeToMenksoft(CharSequence inputString) {
-        String menksoftWithSpacingChars = unicodeToMenksoftSameIndex(inputString);
-        return stripControlChars(menksoftWithSpacingChars);
+        if (inputString == null || inputString.length() == 0) return "";
+        int length = inputString.length();
+        // nothing to shape or strip
+        if (indexOfCharClass(inputString, 0, length, SHAPED | NON_PRINTING) == length)
+            return inputString.toString();
+        char[] glyphs = CONTEXT.get().glyphBuffer(length);
+        int count = unicodeToMenksoft(inputString, 0, length, glyphs, 0);
+        return new String(glyphs, 0, count);
     }
 
-    private String stripControlChars(String stringWithControlChars) {
-        int length = stringWithControlChars.length();
-        StringBuilder strippedString = new StringBuilder(length);
-        for (int i = 0; i < length; i++) {
-            if (!shouldBeStripped(stringWithControlChars, i)) {
-                strippedString.append(stringWithControlChars.charAt(i));
+    /**
+     * Renders a range of Unicode text as Menksoft glyphs directly into a char array.
+     * No intermediate objects are created.
+     *
+     * @param inputString the Unicode text
+     * @param start       the index of the first char to convert
+     * @param end         the index after the last char to convert
+     * @param dest        the array to write the glyphs to. It must have room for
+     *                    end - start chars after destOffset because the glyphs
+     *                    are rendered in place before control characters are removed.
+     * @param destOffset  the index in dest to start writing at
+     * @return the number of chars written to dest
+     */
+    public int unicodeToMenksoft(CharSequence inputString, int start, int end,
+                                 char[] dest, int destOffset) {
+        if (inputString == null) return 0;
+        checkRange(inputString.length(), start, end);
+        int length = end - start;
+        if (destOffset < 0 || destOffset > dest.length - length)
+            throw new IndexOutOfBoundsException("dest needs room for " + length
+                    + " chars at offset " + destOffset + " but its length is " + dest.length);
+        ControlCharStripper stripper = CONTEXT.get().stripper;
+        stripper.reset(destOffset, null, null);
+        renderSameIndex(inputString, start, end, dest, destOffset, stripper);
+        return stripper.finish(dest, destOffset + length);
+    }
+
+    /**
+     * Converts Unicode text to Menksoft code and also returns where every Unicode
+     * index ended up in the Menksoft text and vice versa. The maps are filled in
+     * while the control characters are being stripped, so no extra pass is needed
+     * to hit test, select or apply spans to the stripped text.
+     *
+     * @param inputString the Unicode text
+     * @return the Menksoft text with its index maps
+     */
+    public MenksoftText unicodeToMenksoftWithOffsets(CharSequence inputString) {
+        if (inputString == null) inputString = "";
+        int length = inputString.length();
+        char[] glyphs = CONTEXT.get().glyphBuffer(length);
+        int[] unicodeToMenksoft = new int[length + 1];
+        int[] menksoftToUnicode = new int[length + 1];
+        ControlCharStripper stripper = CONTEXT.get().stripper;
+        stripper.reset(0, unicodeToMenksoft, menksoftToUnicode);
+        renderSameIndex(inputString, 0, length, glyphs, 0, stripper);
+        int count = stripper.finish(glyphs, length);
+        if (count < length) {
+            menksoftToUnicode = Arrays.copyOf(menksoftToUnicode, count + 1);
+        }
+        return new MenksoftText(new String(glyphs, 0, count), unicodeToMenksoft, menksoftToUnicode);
+    }
+
+    /**
+     * Renders a range of Unicode text as Menksoft glyphs into a CharBuffer,
+     * starting at its current position. The position is advanced by the
+     * number of chars written.
+     *
+     * @return the number of chars written to dest
+     * @throws java.nio.BufferOverflowException if dest does not have enough room
+     */
+    public int unicodeToMenksoft(CharSequence inputString, int start, int end, CharBuffer dest) {
+        if (inputString == null) return 0;
+        checkRange(inputString.length(), start, end);
+        int length = end - start;
+        if (dest.hasArray() && dest.remaining() >= length) {
+            int count = unicodeToMenksoft(inputString, start, end,
+                    dest.array(), dest.arrayOffset() + dest.position());
+            // cast needed for older runtimes where CharBuffer does not override position(int)
+            ((Buffer) dest).position(dest.position() + count);
+            return count;
+        }
+        char[] glyphs = CONTEXT.get().glyphBuffer(length);
+        int count = unicodeToMenksoft(inputString, start, end, glyphs, 0);
+        dest.put(glyphs, 0, count);
+        return count;
+    }
+
+    /**
+     * Renders a range of Unicode text as Menksoft glyphs and appends them to dest.
+     * StringBuilder and Writer destinations get the glyphs in a single bulk call.
+     *
+     * @return the number of chars appended to dest
+     */
+    public int unicodeToMenksoft(CharSequence inputString, int start, int end, Appendable dest)
+            throws IOException {
+        if (inputString == null) return 0;
+        checkRange(inputString.length(), start, end);
+        char[] glyphs = CONTEXT.get().glyphBuffer(end - start);
+        int count = unicodeToMenksoft(inputString, start, end, glyphs, 0);
+        if (dest instanceof StringBuilder) {
+            ((StringBuilder) dest).append(glyphs, 0, count);
+        } else if (dest instanceof Writer) {
+            ((Writer) dest).write(glyphs, 0, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                dest.append(glyphs[i]);
             }
         }
-        return strippedString.toString();
+        return count;
+    }
+
+    private static void checkRange(int length, int start, int end) {
+        if (start < 0 || start > end || end > length)
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end
+                    + ", length " + length);
     }
 
-    private boolean shouldBeStripped(String text, int index) {
-        char thisChar = text.charAt(index);
+    private static boolean shouldBeStripped(char thisChar, char charBefore, char charAfter) {
         //noinspection SimplifiableIfStatement
         if (isNonPrintingChar(thisChar)) {
             // old Menksoft code (in PUA region) context doesn't need
             // Unicode control characters. But keep control characters
             // in the context of Unicode text. (This allows font to render
             // TodoScript text.)
-            return (index != 0 && isPuaChar(text.charAt(index - 1)) ||
-                    index != text.length() - 1 && isPuaChar(text.charAt(index + 1)));
+            return isPuaChar(charBefore) || isPuaChar(charAfter);
         }
         return false;
     }
 
-    private boolean isPuaChar(char character) {
+    private static boolean isPuaChar(char character) {
         return character >= '\uE000' && character <= '\uF8FF';
     }
 
-    private boolean isNonPrintingChar(char character) {
-        return character == Uni.MVS ||
-                character == Uni.ZWJ ||
-                character == Uni.ZWNJ ||
-                character == Uni.WJ ||
-                character == Uni.FVS1 ||
-                character == Uni.FVS2 ||
-                character == Uni.FVS3;
+    private static boolean isNonPrintingChar(char character) {
+        return (charClass(character) & NON_PRINTING) != 0;
     }
 
     String unicodeToMenksoftSameIndex(CharSequence inputString) {
 
         if (inputString == null || inputString.length() == 0) return "";
 
-        StringBuilder outputString = new StringBuilder();
-        StringBuilder mongolWord = new StringBuilder();
-
-        // Loop through characters in string
         int length = inputString.length();
-        for (int i = 0; i < length; i++) {
-            final char character = inputString.charAt(i);
-            if (isMongolian(character)) {
-                mongolWord.append(character);
-                continue;
-            }
+        if (indexOfCharClass(inputString, 0, length, SHAPED) == length)
+            return inputString.toString();
+        char[] glyphs = CONTEXT.get().glyphBuffer(length);
+        renderSameIndex(inputString, 0, length, glyphs, 0, null);
+        return new String(glyphs, 0, length);
+    }
 
-            if (mongolWord.length() > 0) {
-                appendMongolWord(outputString, mongolWord);
-                mongolWord.setLength(0);
-            }
+    // Renders inputString[start, end) to dest with one glyph for every char.
+    // The range has to start and end between Mongol words.
+    void unicodeToMenksoftSameIndex(CharSequence inputString, int start, int end,
+                                    char[] dest, int destOffset) {
+        checkRange(inputString.length(), start, end);
+        renderSameIndex(inputString, start, end, dest, destOffset, null);
+    }
+
+    // Writes exactly one glyph to output for every char in inputString[start, end).
+    // If there is a stripper it compacts the output right behind the renderer,
+    // so the caller has to finish() it.
+    private void renderSameIndex(CharSequence inputString, int start, int end,
+                                 char[] output, int outputOffset,
+                                 ControlCharStripper stripper) {
+
+        MongolWord renderer = CONTEXT.get().mongolWord;
+        int shift = outputOffset - start;
+
+        for (int i = start; i < end; ) {
+            final char character = inputString.charAt(i);
 
             // NNBS starts a new Mongol word but is not itself a Mongol char
-            if (character == Uni.NNBS) {
-                mongolWord.append(Uni.NNBS);
+            if (MongolWordIterator.isMongolWordChar(character)) {
+                int wordEnd = MongolWordIterator.getMongolWordEnd(inputString, i + 1, end);
+                renderMongolWord(renderer, inputString, i, wordEnd, output, i + shift);
+                if (stripper != null) stripper.advance(output, wordEnd + shift);
+                i = wordEnd;
                 continue;
             }
 
             if (isConvertiblePunctuation(character)) {
-                char menksoftPunctuation = MongolWord.convertPunctuationToMenksoftCode(character);
-                outputString.append(menksoftPunctuation);
+                output[i + shift] = MongolWord.convertPunctuationToMenksoftCode(character);
+                i++;
                 continue;
             }
 
-            // non-Mongol character
-            outputString.append(character);
+            // copy the whole run of non-Mongol text at once
+            int runEnd = indexOfCharClass(inputString, i + 1, end, SHAPED);
+            copyChars(inputString, i, runEnd, output, i + shift);
+            i = runEnd;
         }
+    }
 
-        // Add any final substring
-        if (mongolWord.length() > 0)
-            appendMongolWord(outputString, mongolWord);
+    // returns end if no char in text[start, end) has any of the flags
+    private static int indexOfCharClass(CharSequence text, int start, int end, int flags) {
+        int i = start;
+        while (i < end && (charClass(text.charAt(i)) & flags) == 0) {
+            i++;
+        }
+        return i;
+    }
 
-        return outputString.toString();
+    private static void copyChars(CharSequence text, int start, int end,
+                                  char[] dest, int destOffset) {
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, dest, destOffset);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(start, end, dest, destOffset);
+        } else {
+            for (int i = start; i < end; i++) {
+                dest[destOffset++] = text.charAt(i);
+            }
+        }
+    }
+
+    private void renderMongolWord(MongolWord renderer, CharSequence text, int start, int end,
+                                  char[] output, int outputOffset) {
+        ShapedWordDictionary dictionary = shapedWordDictionary;
+        if (dictionary != null && dictionary.get(text, start, end, output, outputOffset)) return;
+        WordCache cache = wordCache;
+        if (cache == null || end - start > WordCache.MAX_WORD_LENGTH) {
+            renderer.convertToMenksoftCode(text, start, end, output, outputOffset);
+            return;
+        }
+        if (cache.get(text, start, end, output, outputOffset)) return;
+        renderer.convertToMenksoftCode(text, start, end, output, outputOffset);
+        cache.put(text, start, end, output, outputOffset);
     }
 
-    private void appendMongolWord(StringBuilder outputString, StringBuilder mongolWord) {
-        String renderedWord = new MongolWord(mongolWord).convertToMenksoftCode();
-        outputString.append(renderedWord);
+    // Shapes a single word with the rules only, skipping the word cache and
+    // dictionary. output needs room for word.length() glyphs.
+    void renderWordWithRules(CharSequence word, char[] output) {
+        CONTEXT.get().mongolWord.convertToMenksoftCode(word, 0, word.length(), output, 0);
     }
 
     public String menksoftToUnicode(String inputString) {
 
         if (inputString == null || inputString.length() == 0) return "";
 
-        StringBuilder outputString = new StringBuilder();
-        StringBuilder menksoftWord = new StringBuilder();
+        // nothing to convert
+        int length = inputString.length();
+        int firstMenksoft = 0;
+        while (firstMenksoft < length && !isMenksoft(inputString.charAt(firstMenksoft))) {
+            firstMenksoft++;
+        }
+        if (firstMenksoft == length) return inputString;
+
+        MenksoftWord decoder = CONTEXT.get().menksoftWord;
+        StringBuilder outputString = new StringBuilder(length);
+        int wordStart = -1;
 
         // Loop through characters in string
-        int length = inputString.length();
         for (int i = 0; i < length; i++) {
             final char character = inputString.charAt(i);
             if (isMenksoft(character) && !isMenksoftSpace(character)) {
-                menksoftWord.append(character);
+                if (wordStart < 0) wordStart = i;
                 continue;
             }
 
-            if (menksoftWord.length() > 0) {
-                appendMenksoftWord(outputString, menksoftWord);
-                menksoftWord.setLength(0);
+            if (wordStart >= 0) {
+                decoder.convertToUnicode(inputString, wordStart, i, outputString);
+                wordStart = -1;
             }
 
-            // A space starts a new Mongol word but is not itself a Mongol char
-            if (isMenksoftSpace(character)) {
-                menksoftWord.append(character);
+            // copy the whole run of non-Menksoft text at once
+            if (isPlainText(inputString, i)) {
+                int runEnd = i + 1;
+                while (runEnd < length && isPlainText(inputString, runEnd)) {
+                    runEnd++;
+                }
+                outputString.append(inputString, i, runEnd);
+                i = runEnd - 1;
                 continue;
             }
 
-            // non-Menksoft character
-            outputString.append(character);
+            // A space starts a new Mongol word but is not itself a Mongol char
+            wordStart = i;
         }
 
         // Add any final substring
-        if (menksoftWord.length() > 0)
-            appendMenksoftWord(outputString, menksoftWord);
+        if (wordStart >= 0)
+            decoder.convertToUnicode(inputString, wordStart, length, outputString);
 
         return outputString.toString();
     }
 
+    // A space that isn't followed by Menksoft text would come out unchanged
+    // as a word of its own, so it is treated like any other non-Menksoft char.
+    private boolean isPlainText(String text, int index) {
+        char character = text.charAt(index);
+        if (character == SPACE) {
+            return index + 1 == text.length() || !isMenksoft(text.charAt(index + 1));
+        }
+        return !isMenksoft(character);
+    }
+
     private boolean isMenksoftSpace(char character) {
         return character == Glyph.SUFFIX_SPACE
                 || character == Glyph.UNKNOWN_SPACE
                 || character == SPACE;
     }
 
-    private void appendMenksoftWord(StringBuilder outputString, StringBuilder menksoftWord) {
-        String unicodeWord = new MenksoftWord(menksoftWord).convertToUnicode();
-        outputString.append(unicodeWord);
+    /**
+     * Creates a Writer that converts Unicode text written to it into Menksoft code
+     * and writes that to out. Text is converted in fixed size chunks that are split
+     * between words, so the output is exactly the same as unicodeToMenksoft() on
+     * the whole text while memory use stays constant. (Only a single word longer
+     * than the chunk size makes the buffer grow.)
+     *
+     * The last partial word is held back until close() is called, even on flush().
+     *
+     * @param out the Writer that receives the Menksoft text
+     * @return a Writer that accepts Unicode text
+     */
+    public Writer newUnicodeToMenksoftWriter(Writer out) {
+        return new UnicodeToMenksoftWriter(this, out);
+    }
+
+    /**
+     * Creates a Reader that reads Menksoft code from in and returns it converted to
+     * Unicode. Text is converted in fixed size chunks that are split between words,
+     * so the output is exactly the same as menksoftToUnicode() on the whole text
+     * while memory use stays constant.
+     *
+     * @param in the Reader that supplies the Menksoft text
+     * @return a Reader of Unicode text
+     */
+    public Reader newMenksoftToUnicodeReader(Reader in) {
+        return new MenksoftToUnicodeReader(this, in);
+    }
+
+    // A chunk of Unicode text may end between two chars if neither of them
+    // belongs to a word or is a control character whose stripping depends on
+    // its neighbors.
+    private boolean isUnicodeChunkBoundary(char charBefore, char charAfter) {
+        return isUnicodeWordSeparator(charBefore) && isUnicodeWordSeparator(charAfter);
+    }
+
+    private boolean isUnicodeWordSeparator(char character) {
+        return !isMongolian(character)
+                && character != Uni.NNBS
+                && !isNonPrintingChar(character);
+    }
+
+    // A chunk of Menksoft text may end right before any char that does not
+    // continue the current word. (Spaces start a new word.)
+    private boolean isMenksoftChunkBoundary(char charAfter) {
+        return !isMenksoft(charAfter) || isMenksoftSpace(charAfter);
+    }
+
+    /**
+     * Converts a large Unicode document to Menksoft code using several threads.
+     * The text is split into segments between words (see newUnicodeToMenksoftWriter),
+     * each segment is converted by a task on the executor, and the results are
+     * joined. The output is exactly the same as unicodeToMenksoft().
+     * Short text is converted on the calling thread.
+     *
+     * @param inputString the Unicode text
+     * @param executor    runs the conversion tasks, for example a thread pool
+     *                    with one thread per core
+     * @return the Menksoft code text
+     * @throws InterruptedException if the calling thread is interrupted while
+     *                              waiting for the tasks to finish
+     */
+    public String unicodeToMenksoftParallel(final CharSequence inputString, Executor executor)
+            throws InterruptedException {
+        if (inputString == null || inputString.length() == 0) return "";
+        final int[] bounds = getParallelSegmentBounds(inputString, true);
+        final int segmentCount = bounds.length - 1;
+        if (segmentCount == 1) return unicodeToMenksoft(inputString);
+
+        // every segment renders and strips in its own part of the array
+        final char[] glyphs = new char[inputString.length()];
+        final int[] glyphCounts = new int[segmentCount];
+        List<FutureTask<Void>> tasks = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            final int segment = i;
+            tasks.add(new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    int start = bounds[segment];
+                    glyphCounts[segment] = unicodeToMenksoft(
+                            inputString, start, bounds[segment + 1], glyphs, start);
+                }
+            }, null));
+        }
+        runAll(tasks, executor);
+
+        StringBuilder outputString = new StringBuilder(glyphs.length);
+        for (int i = 0; i < segmentCount; i++) {
+            outputString.append(glyphs, bounds[i], glyphCounts[i]);
+        }
+        return outputString.toString();
+    }
+
+    /**
+     * Converts a large Menksoft code document to Unicode using several threads.
+     * The output is exactly the same as menksoftToUnicode().
+     *
+     * @see #unicodeToMenksoftParallel(CharSequence, Executor)
+     */
+    public String menksoftToUnicodeParallel(final CharSequence inputString, Executor executor)
+            throws InterruptedException {
+        if (inputString == null || inputString.length() == 0) return "";
+        final int[] bounds = getParallelSegmentBounds(inputString, false);
+        final int segmentCount = bounds.length - 1;
+        if (segmentCount == 1) return menksoftToUnicode(inputString.toString());
+
+        final String[] results = new String[segmentCount];
+        List<FutureTask<Void>> tasks = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            final int segment = i;
+            tasks.add(new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    String menksoft = inputString
+                            .subSequence(bounds[segment], bounds[segment + 1]).toString();
+                    results[segment] = menksoftToUnicode(menksoft);
+                }
+            }, null));
+        }
+        runAll(tasks, executor);
+
+        StringBuilder outputString = new StringBuilder(inputString.length());
+        for (String result : results) {
+            outputString.append(result);
+        }
+        return outputString.toString();
+    }
+
+    // Returns the start of every segment followed by the end of the text.
+    // Each segment ends at the first chunk boundary after the target length.
+    private int[] getParallelSegmentBounds(CharSequence text, boolean isUnicode) {
+        int length = text.length();
+        int[] bounds = new int[length / PARALLEL_SEGMENT_LENGTH + 2];
+        int count = 1;
+        int index = PARALLEL_SEGMENT_LENGTH;
+        while (index < length) {
+            boolean isBoundary = isUnicode
+                    ? isUnicodeChunkBoundary(text.charAt(index - 1), text.charAt(index))
+                    : isMenksoftChunkBoundary(text.charAt(index));
+            if (isBoundary) {
+                bounds[count++] = index;
+                index += PARALLEL_SEGMENT_LENGTH;
+            } else {
+                index++;
+            }
+        }
+        bounds[count++] = length;
+        int[] trimmed = new int[count];
+        System.arraycopy(bounds, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    private static void runAll(List<FutureTask<Void>> tasks, Executor executor)
+            throws InterruptedException {
+        for (FutureTask<Void> task : tasks) {
+            executor.execute(task);
+        }
+        try {
+            for (FutureTask<Void> task : tasks) {
+                task.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        } finally {
+            for (FutureTask<Void> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Makes a key for sorting Unicode Mongolian text in the traditional order of
+     * the alphabet. Keys compare with compareCollationKeys() the same way that
+     * the texts compare with compareCollation(), so a sorted list can store the
+     * keys and compare them instead of scanning the words again and again.
+     *
+     * FVS, MVS, ZWJ, ZWNJ and NIRUGU are ignored, so all encodings of a word that
+     * only differ in those have the same key. NNBS and spaces come before any
+     * letter. Chars that are not Mongolian come after the Mongolian ones, in the
+     * order of their codes.
+     *
+     * @param text Unicode text, usually a single word
+     * @return a key of about one byte per letter
+     */
+    public static byte[] collationKey(CharSequence text) {
+        return MongolCollation.getKey(text);
+    }
+
+    /**
+     * @return the first 7 bytes of collationKey(text) as a positive long. Texts
+     * with different prefixes are in the order of the prefixes. Texts with the
+     * same prefix have to be compared with compareCollation() or by their keys.
+     */
+    public static long collationKeyPrefix(CharSequence text) {
+        return MongolCollation.getKeyPrefix(text);
+    }
+
+    /**
+     * Sets prefixes[i] to collationKeyPrefix(texts[i]) for every text, so that a
+     * large list of words can be sorted or searched mostly by comparing longs.
+     *
+     * @param texts    Unicode texts, usually words
+     * @param prefixes at least as long as texts
+     */
+    public static void collationKeyPrefixes(CharSequence[] texts, long[] prefixes) {
+        if (prefixes.length < texts.length)
+            throw new IllegalArgumentException("prefixes is shorter than texts");
+        for (int i = 0; i < texts.length; i++) {
+            prefixes[i] = MongolCollation.getKeyPrefix(texts[i]);
+        }
+    }
+
+    /**
+     * @return a negative number, zero or a positive number as key1 is before, the
+     * same as or after key2
+     * @see #collationKey(CharSequence)
+     */
+    public static int compareCollationKeys(byte[] key1, byte[] key2) {
+        return MongolCollation.compareKeys(key1, key2);
+    }
+
+    /**
+     * Compares two texts in the order of their collation keys without making
+     * the keys.
+     *
+     * @return a negative number, zero or a positive number as text1 is before,
+     * the same as or after text2
+     * @see #collationKey(CharSequence)
+     */
+    public static int compareCollation(CharSequence text1, CharSequence text2) {
+        return MongolCollation.compare(text1, text2);
     }
 
     public static Location getLocation(CharSequence textBefore, CharSequence textAfter) {
@@ -222,29 +811,7 @@ public final class MongolCode {
     }
 
     private boolean isConvertiblePunctuation(char character) {
-        return isVerticalPresentationForm(character)
-                || isMongolianPunctuation(character)
-                || isMongolianDigit(character)
-                || character == Uni.MIDDLE_DOT
-                || character == Uni.REFERENCE_MARK
-                || character == Uni.QUESTION_EXCLAMATION_MARK
-                || character == Uni.EXCLAMATION_QUESTION_MARK
-                || character == Uni.PUNCTUATION_X;
-    }
-
-    private boolean isVerticalPresentationForm(char character) {
-        return (character >= Uni.VERTICAL_COMMA
-                && character <= Uni.VERTICAL_RIGHT_SQUARE_BRACKET);
-    }
-
-    private boolean isMongolianPunctuation(char character) {
-        return (character >= Uni.MONGOLIAN_BIRGA
-                && character <= Uni.MONGOLIAN_MANCHU_FULL_STOP);
-    }
-
-    private boolean isMongolianDigit(char character) {
-        return (character >= Uni.MONGOLIAN_DIGIT_ZERO
-                && character <= Uni.MONGOLIAN_DIGIT_NINE);
+        return (charClass(character) & CONVERTIBLE_PUNCTUATION) != 0;
     }
 
     public static boolean isVowel(char character) {
@@ -275,9 +842,7 @@ public final class MongolCode {
      * @return true if Mongolian/TodoScript letters, MVS, FVS1-3, NIRUGU, ZWJ, ZWNJ, (but not NNBS)
      */
     public static boolean isMongolian(char character) {
-        return (isBasicMongolianAlphabet(character) || isTodoAlphabet(character)
-                || (character >= Uni.MONGOLIAN_NIRUGU && character <= Uni.MVS)
-                || character == Uni.ZWJ || character == Uni.ZWNJ);
+        return (charClass(character) & MONGOLIAN) != 0;
     }
 
     private static boolean isBasicMongolianAlphabet(char character) {
@@ -1103,26 +1668,75 @@ public final class MongolCode {
     }
 
 
+    // Letters are shaped by the rules in src/main/rules, which are compiled
+    // into the tables of ShapingRuleSets at build time. The rest of the chars
+    // of a word are handled here.
     private static class MongolWord {
 
         // strange exception where the first UE does not get a long tooth
         private static final String BUU_EXCEPTION = "\u182A\u1826\u1826";
 
+        private final ShapingRules rules = ShapingRuleSets.DEFAULT;
+
         private Gender gender;
         private Location location;
         private int length;
         private boolean isSuffix;
         private CharSequence inputWord;
         private char fvs;
-        private Shape glyphShapeBelow;
+        private int glyphShapeBelow;
+
+        // the letter that the rules are being run for. The chars above and
+        // below are kept as their bits in the masks of the rules.
+        private int rulePosition;
+        private long ruleCharAboveBit;
+        private long ruleCharBelowBit;
+        private char ruleCharBelow;
+        private char ruleCharBelowFvs;
+
+        // Every input char renders to exactly one glyph, so the glyph for
+        // inputWord[i] is written directly to renderedWord[renderOffset + i].
+        private final TextRange wordRange = new TextRange();
+        private char[] renderedWord;
+        private int renderOffset;
+        private int renderIndex;
+
+        MongolWord() {
+        }
 
-        MongolWord(CharSequence mongolWord) {
-            this.inputWord = mongolWord;
+        private void reset(CharSequence text, int start, int end,
+                           char[] output, int outputOffset) {
+            wordRange.set(text, start, end);
+            this.inputWord = wordRange;
             this.gender = Gender.NEUTER;
-            this.length = mongolWord.length();
-            this.isSuffix = (mongolWord.charAt(0) == Uni.NNBS);
+            this.length = end - start;
+            this.isSuffix = (text.charAt(start) == Uni.NNBS);
             this.fvs = 0;
-            this.glyphShapeBelow = Shape.STEM;
+            this.glyphShapeBelow = ShapingRules.SHAPE_STEM;
+            this.renderedWord = output;
+            this.renderOffset = outputOffset;
+        }
+
+        // don't hold on to the caller's text or array after the word is rendered
+        private void release() {
+            wordRange.set(null, 0, 0);
+            this.inputWord = null;
+            this.renderedWord = null;
+        }
+
+        /**
+         * Renders the word text[start, end) into output beginning at outputOffset.
+         * Exactly end - start glyphs are written.
+         */
+        void convertToMenksoftCode(CharSequence text, int start, int end,
+                                   char[] output, int outputOffset) {
+            reset(text, start, end, output, outputOffset);
+            convertToMenksoftCode();
+            release();
+        }
+
+        private void renderGlyph(char glyph) {
+            renderedWord[renderOffset + renderIndex] = glyph;
         }
 
         private void updateLocation(int positionInWord, char charBelow) {
@@ -1150,12 +1764,6 @@ public final class MongolCode {
             }
         }
 
-        private enum Shape {
-            TOOTH,     // glyph slants to the left like a tooth (includes medial T/D, R, W, etc)
-            STEM,      // glyph starts with a vertical stem (includes B, O/U, CH, etc)
-            ROUND      // glyph top is round (includes feminine Q/G)
-        }
-
         static char convertPunctuationToMenksoftCode(char punctuationChar) {
             switch (punctuationChar) {
                 case Uni.VERTICAL_COMMA:
@@ -1249,9 +1857,8 @@ public final class MongolCode {
             }
         }
 
-        String convertToMenksoftCode() {
+        private void convertToMenksoftCode() {
 
-            StringBuilder renderedWord = new StringBuilder();
             char charBelow = 0;
             char charBelowFvs = 0;
 
@@ -1263,1599 +1870,187 @@ public final class MongolCode {
 
                 // get the location
                 updateLocation(i, charBelow);
+                renderIndex = i;
 
                 charAbove = (i > 0) ? inputWord.charAt(i - 1) : 0;
 
-                // handle each letter separately
-                switch (currentChar) {
-
-                    case Uni.A:
-                        handleA(renderedWord, charAbove);
-                        break;
-                    case Uni.E:
-                        handleE(renderedWord, charAbove);
-                        break;
-                    case Uni.I:
-                        handleI(renderedWord, i, charAbove, charBelow);
-                        break;
-                    case Uni.O:
-                        handleO(renderedWord, charAbove);
-                        break;
-                    case Uni.U:
-                        handleU(renderedWord, charAbove);
-                        break;
-                    case Uni.OE:
-                        handleOE(renderedWord, i, charAbove);
-                        break;
-                    case Uni.UE:
-                        handleUE(renderedWord, i, charAbove);
-                        break;
-                    case Uni.EE:
-                        handleEE(renderedWord);
-                        break;
-                    case Uni.NA:
-                        handleNA(renderedWord, i, charBelow, charBelowFvs);
-                        break;
-                    case Uni.ANG:
-                        handleANG(renderedWord);
-                        break;
-                    case Uni.BA:
-                        handleBA(renderedWord, charBelow);
-                        break;
-                    case Uni.PA:
-                        handlePA(renderedWord, charBelow);
-                        break;
-                    case Uni.QA:
-                        handleQA(renderedWord, i, charAbove, charBelow);
-                        break;
-                    case Uni.GA:
-                        handleGA(renderedWord, i, charAbove, charBelow);
-                        break;
-                    case Uni.MA:
-                        handleMA(renderedWord, i, charAbove, charBelow);
-                        break;
-                    case Uni.LA:
-                        handleLA(renderedWord, i, charAbove, charBelow);
-                        break;
-                    case Uni.SA:
-                        handleSA(renderedWord);
-                        break;
-                    case Uni.SHA:
-                        handleSHA(renderedWord);
-                        break;
-                    case Uni.TA:
-                        handleTA(renderedWord);
-                        break;
-                    case Uni.DA:
-                        handleDA(renderedWord, charBelow);
-                        break;
-                    case Uni.CHA:
-                        handleCHA(renderedWord);
-                        break;
-                    case Uni.JA:
-                        handleJA(renderedWord, charBelow);
-                        break;
-                    case Uni.YA:
-                        handleYA(renderedWord, i, charAbove, charBelow);
-                        break;
-                    case Uni.RA:
-                        handleRA(renderedWord);
-                        break;
-                    case Uni.WA:
-                        handleWA(renderedWord, charBelow);
-                        break;
-                    case Uni.FA:
-                        handleFA(renderedWord, charBelow);
-                        break;
-                    case Uni.KA:
-                        handleKA(renderedWord, charBelow);
-                        break;
-                    case Uni.KHA:
-                        handleKHA(renderedWord, charBelow);
-                        break;
-                    case Uni.TSA:
-                        handleTSA(renderedWord);
-                        break;
-                    case Uni.ZA:
-                        handleZA(renderedWord);
-                        break;
-                    case Uni.HAA:
-                        handleHAA(renderedWord);
-                        break;
-                    case Uni.ZRA:
-                        handleZRA(renderedWord);
-                        break;
-                    case Uni.LHA:
-                        handleLHA(renderedWord, i, charAbove);
-                        break;
-                    case Uni.ZHI:
-                        handleZHI(renderedWord);
-                        break;
-                    case Uni.CHI:
-                        handleCHI(renderedWord);
-                        break;
-                    case Uni.NNBS:
-                        handleNNBS(renderedWord);
-                        break;
-                    case Uni.MONGOLIAN_NIRUGU:
-                        handleNirugu(renderedWord);
-                        break;
-                    case Uni.ZWJ:
-                    case Uni.ZWNJ:
-                    case Uni.MVS:
-                        handleNonPrintingChar(renderedWord);
-                        break;
-                    case Uni.FVS1:
-                    case Uni.FVS2:
-                    case Uni.FVS3:
-                        handleNonPrintingChar(renderedWord);
-                        fvs = currentChar;
-                        continue;
-                    default:
-
-                        // don't render TodoScript words, the font can do that
-                        if (isTodoAlphabet(currentChar))
-                            return this.inputWord.toString();
-
-                        // catch any other characters and just insert them directly
-                        renderedWord.insert(0, currentChar);
+                // letters are shaped by the rules, the other chars are handled here
+                if (isBasicMongolianAlphabet(currentChar)) {
+                    renderLetter(currentChar - Uni.A, i, charAbove, charBelow, charBelowFvs);
+                } else {
+                    switch (currentChar) {
+                        case Uni.NNBS:
+                            handleNNBS();
+                            break;
+                        case Uni.MONGOLIAN_NIRUGU:
+                            handleNirugu();
+                            break;
+                        case Uni.ZWJ:
+                        case Uni.ZWNJ:
+                        case Uni.MVS:
+                            handleNonPrintingChar();
+                            break;
+                        case Uni.FVS1:
+                        case Uni.FVS2:
+                        case Uni.FVS3:
+                            handleNonPrintingChar();
+                            fvs = currentChar;
+                            continue;
+                        default:
+
+                            // don't render TodoScript words, the font can do that
+                            if (isTodoAlphabet(currentChar)) {
+                                copyInputWord();
+                                return;
+                            }
+
+                            // catch any other characters and just insert them directly
+                            renderGlyph(currentChar);
+                    }
                 }
 
                 charBelow = currentChar;
                 charBelowFvs = fvs;
                 fvs = 0;
             }
-
-            return renderedWord.toString();
-        }
-
-        private void handleA(StringBuilder renderedWord, char charAbove) {
-            gender = Gender.MASCULINE;
-            switch (location) {
-                case ISOLATE:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.ISOL_A_FVS1);     // left sweeping tail
-                    } else {
-                        renderedWord.insert(0, Glyph.ISOL_A);          // normal
-                    }
-                    break;
-                case INITIAL:
-                    if (isSuffix) {
-                        renderedWord.insert(0, Glyph.MEDI_A_FVS2);     // A of ACHA   *** suffix rule ***
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_A);          // normal
-                    }
-                    break;
-                case MEDIAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.MEDI_A_FVS1);     // 2 teeth
-                    } else if (fvs == Uni.FVS2) {
-                        renderedWord.insert(0, Glyph.MEDI_A_FVS2);     // A of ACHA suffix
-                    } else {
-                        if (isRoundLetter(charAbove)) {
-                            renderedWord.insert(0, Glyph.MEDI_A_BP);   // After BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_A);      // normal
-                        }
-                    }
-                    glyphShapeBelow = Shape.TOOTH;
-                    break;
-                case FINAL:
-
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.FINA_A_FVS1);     // left sweeping tail
-                        glyphShapeBelow = Shape.STEM;
-                    } else {
-                        if (isRoundLetter(charAbove)) {
-                            renderedWord.insert(0, Glyph.FINA_A_BP);   // after BPFK
-                            glyphShapeBelow = Shape.TOOTH;
-                        } else if (charAbove == Uni.MVS) {
-                            renderedWord.insert(0, Glyph.FINA_A_MVS);  // MVS
-                            glyphShapeBelow = Shape.STEM;
-                        } else {
-                            renderedWord.insert(0, Glyph.FINA_A);      // normal
-                            glyphShapeBelow = Shape.STEM;
-                        }
-                    }
-                    break;
-            }
-        }
-
-        private void handleE(StringBuilder renderedWord, char charAbove) {
-            gender = Gender.FEMININE;
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_E);              // normal
-                    break;
-                case INITIAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.INIT_E_FVS1);     // double tooth
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_E);          // normal
-                    }
-                    break;
-                case MEDIAL:
-                    if (isRoundLetterIncludingQG(charAbove)) {
-                        renderedWord.insert(0, Glyph.MEDI_E_BP);       // After BPFK
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_E);          // normal
-                    }
-                    glyphShapeBelow = Shape.TOOTH;
-                    break;
-                case FINAL:
-
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.FINA_E_FVS1);     // left sweeping tail
-                        glyphShapeBelow = Shape.STEM;
-                    } else {
-                        if (isRoundLetterIncludingQG(charAbove)) {
-                            renderedWord.insert(0, Glyph.FINA_E_BP);   // after BPFK
-                            glyphShapeBelow = Shape.TOOTH;
-                        } else if (charAbove == Uni.MVS) {
-                            renderedWord.insert(0, Glyph.FINA_E_MVS);  // MVS
-                            glyphShapeBelow = Shape.STEM;
-                        } else {
-                            renderedWord.insert(0, Glyph.FINA_E);      // normal
-                            glyphShapeBelow = Shape.STEM;
-                        }
-                    }
-                    break;
-            }
-        }
-
-        private void handleI(StringBuilder renderedWord,
-                             int positionInWord,
-                             char charAbove,
-                             char charBelow) {
-            switch (location) {
-                case ISOLATE:
-                    if (isSuffix) {
-                        renderedWord.insert(0, Glyph.ISOL_I_SUFFIX);           // I  *** suffix rule ***
-                    } else {
-                        renderedWord.insert(0, Glyph.ISOL_I);                  // normal
-                    }
-                    break;
-                case INITIAL:
-                    if (isSuffix && charBelow == Uni.YA) {
-                        renderedWord.insert(0, Glyph.MEDI_I_SUFFIX);           // I of IYEN   *** suffix rule ***
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_I);                  // normal
-                    }
-                    break;
-                case MEDIAL:
-
-                    // FVS 1: one short, one long tooth
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.MEDI_I_FVS1);
-                        break;
-                    }
-
-                    // FVS 2:  Used to override context for NAIMA single tooth I
-                    // (Undefined in Unicode 10.0)
-                    if (fvs == Uni.FVS2) {
-                        renderedWord.insert(0, Glyph.MEDI_I);    // normal
-                        break;
-                    }
-
-                    // After BPFK
-                    if (isRoundLetterIncludingQG(charAbove)) {
-                        renderedWord.insert(0, Glyph.MEDI_I_BP);
-                        break;
-                    }
-
-                    // *** AI, EI, OI, UI, OEI, UEI
-                    // medial double tooth I diphthong rule ***
-                    if (contextCallsForDoubleToothI(positionInWord, charAbove, charBelow)) {
-                        renderedWord.insert(0, Glyph.MEDI_I_DOUBLE_TOOTH); // double tooth
-                        break;
-                    }
-
-                    // normal single tooth I
-                    renderedWord.insert(0, Glyph.MEDI_I);
-                    break;
-                case FINAL:
-                    if (isRoundLetterIncludingQG(charAbove)) {
-                        renderedWord.insert(0, Glyph.FINA_I_BP);               // after BPFK
-                    } else {
-                        renderedWord.insert(0, Glyph.FINA_I);                  // normal
-                    }
-                    break;
-            }
-            glyphShapeBelow = Shape.TOOTH;
-        }
-
-        private boolean contextCallsForDoubleToothI(int positionInWord, char charAbove, char charBelow) {
-            if (charBelow == Uni.I) return false;
-            if (charAbove == Uni.A ||
-                    charAbove == Uni.E ||
-                    charAbove == Uni.O ||
-                    charAbove == Uni.U) return true;
-            // or non long toothed OE/UE
-            return ((charAbove == Uni.OE ||
-                    charAbove == Uni.UE) &&
-                    !needsLongToothU(inputWord, positionInWord - 1));
-        }
-
-        private void handleO(StringBuilder renderedWord, char charAbove) {
-            gender = Gender.MASCULINE;
-            switch (location) {
-                case ISOLATE:
-                    if (isSuffix) {
-                        renderedWord.insert(0, Glyph.FINA_O);                  // O suffix   *** suffix rule ***
-                    } else {
-                        renderedWord.insert(0, Glyph.ISOL_O);                  // normal
-                    }
-                    break;
-                case INITIAL:
-                    if (isSuffix) {
-                        renderedWord.insert(0, Glyph.MEDI_O_BP);               // O of OO suffix   *** suffix rule ***
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_O);                  // normal
-                    }
-                    break;
-                case MEDIAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.MEDI_O_FVS1);             // tooth + O
-                    } else {
-                        if (isRoundLetter(charAbove)) {
-                            renderedWord.insert(0, Glyph.MEDI_O_BP);           // After BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_O);              // normal
-                        }
-                    }
-                    break;
-                case FINAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.FINA_O_FVS1);             // round o
-                    } else {
-                        if (isRoundLetter(charAbove)) {
-                            renderedWord.insert(0, Glyph.FINA_O_BP);           // After BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.FINA_O);              // normal
-                        }
-                    }
-                    break;
-            }
-            glyphShapeBelow = Shape.STEM;
-        }
-
-        private void handleU(StringBuilder renderedWord, char charAbove) {
-            gender = Gender.MASCULINE;
-            switch (location) {
-                case ISOLATE:
-                    if (isSuffix) {
-                        renderedWord.insert(0, Glyph.FINA_U);                  // O suffix   *** suffix rule ***
-                    } else {
-                        renderedWord.insert(0, Glyph.ISOL_U);                  // normal
-                    }
-                    break;
-                case INITIAL:
-                    if (isSuffix) {
-                        renderedWord.insert(0, Glyph.MEDI_U_BP);               // U of UU suffix   *** suffix rule ***
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_U);                  // normal
-                    }
-                    break;
-                case MEDIAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.MEDI_U_FVS1);             // tooth + O
-                    } else {
-                        if (isRoundLetter(charAbove)) {
-                            renderedWord.insert(0, Glyph.MEDI_U_BP);           // After BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_U);              // normal
-                        }
-                    }
-                    break;
-                case FINAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.FINA_U_FVS1);             // round o
-                    } else {
-                        if (isRoundLetter(charAbove)) {
-                            renderedWord.insert(0, Glyph.FINA_U_BP);           // After BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.FINA_U);              // normal
-                        }
-                    }
-                    break;
-            }
-            glyphShapeBelow = Shape.STEM;
-        }
-
-        private void handleOE(StringBuilder renderedWord, int positionInWord, char charAbove) {
-            gender = Gender.FEMININE;
-            switch (location) {
-                case ISOLATE:
-                    if (isSuffix) {
-                        renderedWord.insert(0, Glyph.FINA_OE);                 // O suffix   *** suffix rule ***
-                    } else {
-                        renderedWord.insert(0, Glyph.ISOL_OE);                 // normal
-                    }
-                    break;
-                case INITIAL:
-                    if (isSuffix) {
-                        renderedWord.insert(0, Glyph.MEDI_OE_BP);              // O of OO suffix   *** suffix rule ***
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_OE);                 // normal
-                    }
-                    break;
-                case MEDIAL:
-                    if (fvs == Uni.FVS1) {
-                        if (isRoundLetterIncludingQG(charAbove)) {
-                            renderedWord.insert(0, Glyph.MEDI_OE_FVS1_BP);     // first syllable long tooth OE after BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_OE_FVS1);        // first syllable long tooth OE
-                        }
-                    } else if (fvs == Uni.FVS2) {
-                        renderedWord.insert(0, Glyph.MEDI_OE_FVS2);            // extra tooth for 2 part name
-                    } else {
-                        if (needsLongToothU(inputWord, positionInWord)) {
-                            // *** first syllable long tooth rule (except in suffix) ***
-                            if (isRoundLetterIncludingQG(charAbove)) {
-                                renderedWord.insert(0, Glyph.MEDI_OE_FVS1_BP); // first syllable long tooth UE after BPFK
-                            } else {
-                                renderedWord.insert(0, Glyph.MEDI_OE_FVS1);    // first syllable long tooth UE
-                            }
-                        } else if (isRoundLetterIncludingQG(charAbove)) {
-                            renderedWord.insert(0, Glyph.MEDI_OE_BP);          // After BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_OE);             // normal
-                        }
-                    }
-                    break;
-                case FINAL:
-                    if (fvs == Uni.FVS1) {
-                        if (isRoundLetterIncludingQG(charAbove)) {
-                            renderedWord.insert(0, Glyph.FINA_OE_FVS1_BP);     // round o with tail after BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.FINA_OE_FVS1);        // round o with tail
-                        }
-                    } else {
-                        if (isRoundLetterIncludingQG(charAbove)) {
-                            renderedWord.insert(0, Glyph.FINA_OE_BP);          // After BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.FINA_OE);             // normal
-                        }
-                    }
-                    break;
-            }
-            glyphShapeBelow = Shape.STEM;
-        }
-
-        private void handleUE(StringBuilder renderedWord, int positionInWord, char charAbove) {
-            gender = Gender.FEMININE;
-            switch (location) {
-                case ISOLATE:
-                    if (isSuffix) {
-                        renderedWord.insert(0, Glyph.FINA_UE);                 // O suffix   *** suffix rule ***
-                    } else if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.ISOL_UE_FVS1);            // like E+UE
-                    } else {
-                        renderedWord.insert(0, Glyph.ISOL_UE);                 // normal
-                    }
-                    break;
-                case INITIAL:
-                    if (isSuffix) {
-                        renderedWord.insert(0, Glyph.MEDI_UE_BP);              // U of UU suffix   *** suffix rule ***
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_UE);                 // normal
-                    }
-                    break;
-                case MEDIAL:
-                    if (fvs == Uni.FVS1) {
-                        if (isRoundLetterIncludingQG(charAbove)) {
-                            renderedWord.insert(0, Glyph.MEDI_UE_FVS1_BP);     // first syllable long tooth UE after BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_UE_FVS1);        // first syllable long tooth UE
-                        }
-                    } else if (fvs == Uni.FVS2) {
-                        renderedWord.insert(0, Glyph.MEDI_UE_FVS2);            // extra tooth for 2 part name
-                    } else {
-                        if (needsLongToothU(inputWord, positionInWord)) {
-                            // *** first syllable long tooth rule (except in suffix) ***
-                            if (isRoundLetterIncludingQG(charAbove)) {
-                                renderedWord.insert(0, Glyph.MEDI_UE_FVS1_BP); // first syllable long tooth UE after BPFK
-                            } else {
-                                renderedWord.insert(0, Glyph.MEDI_UE_FVS1);    // first syllable long tooth UE
-                            }
-                        } else if (isRoundLetterIncludingQG(charAbove)) {
-                            renderedWord.insert(0, Glyph.MEDI_UE_BP);          // After BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_UE);             // normal
-                        }
-                    }
-                    break;
-                case FINAL:
-                    if (fvs == Uni.FVS1) {
-                        if (isRoundLetterIncludingQG(charAbove)) {
-                            renderedWord.insert(0, Glyph.FINA_UE_FVS1_BP);     // round o with tail after BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.FINA_UE_FVS1);        // round o with tail
-                        }
-                    } else {
-                        if (isRoundLetterIncludingQG(charAbove)) {
-                            renderedWord.insert(0, Glyph.FINA_UE_BP);          // After BPFK
-                        } else {
-                            renderedWord.insert(0, Glyph.FINA_UE);             // normal
-                        }
-                    }
-                    break;
-            }
-            glyphShapeBelow = Shape.STEM;
-        }
-
-        private void handleEE(StringBuilder renderedWord) {
-            gender = Gender.FEMININE;
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_EE);                      // normal
-                    break;
-                case INITIAL:
-                    renderedWord.insert(0, Glyph.INIT_EE);                      // normal
-                    break;
-                case MEDIAL:
-                    renderedWord.insert(0, Glyph.MEDI_EE);                      // normal
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_EE);                      // normal
-                    break;
-            }
-            glyphShapeBelow = Shape.TOOTH;
-        }
-
-        private void handleNA(StringBuilder renderedWord, int positionInWord,
-                              char charBelow, char charBelowFvs) {
-
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_NA);                      // normal
-                    break;
-                case INITIAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.INIT_NA_FVS1_STEM);        // non-dotted
-                    } else {
-                        if (glyphShapeBelow == Shape.STEM) {
-                            renderedWord.insert(0, Glyph.INIT_NA_STEM);        // normal stem
-                        } else {
-                            renderedWord.insert(0, Glyph.INIT_NA_TOOTH);       // normal tooth
-                        }
-                    }
-                    break;
-                case MEDIAL:
-
-                    if (fvs == Uni.FVS1) {
-                        if (glyphShapeBelow == Shape.STEM) {
-                            renderedWord.insert(0, Glyph.MEDI_NA_FVS1_STEM);    // dotted stem
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_NA_FVS1_TOOTH);   // dotted tooth
-                        }
-                        glyphShapeBelow = Shape.TOOTH;
-                    } else if (fvs == Uni.FVS2) {
-                        renderedWord.insert(0, Glyph.MEDI_NA_FVS2);             // MVS
-                        glyphShapeBelow = Shape.STEM;
-                    } else if (fvs == Uni.FVS3) {
-                        renderedWord.insert(0, Glyph.MEDI_NA_FVS3);             // tod script
-                        glyphShapeBelow = Shape.TOOTH;
-                    } else {
-                        // *** dot N before vowel rule ***
-                        if (isVowel(charBelow)) {
-                            // *** don't dot N if final letter before vowel of compound name ***
-                            if (positionInWord < length - 3 && // the next char should not be final either (ie, KINO)
-                                    isFVS(inputWord.charAt(positionInWord + 2)) &&
-                                    isTwoPartNameInitialVowel(charBelow, charBelowFvs)) {
-                                // This will work for names whose second part starts with
-                                // A, I, O, U, OE, and UE. But it won't work if it starts
-                                // with E or EE because there are no second medial (FVS1)
-                                // forms for these letters. A user could insert a ZWJ but
-                                // they are unlikely to know that.
-                                if (glyphShapeBelow == Shape.STEM) {
-                                    renderedWord.insert(0, Glyph.MEDI_NA_STEM);    // non-dotted stem
-                                } else {
-                                    renderedWord.insert(0, Glyph.MEDI_NA_TOOTH);   // non-dotted tooth
-                                }
-                            } else {
-                                if (glyphShapeBelow == Shape.STEM) {
-                                    renderedWord.insert(0, Glyph.MEDI_NA_FVS1_STEM);    // dotted stem
-                                } else {
-                                    renderedWord.insert(0, Glyph.MEDI_NA_FVS1_TOOTH);   // dotted tooth
-                                }
-                            }
-                        } else {
-                            if (glyphShapeBelow == Shape.STEM) {
-                                renderedWord.insert(0, Glyph.MEDI_NA_STEM);    // normal non-dotted stem
-                            } else {
-                                renderedWord.insert(0, Glyph.MEDI_NA_TOOTH);   // normal non-dotted tooth
-                            }
-                        }
-                        glyphShapeBelow = Shape.TOOTH;
-                    }
-                    break;
-                case FINAL:
-                    if (charBelow == Uni.MVS) {
-                        renderedWord.insert(0, Glyph.MEDI_NA_FVS2);             // MVS
-                    } else {
-                        renderedWord.insert(0, Glyph.FINA_NA);                  // normal
-                    }
-                    glyphShapeBelow = Shape.STEM;
-                    break;
-            }
-        }
-
-        private void handleANG(StringBuilder renderedWord) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_ANG);                      // normal
-                    break;
-                case INITIAL:
-                    if (glyphShapeBelow == Shape.ROUND) {
-                        renderedWord.insert(0, Glyph.INIT_ANG_ROUND);            // before round
-                    } else if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.INIT_ANG_STEM);             // before stem
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_ANG_TOOTH);            // tooth tooth
-                    }
-                    break;
-                case MEDIAL:
-                    if (glyphShapeBelow == Shape.ROUND) {
-                        renderedWord.insert(0, Glyph.MEDI_ANG_ROUND);            // before round
-                    } else if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.MEDI_ANG_STEM);             // before stem
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_ANG_TOOTH);            // tooth tooth
-                    }
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_ANG);                      // normal
-                    break;
-            }
-            glyphShapeBelow = Shape.TOOTH;
-        }
-
-        private void handleBA(StringBuilder renderedWord, char charBelow) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_BA);                       // normal
-                    break;
-                case INITIAL:
-                    if (isOuVowel(charBelow)) {
-                        renderedWord.insert(0, Glyph.INIT_BA_OU);                // OU
-                    } else if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.INIT_BA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_BA);                   // normal
-                    }
-                    break;
-                case MEDIAL:
-                    if (isOuVowel(charBelow)) {
-                        renderedWord.insert(0, Glyph.MEDI_BA_OU);                // OU
-                    } else if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.MEDI_BA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_BA_TOOTH);                   // normal
-                    }
-                    break;
-                case FINAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.FINA_BA_FVS1);              // o with left sweep
-                    } else {
-                        renderedWord.insert(0, Glyph.FINA_BA);                   // normal
-                    }
-                    break;
-            }
-            glyphShapeBelow = Shape.STEM;
-        }
-
-        private void handlePA(StringBuilder renderedWord, char charBelow) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_PA);                       // normal
-                    break;
-                case INITIAL:
-                    if (isOuVowel(charBelow)) {
-                        renderedWord.insert(0, Glyph.INIT_PA_OU);                // OU
-                    } else if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.INIT_PA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_PA);                   // normal
-                    }
-                    break;
-                case MEDIAL:
-                    if (isOuVowel(charBelow)) {
-                        renderedWord.insert(0, Glyph.MEDI_PA_OU);                // OU
-                    } else if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.MEDI_PA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_PA_TOOTH);                   // normal
-                    }
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_PA);                       // normal
-                    break;
-            }
-            glyphShapeBelow = Shape.STEM;
-        }
-
-        private void handleQA(StringBuilder renderedWord, int positionInWord, char charAbove, char charBelow) {
-            switch (location) {
-                case ISOLATE:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.ISOL_QA_FVS1);             // dotted feminine
-                    } else {
-                        renderedWord.insert(0, Glyph.ISOL_QA);                  // normal
-                    }
-                    break;
-                case INITIAL:
-                    if (fvs == Uni.FVS1) {
-                        if (isFeminineVowel(charBelow) || charBelow == Uni.I) {
-                            if (isOuVowel(charBelow)) {
-                                renderedWord.insert(0, Glyph.INIT_QA_FVS1_FEM_OU);   // dotted feminine for OU
-                            } else {
-                                renderedWord.insert(0, Glyph.INIT_QA_FVS1_FEM);      // dotted feminine
-                            }
-                        } else {
-                            if (glyphShapeBelow == Shape.STEM) {
-                                renderedWord.insert(0, Glyph.INIT_QA_FVS1_STEM);     // dotted masculine stem
-                            } else {
-                                renderedWord.insert(0, Glyph.INIT_QA_FVS1_TOOTH);    // dotted masculine tooth
-                            }
-                        }
-                    } else {
-                        if (isFeminineVowel(charBelow) || charBelow == Uni.I) {
-                            if (isOuVowel(charBelow)) {
-                                renderedWord.insert(0, Glyph.INIT_QA_FEM_OU);   // feminine for OU
-                            } else {
-                                renderedWord.insert(0, Glyph.INIT_QA_FEM);      // feminine
-                            }
-                        } else {
-                            if (glyphShapeBelow == Shape.STEM) {
-                                renderedWord.insert(0, Glyph.INIT_QA_STEM);     // normal (masculine) stem
-                            } else {
-                                renderedWord.insert(0, Glyph.INIT_QA_TOOTH);    // normal (masculine) tooth
-                            }
-                        }
-                    }
-                    break;
-                case MEDIAL:
-
-                    if (fvs == Uni.FVS1) {
-                        if (isFeminineVowel(charBelow) || charBelow == Uni.I) {
-                            if (isOuVowel(charBelow)) {
-                                renderedWord.insert(0, Glyph.MEDI_QA_FVS1_FEM_OU);   // dotted feminine for OU
-                            } else {
-                                renderedWord.insert(0, Glyph.MEDI_QA_FVS1_FEM);      // dotted feminine
-                            }
-                            glyphShapeBelow = Shape.ROUND;
-                        } else if (isMasculineVowel(charBelow)) {
-                            renderedWord.insert(0, Glyph.MEDI_QA_FVS1);         // dotted double tooth masculine
-                            glyphShapeBelow = Shape.TOOTH;
-                        } else { // consonant
-                            if (gender == Gender.NEUTER) {
-                                gender = getWordGenderAboveIndex(positionInWord, inputWord);
-                            }
-                            if (gender == Gender.FEMININE) {
-                                renderedWord.insert(0, Glyph.MEDI_QA_FEM_CONSONANT_DOTTED);   // dotted feminine final before consonant
-                            } else {
-                                renderedWord.insert(0, Glyph.MEDI_QA_FVS1);     // dotted double tooth masculine
-                            }
-                            glyphShapeBelow = Shape.TOOTH;
-                        }
-                    } else if (fvs == Uni.FVS2) {
-                        renderedWord.insert(0, Glyph.MEDI_QA_FVS2);             // dotted MVS
-                        glyphShapeBelow = Shape.TOOTH;
-                    } else if (fvs == Uni.FVS3) {
-                        renderedWord.insert(0, Glyph.MEDI_QA_FVS3);             // MVS
-                        glyphShapeBelow = Shape.TOOTH;
-                    } else {
-                        if (isFeminineVowel(charBelow) || charBelow == Uni.I) {
-                            if (isOuVowel(charBelow)) {
-                                renderedWord.insert(0, Glyph.MEDI_QA_FEM_OU);   // feminine for OU
-                            } else {
-                                renderedWord.insert(0, Glyph.MEDI_QA_FEM);      // feminine
-                            }
-                            glyphShapeBelow = Shape.ROUND;
-                        } else if (isMasculineVowel(charBelow)) {
-                            if (glyphShapeBelow == Shape.STEM) {
-                                renderedWord.insert(0, Glyph.MEDI_QA_STEM);     // normal stem (masculine double tooth)
-                            } else {
-                                renderedWord.insert(0, Glyph.MEDI_QA_TOOTH);    // normal tooth (masculine double tooth)
-                            }
-                            glyphShapeBelow = Shape.TOOTH;
-                        } else { // consonant
-                            // does medial QA before a consonant ever happen
-                            // in a real word?
-                            if (gender == Gender.NEUTER) {
-                                gender = getWordGenderAboveIndex(positionInWord, inputWord);
-                            }
-                            if (gender == Gender.FEMININE ||
-                                    (gender == Gender.NEUTER
-                                            && charAbove == Uni.I)) {
-                                renderedWord.insert(0, Glyph.MEDI_QA_FEM_CONSONANT);   // feminine final before consonant
-                            } else {
-                                if (glyphShapeBelow == Shape.STEM) {
-                                    renderedWord.insert(0, Glyph.MEDI_QA_STEM);        // normal stem (masculine double tooth)
-                                } else {
-                                    renderedWord.insert(0, Glyph.MEDI_QA_TOOTH);       // normal tooth (masculine double tooth)
-                                }
-                            }
-                            glyphShapeBelow = Shape.TOOTH;
-                        }
-                    }
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_QA);                       // normal
-                    glyphShapeBelow = Shape.TOOTH;
-                    break;
-            }
-        }
-
-        private void handleGA(StringBuilder renderedWord, int positionInWord, char charAbove, char charBelow) {
-
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_GA);                      // normal
-                    break;
-                case INITIAL:
-                    if (fvs == Uni.FVS1) {
-                        if (glyphShapeBelow == Shape.STEM) {
-                            renderedWord.insert(0, Glyph.INIT_GA_FVS1_STEM);    // undotted masculine stem
-                        } else {
-                            renderedWord.insert(0, Glyph.INIT_GA_FVS1_TOOTH);   // undotted masculine tooth
-                        }
-                        // TODO feminine forms are not handled.
-                        // What are they supposed to look like?
-                    } else {
-                        if (isFeminineVowel(charBelow) || charBelow == Uni.I) {
-                            if (isOuVowel(charBelow)) {
-                                renderedWord.insert(0, Glyph.INIT_GA_FEM_OU);   // feminine for OU
-                            } else {
-                                renderedWord.insert(0, Glyph.INIT_GA_FEM);      // feminine
-                            }
-                        } else {
-                            if (isConsonant(charBelow)) {
-                                // *** feminine form before consonant in foreign words ***
-                                renderedWord.insert(0, Glyph.INIT_GA_FEM);      // feminine
-                            } else if (glyphShapeBelow == Shape.STEM) {
-                                renderedWord.insert(0, Glyph.INIT_GA_STEM);     // normal (masculine) stem
-                            } else {
-                                renderedWord.insert(0, Glyph.INIT_GA_TOOTH);    // normal (masculine) tooth
-                            }
-                        }
-                    }
-                    break;
-                case MEDIAL:
-
-                    if (fvs == Uni.FVS1) {
-                        if (glyphShapeBelow == Shape.STEM) {
-                            renderedWord.insert(0, Glyph.MEDI_GA_FVS1_STEM);    // dotted masculine stem
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_GA_FVS1_TOOTH);   // dotted masculine tooth
-                        }
-                        glyphShapeBelow = Shape.TOOTH;
-                    } else if (fvs == Uni.FVS2) {
-                        renderedWord.insert(0, Glyph.MEDI_GA_FVS2);             // MVS
-                        glyphShapeBelow = Shape.TOOTH;
-                    } else if (fvs == Uni.FVS3) {
-                        if (glyphShapeBelow == Shape.STEM) {
-                            renderedWord.insert(0, Glyph.MEDI_GA_FVS3_STEM);    // feminine before consonant stem
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_GA_FVS3_TOOTH);   // feminine before consonant tooth
-                        }
-                        glyphShapeBelow = Shape.TOOTH;
-                    } else { // no FVS, just apply context rules
-                        if (isFeminineVowel(charBelow) || charBelow == Uni.I) {
-                            // *** feminine GA rule ***
-                            if (isOuVowel(charBelow)) {
-                                renderedWord.insert(0, Glyph.MEDI_GA_FEM_OU);   // feminine for OU
-                            } else {
-                                renderedWord.insert(0, Glyph.MEDI_GA_FEM);      // feminine
-                            }
-                            glyphShapeBelow = Shape.ROUND;
-                        } else if (isMasculineVowel(charBelow)) {
-                            // *** dotted masculine GA rule ***
-                            if (glyphShapeBelow == Shape.STEM) {
-                                renderedWord.insert(0, Glyph.MEDI_GA_FVS1_STEM);   // dotted masculine stem
-                            } else {
-                                renderedWord.insert(0, Glyph.MEDI_GA_FVS1_TOOTH);  // dotted masculine tooth
-                            }
-                            glyphShapeBelow = Shape.TOOTH;
-                        } else { // consonant
-                            if (gender == Gender.NEUTER) {
-                                gender = getWordGenderAboveIndex(positionInWord, inputWord);
-                            }
-                            // *** medial GA before consonant rule ***
-                            if (gender == Gender.FEMININE ||
-                                    // Defaulting to feminine form for I
-                                    (gender == Gender.NEUTER
-                                            && charAbove == Uni.I) ||
-                                    // treat a G between two consonants as feminine (as in ANGGLI)
-                                    // (but not after Y because Y is like I)
-                                    (charAbove != Uni.YA &&
-                                            (isConsonant(charAbove) ||
-                                                    charAbove == Uni.ZWJ))) {
-
-                                if (charBelow == Uni.NA ||
-                                        charBelow == Uni.MA ||
-                                        charBelow == Uni.LA ) {
-                                    char renderedCharBelow = renderedWord.charAt(0);
-                                    if (renderedCharBelow == Glyph.FINA_MA ||
-                                            renderedCharBelow == Glyph.FINA_LA ||
-                                            renderedCharBelow == Glyph.FINA_NA ||
-                                            renderedCharBelow == Glyph.MEDI_NA_FVS2) {
-                                        // make exception for words like CHECHEGM_A
-                                        renderedWord.insert(0, Glyph.MEDI_GA_FVS3_STEM);    // feminine before consonant stem
-                                    } else {
-                                        renderedWord.insert(0, Glyph.MEDI_GA_FEM);      // BIG Fem G looks better for medial N, M, L
-                                    }
-                                } else if (glyphShapeBelow == Shape.STEM) {
-                                    renderedWord.insert(0, Glyph.MEDI_GA_FVS3_STEM);    // feminine before consonant stem
-                                } else {
-                                    renderedWord.insert(0, Glyph.MEDI_GA_FVS3_TOOTH);   // feminine before consonant tooth
-                                }
-                                glyphShapeBelow = Shape.ROUND;
-                            } else {
-                                renderedWord.insert(0, Glyph.MEDI_GA);       // normal (undotted masculine)
-                                glyphShapeBelow = Shape.TOOTH;
-                            }
-
-                        }
-                    }
-                    break;
-                case FINAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.FINA_GA_FVS1);          // masculine context override (same as default)
-                    } else if (fvs == Uni.FVS2) {
-                        renderedWord.insert(0, Glyph.FINA_GA_FVS2);          // feminine
-                    } else if (charBelow == Uni.MVS) {
-                        renderedWord.insert(0, Glyph.MEDI_GA_FVS2);          // MVS
-                    } else {
-                        gender = getWordGenderAboveIndex(positionInWord, inputWord);
-                        if (gender == Gender.MASCULINE ||
-                                charAbove == Uni.ZWJ) {
-                            renderedWord.insert(0, Glyph.FINA_GA);           // masculine
-                        } else {
-                            // Defaulting to feminine form for I
-                            renderedWord.insert(0, Glyph.FINA_GA_FVS2);      // feminine
-                        }
-                    }
-                    glyphShapeBelow = Shape.TOOTH;
-                    break;
-            }
-        }
-
-        private void handleMA(StringBuilder renderedWord, int positionInWord,
-                              char charAbove, char charBelow) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_MA);                       // normal
-                    break;
-                case INITIAL:
-                    if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.INIT_MA_STEM_LONG);         // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_MA_TOOTH);             // tooth
-                    }
-                    break;
-                case MEDIAL:
-                    if (isRoundLetter(charAbove) ||
-                            charAbove == Uni.ANG) {
-                        renderedWord.insert(0, Glyph.MEDI_MA_BP);                // tail extended for round letter
-                    } else if (charAbove == Uni.GA) {
-                        if (gender == Gender.NEUTER) {
-                            gender = getWordGenderAboveIndex(positionInWord, inputWord);
-                        }
-                        if (gender != Gender.MASCULINE ||
-                                // feminine G when between consonants
-                                (positionInWord > 1 &&
-                                        (isConsonant(inputWord.charAt(positionInWord - 2)) ||
-                                                inputWord.charAt(positionInWord - 2) == Uni.ZWJ))) {
-                            renderedWord.insert(0, Glyph.MEDI_MA_BP);            // tail extended for round letter
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_MA_TOOTH);         // tooth
-                        }
-                    } else if (glyphShapeBelow != Shape.TOOTH ||
-                            // use the longer stem if M/L is below
-                            charBelow == Uni.MA || charBelow == Uni.LA ||
-                            charBelow == Uni.LHA) {
-                        renderedWord.insert(0, Glyph.MEDI_MA_STEM_LONG);         // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_MA_TOOTH);             // tooth
-                    }
-                    glyphShapeBelow = Shape.TOOTH;
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_MA);                       // normal
-                    glyphShapeBelow = Shape.STEM;
-                    break;
-            }
-        }
-
-        private void handleLA(StringBuilder renderedWord, int positionInWord,
-                              char charAbove, char charBelow) {
-
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_LA);                       // normal
-                    break;
-                case INITIAL:
-                    if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.INIT_LA_STEM_LONG);         // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_LA_TOOTH);             // tooth
-                    }
-                    break;
-                case MEDIAL:
-                    if (isRoundLetter(charAbove) ||
-                            charAbove == Uni.ANG) {
-                        renderedWord.insert(0, Glyph.MEDI_LA_BP);                // tail extended for round letter
-                    } else if (charAbove == Uni.GA) {
-                        if (gender == Gender.NEUTER) {
-                            gender = getWordGenderAboveIndex(positionInWord, inputWord);
-                        }
-                        if (gender != Gender.MASCULINE ||
-                                // feminine G when between consonants
-                                (positionInWord > 1 &&
-                                        (isConsonant(inputWord.charAt(positionInWord - 2)) ||
-                                                inputWord.charAt(positionInWord - 2) == Uni.ZWJ))) {
-                            renderedWord.insert(0, Glyph.MEDI_LA_BP);            // tail extended for round letter
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_LA_TOOTH);         // tooth
-                        }
-                    } else if (glyphShapeBelow != Shape.TOOTH ||
-                            // use the longer stem if M/L is below
-                            charBelow == Uni.MA || charBelow == Uni.LA ||
-                            charBelow == Uni.LHA) {
-                        renderedWord.insert(0, Glyph.MEDI_LA_STEM_LONG);         // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_LA_TOOTH);             // tooth
-                    }
-                    glyphShapeBelow = Shape.TOOTH;
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_LA);                       // normal
-                    glyphShapeBelow = Shape.STEM;
-                    break;
-            }
-        }
-
-        private void handleSA(StringBuilder renderedWord) {
-            switch (location) {
-
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_SA);                       // normal
-                    break;
-                case INITIAL:
-                    if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.INIT_SA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_SA_TOOTH);             // tooth
-                    }
-                    break;
-                case MEDIAL:
-                    if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.MEDI_SA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_SA_TOOTH);             // tooth
-                    }
-                    glyphShapeBelow = Shape.TOOTH;
-                    break;
-                case FINAL:
-                    glyphShapeBelow = Shape.TOOTH;
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.FINA_SA_FVS1);              // short tail
-                        glyphShapeBelow = Shape.STEM;
-                    } else if (fvs == Uni.FVS2) {
-                        renderedWord.insert(0, Glyph.FINA_SA_FVS2);              // (missing glyph)
-                    } else {
-                        renderedWord.insert(0, Glyph.FINA_SA);                   // normal
-                    }
-                    break;
-            }
-        }
-
-        private void handleSHA(StringBuilder renderedWord) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_SHA);                       // normal
-                    break;
-                case INITIAL:
-                    if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.INIT_SHA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_SHA_TOOTH);             // tooth
-                    }
-                    break;
-                case MEDIAL:
-                    if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.MEDI_SHA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_SHA_TOOTH);             // tooth
-                    }
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_SHA);                       // normal
-                    break;
-            }
-            glyphShapeBelow = Shape.TOOTH;
-        }
-
-        private void handleTA(StringBuilder renderedWord) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_TA);                       // normal
-                    break;
-                case INITIAL:
-                    if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.INIT_TA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_TA_TOOTH);             // tooth
-                    }
-                    break;
-                case MEDIAL:
-                    if (fvs == Uni.FVS1) {
-                        if (glyphShapeBelow == Shape.STEM) {
-                            renderedWord.insert(0, Glyph.MEDI_TA_FVS1_STEM);     // stem
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_TA_FVS1_TOOTH);    // tooth
-                        }
-                        glyphShapeBelow = Shape.STEM;
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_TA);                   // normal
-                        glyphShapeBelow = Shape.TOOTH;
-                    }
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_TA);                       // normal
-                    glyphShapeBelow = Shape.STEM;
-                    break;
-            }
-        }
-
-        private void handleDA(StringBuilder renderedWord, char charBelow) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_DA);                       // normal
-                    break;
-                case INITIAL:
-                    if (fvs == Uni.FVS1 || isSuffix) {
-                        renderedWord.insert(0, Glyph.INIT_DA_FVS1);              // left slanting
-                    } else {
-                        if (glyphShapeBelow == Shape.STEM) {
-                            renderedWord.insert(0, Glyph.INIT_DA_STEM);          // stem
-                        } else {
-                            renderedWord.insert(0, Glyph.INIT_DA_TOOTH);         // tooth
-                        }
-                    }
-                    break;
-                case MEDIAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.MEDI_DA_FVS1);              // left slanting
-                        glyphShapeBelow = Shape.TOOTH;
-                    } else {
-                        if (isVowel(charBelow)) {
-                            renderedWord.insert(0, Glyph.MEDI_DA_FVS1);          // left slanting
-                            glyphShapeBelow = Shape.TOOTH;
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_DA);               // normal (before consonant)
-                            glyphShapeBelow = Shape.STEM;
-                        }
-                    }
-                    break;
-                case FINAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.FINA_DA_FVS1);              // left slanting
-                        glyphShapeBelow = Shape.TOOTH;
-                    } else {
-                        renderedWord.insert(0, Glyph.FINA_DA);                   // normal (like o-n)
-                        glyphShapeBelow = Shape.STEM;
-                    }
-                    break;
-            }
-        }
-
-        private void handleCHA(StringBuilder renderedWord) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_CHA);                       // normal
-                    break;
-                case INITIAL:
-                    renderedWord.insert(0, Glyph.INIT_CHA);                       // normal
-                    break;
-                case MEDIAL:
-                    renderedWord.insert(0, Glyph.MEDI_CHA);                       // normal
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_CHA);                       // normal
-                    break;
-            }
-            glyphShapeBelow = Shape.STEM;
-        }
-
-        private void handleJA(StringBuilder renderedWord, char charBelow) {
-
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_JA);                       // normal
-                    break;
-                case INITIAL:
-                    if (charBelow == Uni.MVS) {
-                        renderedWord.insert(0, Glyph.MEDI_JA_FVS1);              // MVS
-                    } else if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.INIT_JA_STEM);              // stem
-                    } else { // tooth
-                        // The Qimad font seems to be broken here
-                        // so temporarily disabling this glyph
-                        // TODO fix the font, or remove it, or just use
-                        // this alternate glyph.
-                        //renderedWord.insert(0, Glyph.INIT_JA_TOOTH);                 // tooth
-                        renderedWord.insert(0, Glyph.INIT_JA_STEM);
-                    }
-                    break;
-                case MEDIAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.MEDI_JA_FVS1);              // MVS
-                        glyphShapeBelow = Shape.TOOTH;
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_JA);                   // normal (before consonant)
-                        glyphShapeBelow = Shape.STEM;
-                    }
-                    break;
-                case FINAL:
-                    if (charBelow == Uni.MVS) {
-                        renderedWord.insert(0, Glyph.MEDI_JA_FVS1);              // MVS
-                        glyphShapeBelow = Shape.TOOTH;
-                    } else {
-                        renderedWord.insert(0, Glyph.FINA_JA);                   // normal
-                        glyphShapeBelow = Shape.STEM;
-                    }
-                    break;
-            }
-        }
-
-        private void handleYA(StringBuilder renderedWord, int positionInWord,
-                              char charAbove, char charBelow) {
-
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_YA);                  // normal
-                    break;
-                case INITIAL:
-                    if (isSuffix && charBelow == Uni.I) {
-                        renderedWord.insert(0, Glyph.MEDI_YA);         // suffix - no hook
-                    } else if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.INIT_YA_FVS1);         // no hook
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_YA);              // hook
-                    }
-                    break;
-                case MEDIAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.MEDI_YA_FVS1);         // hook
-                    } else if (isSuffix && charAbove == Uni.I) {
-                        // *** no hook after Y (as in IYEN and IYER) ***
-                        renderedWord.insert(0, Glyph.MEDI_YA);             // suffix - no hook
-                    } else {
-
-                        // *** AYI, EYI, OYI, UYI, OEYI, UEYI
-                        // medial double tooth YI diphthong rule ***
-                        // Also do this for consonant below.
-                        if (needsLongToothU(inputWord, positionInWord - 1) || charAbove == Uni.I) {
-                            if (charBelow == Uni.I || isConsonant(charBelow)) {
-                                renderedWord.insert(0, Glyph.MEDI_YA);           // no hook
-                            } else {
-                                renderedWord.insert(0, Glyph.MEDI_YA_FVS1);      // hook
-                            }
-                        } else if (isVowel(charAbove)) {
-                            if (charBelow == Uni.I) {
-                                renderedWord.insert(0, Glyph.MEDI_YA);          // no hook
-                            } else if (isConsonant(charBelow)) {
-                                renderedWord.insert(0, Glyph.MEDI_I_DOUBLE_TOOTH); // double tooth
-                            } else {
-                                renderedWord.insert(0, Glyph.MEDI_YA_FVS1);          // hook
-                            }
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_YA_FVS1);          // hook
-                        }
-                    }
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_YA);                  // normal
-                    break;
-            }
-            glyphShapeBelow = Shape.TOOTH;
-        }
-
-        private void handleRA(StringBuilder renderedWord) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_RA);                  // normal
-                    break;
-                case INITIAL:
-                    if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.INIT_RA_STEM);         // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_RA_TOOTH);        // tooth
-                    }
-                    break;
-                case MEDIAL:
-                    if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.MEDI_RA_STEM);         // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_RA_TOOTH);        // tooth
-                    }
-                    glyphShapeBelow = Shape.TOOTH;
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_RA);                  // normal
-                    glyphShapeBelow = Shape.STEM;
-                    break;
-            }
-        }
-
-        private void handleWA(StringBuilder renderedWord, char charBelow) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_WA);                  // normal
-                    break;
-                case INITIAL:
-                    renderedWord.insert(0, Glyph.INIT_WA);                  // normal
-                    break;
-                case MEDIAL:
-                    renderedWord.insert(0, Glyph.MEDI_WA);              // normal
-                    glyphShapeBelow = Shape.TOOTH;
-                    break;
-                case FINAL:
-                    if (fvs == Uni.FVS1) {
-                        renderedWord.insert(0, Glyph.FINA_WA_FVS1);         // round like final o
-                        glyphShapeBelow = Shape.STEM;
-                    } else if (charBelow == Uni.MVS) {
-                        renderedWord.insert(0, Glyph.FINA_WA_FVS1);         // MVS
-                        glyphShapeBelow = Shape.STEM;
-                    } else {
-                        renderedWord.insert(0, Glyph.FINA_WA);              // normal
-                        glyphShapeBelow = Shape.TOOTH;
-                    }
-                    break;
-            }
-        }
-
-        private void handleFA(StringBuilder renderedWord, char charBelow) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_FA);                       // normal
-                    break;
-                case INITIAL:
-                    if (isOuVowel(charBelow)) {
-                        renderedWord.insert(0, Glyph.INIT_FA_OU);                // OU
-                    } else if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.INIT_FA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_FA);                   // normal
-                    }
-                    break;
-                case MEDIAL:
-                    if (isOuVowel(charBelow)) {
-                        renderedWord.insert(0, Glyph.MEDI_FA_OU);                // OU
-                    } else if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.MEDI_FA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_FA_TOOTH);             // normal
-                    }
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_FA);                       // normal
-                    break;
-            }
-            glyphShapeBelow = Shape.STEM;
-        }
-
-        private void handleKA(StringBuilder renderedWord, char charBelow) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_KA);                       // normal
-                    break;
-                case INITIAL:
-                    if (isOuVowel(charBelow)) {
-                        renderedWord.insert(0, Glyph.INIT_KA_OU);                // OU
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_KA);                   // normal
-                    }
-                    break;
-                case MEDIAL:
-                    if (isOuVowel(charBelow)) {
-                        renderedWord.insert(0, Glyph.MEDI_KA_OU);                // OU
-                    } else if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.MEDI_KA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_KA_TOOTH);                   // normal
-                    }
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_KA);                       // normal
-                    break;
-            }
-            glyphShapeBelow = Shape.STEM;
-        }
-
-        private void handleKHA(StringBuilder renderedWord, char charBelow) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_KHA);                       // normal
-                    break;
-                case INITIAL:
-                    if (isOuVowel(charBelow)) {
-                        renderedWord.insert(0, Glyph.INIT_KHA_OU);                // OU
-                    } else {
-                        renderedWord.insert(0, Glyph.INIT_KHA);                   // normal
-                    }
-                    break;
-                case MEDIAL:
-                    if (isOuVowel(charBelow)) {
-                        renderedWord.insert(0, Glyph.MEDI_KHA_OU);                // OU
-                    } else if (glyphShapeBelow == Shape.STEM) {
-                        renderedWord.insert(0, Glyph.MEDI_KHA_STEM);              // stem
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_KHA_TOOTH);             // normal
-                    }
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_KHA);                       // normal
-                    break;
-            }
-            glyphShapeBelow = Shape.STEM;
-        }
-
-        private void handleTSA(StringBuilder renderedWord) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_TSA);                       // normal
-                    break;
-                case INITIAL:
-                    renderedWord.insert(0, Glyph.INIT_TSA);                       // normal
-                    break;
-                case MEDIAL:
-                    renderedWord.insert(0, Glyph.MEDI_TSA);                       // normal
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_TSA);                       // normal
-                    break;
+        }
+
+        private void copyInputWord() {
+            for (int i = 0; i < length; i++) {
+                renderedWord[renderOffset + i] = inputWord.charAt(i);
             }
-            glyphShapeBelow = Shape.STEM;
         }
 
-        private void handleZA(StringBuilder renderedWord) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_ZA);                        // normal
-                    break;
-                case INITIAL:
-                    renderedWord.insert(0, Glyph.INIT_ZA);                        // normal
-                    break;
-                case MEDIAL:
-                    renderedWord.insert(0, Glyph.MEDI_ZA);                        // normal
+        private void renderLetter(int letter, int positionInWord,
+                                  char charAbove, char charBelow, char charBelowFvs) {
+            switch (rules.letterGenders[letter]) {
+                case ShapingRules.GENDER_MASCULINE:
+                    gender = Gender.MASCULINE;
                     break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_ZA);                        // normal
+                case ShapingRules.GENDER_FEMININE:
+                    gender = Gender.FEMININE;
                     break;
             }
-            glyphShapeBelow = Shape.STEM;
+            rulePosition = positionInWord;
+            ruleCharAboveBit = rules.getMaskBit(charAbove);
+            ruleCharBelowBit = rules.getMaskBit(charBelow);
+            ruleCharBelow = charBelow;
+            ruleCharBelowFvs = charBelowFvs;
+
+            // the last rule always matches
+            int rule = rules.getFirstRule(
+                    letter, location.ordinal(), fvs, glyphShapeBelow, isSuffix);
+            while (!matchesAll(rules.ruleAtomStarts[rule], rules.ruleAtomStarts[rule + 1])) {
+                rule++;
+            }
+            renderGlyph(rules.ruleGlyphs[rule]);
+            int shape = rules.ruleShapes[rule];
+            if (shape != ShapingRules.SHAPE_KEEP) {
+                glyphShapeBelow = shape;
+            }
         }
 
-        private void handleHAA(StringBuilder renderedWord) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_HAA);                        // normal
-                    break;
-                case INITIAL:
-                    renderedWord.insert(0, Glyph.INIT_HAA);                        // normal
-                    break;
-                case MEDIAL:
-                    renderedWord.insert(0, Glyph.MEDI_HAA);                        // normal
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_HAA);                        // normal
-                    break;
+        private boolean matchesAll(int atomStart, int atomEnd) {
+            for (int atom = atomStart; atom < atomEnd; atom++) {
+                if (!matches(atom)) return false;
             }
-            glyphShapeBelow = Shape.TOOTH;
+            return true;
         }
 
-        private void handleZRA(StringBuilder renderedWord) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_ZRA);                        // normal
+        private boolean matches(int atom) {
+            int op = rules.atomOps[atom];
+            long argument = rules.atomArguments[atom];
+            boolean result;
+            switch (op & ~ShapingRules.NEGATED) {
+                case ShapingRules.ATOM_FVS:
+                    result = (fvs == argument);
                     break;
-                case INITIAL:
-                    renderedWord.insert(0, Glyph.INIT_ZRA);                        // normal
+                case ShapingRules.ATOM_SUFFIX:
+                    result = isSuffix;
                     break;
-                case MEDIAL:
-                    renderedWord.insert(0, Glyph.MEDI_ZRA);                        // normal
+                case ShapingRules.ATOM_SHAPE_BELOW:
+                    result = (glyphShapeBelow == argument);
                     break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_ZRA);                        // normal
+                case ShapingRules.ATOM_NEXT:
+                    result = (ruleCharBelowBit & argument) != 0;
                     break;
-            }
-            glyphShapeBelow = Shape.STEM; // ROUND didn't look very good
-        }
-
-        private void handleLHA(StringBuilder renderedWord, int positionInWord, char charAbove) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_LHA);                       // normal
+                case ShapingRules.ATOM_PREVIOUS:
+                    result = (ruleCharAboveBit & argument) != 0;
                     break;
-                case INITIAL:
-                    renderedWord.insert(0, Glyph.INIT_LHA);                       // normal
+                case ShapingRules.ATOM_PREVIOUS_2:
+                    char twoAbove = (rulePosition > 1) ? inputWord.charAt(rulePosition - 2) : 0;
+                    result = (rules.getMaskBit(twoAbove) & argument) != 0;
                     break;
-                case MEDIAL:
-                    if (isRoundLetter(charAbove) ||
-                            charAbove == Uni.ANG) {
-                        renderedWord.insert(0, Glyph.MEDI_LHA_BP);                // tail extended for round letter
-                    } else if (charAbove == Uni.QA ||
-                            charAbove == Uni.GA) {
-                        if (gender == Gender.NEUTER) {
-                            gender = getWordGenderAboveIndex(positionInWord, inputWord);
-                        }
-                        if (gender == Gender.FEMININE) {
-                            renderedWord.insert(0, Glyph.MEDI_LHA_BP);            // tail extended for round letter
-                        } else {
-                            renderedWord.insert(0, Glyph.MEDI_LHA);               // normal
-                        }
-                    } else {
-                        renderedWord.insert(0, Glyph.MEDI_LHA);                   // normal
+                case ShapingRules.ATOM_GENDER:
+                    // if no vowel below has decided it, the vowels above do
+                    if (gender == Gender.NEUTER) {
+                        gender = getWordGenderAboveIndex(rulePosition, inputWord);
                     }
+                    result = (toRuleGender(gender) == argument);
                     break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_LHA);                       // normal
+                case ShapingRules.ATOM_GLYPH_BELOW:
+                    result = rulePosition + 1 < length && rules.isInGlyphSet(
+                            renderedWord[renderOffset + rulePosition + 1], (int) argument);
                     break;
+                case ShapingRules.ATOM_PREDICATE:
+                    result = matchesPredicate((int) argument);
+                    break;
+                case ShapingRules.ATOM_GROUP:
+                    result = matchesAny((int) argument);
+                    break;
+                default:
+                    throw new IllegalStateException("unknown shaping rule op " + op);
             }
-            glyphShapeBelow = Shape.TOOTH;
+            return result != ((op & ShapingRules.NEGATED) != 0);
         }
 
-        private void handleZHI(StringBuilder renderedWord) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_ZHI);                        // normal
-                    break;
-                case INITIAL:
-                    renderedWord.insert(0, Glyph.INIT_ZHI);                        // normal
-                    break;
-                case MEDIAL:
-                    renderedWord.insert(0, Glyph.MEDI_ZHI);                        // normal
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_ZHI);                        // normal
-                    break;
+        // true if any of the conjunctions of the group matches
+        private boolean matchesAny(int group) {
+            short[] atomStarts = rules.conjunctionAtomStarts;
+            for (int i = rules.groupStarts[group]; i < rules.groupStarts[group + 1]; i++) {
+                if (matchesAll(atomStarts[i], atomStarts[i + 1])) return true;
             }
-            glyphShapeBelow = Shape.TOOTH;
+            return false;
         }
 
-        private void handleCHI(StringBuilder renderedWord) {
-            switch (location) {
-                case ISOLATE:
-                    renderedWord.insert(0, Glyph.ISOL_CHI);                        // normal
-                    break;
-                case INITIAL:
-                    renderedWord.insert(0, Glyph.INIT_CHI);                        // normal
-                    break;
-                case MEDIAL:
-                    renderedWord.insert(0, Glyph.MEDI_CHI);                        // normal
-                    break;
-                case FINAL:
-                    renderedWord.insert(0, Glyph.FINA_CHI);                        // normal
-                    break;
+        private boolean matchesPredicate(int predicate) {
+            switch (predicate) {
+                case ShapingRules.PREDICATE_LONG_TOOTH_U:
+                    return needsLongToothU(inputWord, rulePosition);
+                case ShapingRules.PREDICATE_LONG_TOOTH_U_ABOVE:
+                    return needsLongToothU(inputWord, rulePosition - 1);
+                case ShapingRules.PREDICATE_TWO_PART_NAME:
+                    // the next char should not be final either (ie, KINO)
+                    return rulePosition < length - 3 &&
+                            isFVS(inputWord.charAt(rulePosition + 2)) &&
+                            isTwoPartNameInitialVowel(ruleCharBelow, ruleCharBelowFvs);
+                default:
+                    throw new IllegalStateException("unknown shaping rule predicate " + predicate);
+            }
+        }
+
+        private static int toRuleGender(Gender gender) {
+            switch (gender) {
+                case MASCULINE:
+                    return ShapingRules.GENDER_MASCULINE;
+                case FEMININE:
+                    return ShapingRules.GENDER_FEMININE;
+                default:
+                    return ShapingRules.GENDER_NEUTER;
             }
-            glyphShapeBelow = Shape.STEM;
         }
 
-        private void handleNNBS(StringBuilder renderedWord) {
-            renderedWord.insert(0, Glyph.SUFFIX_SPACE);
+        private void handleNNBS() {
+            renderGlyph(Glyph.SUFFIX_SPACE);
         }
 
-        private void handleNirugu(StringBuilder renderedWord) {
-            renderedWord.insert(0, Glyph.NIRUGU);
-            glyphShapeBelow = Shape.STEM;
+        private void handleNirugu() {
+            renderGlyph(Glyph.NIRUGU);
+            glyphShapeBelow = ShapingRules.SHAPE_STEM;
         }
 
-        private void handleNonPrintingChar(StringBuilder renderedWord) {
-            renderedWord.insert(0, Uni.WJ);
+        private void handleNonPrintingChar() {
+            renderGlyph(Uni.WJ);
         }
 
         private static boolean needsLongToothU(CharSequence word, int uIndex) {
@@ -2882,17 +2077,6 @@ public final class MongolCode {
             return false;
         }
 
-        private boolean isRoundLetterIncludingQG(char character) {
-            return (character == Uni.BA || character == Uni.PA || character == Uni.QA ||
-                    character == Uni.GA || character == Uni.FA || character == Uni.KA ||
-                    character == Uni.KHA);
-        }
-
-        private boolean isRoundLetter(char character) {
-            return (character == Uni.BA || character == Uni.PA || character == Uni.FA ||
-                    character == Uni.KA || character == Uni.KHA);
-        }
-
         private boolean isTwoPartNameInitialVowel(char vowel, char fvs) {
             // XXX There is no way to recognize initial E or EE
             return (vowel == Uni.A && fvs == Uni.FVS1) ||
@@ -2903,10 +2087,6 @@ public final class MongolCode {
                     (vowel == Uni.UE && fvs == Uni.FVS2);
         }
 
-        private static boolean isOuVowel(char character) {
-            return (character >= Uni.O && character <= Uni.UE);
-        }
-
         // Starts at the end of the word and works up
         // if mixed genders only reports the first one from the bottom
         // returns null if word does not end in a valid Mongolian character
@@ -2939,11 +2119,42 @@ public final class MongolCode {
 
         final static char SPACE = ' ';
 
+        // neighbor classes that the decoding rules distinguish
+        private static final int NOT_A_LETTER = 0;
+        private static final int VOWEL = 1;
+        private static final int CONSONANT = 2;
+        private static final int VOWEL_A = 3;
+        private static final int ABOVE_CLASS_COUNT = 4;
+        private static final int VOWEL_I = 3;
+        private static final int CONSONANT_M = 4;
+        private static final int BELOW_CLASS_COUNT = 5;
+
+        // Unicode for each glyph, indexed by decodeIndex(). A null entry means
+        // the glyph has to go through decodeGlyph() with the output so far.
+        private static final String[] DECODE_TABLE = buildDecodeTable();
+
         private CharSequence inputWord;
         private Location location;
 
-        MenksoftWord(CharSequence menksoftWord) {
-            this.inputWord = menksoftWord;
+        // reused for every word, so a thread only ever needs one MenksoftWord
+        private final TextRange wordRange = new TextRange();
+        private final StringBuilder wordOutput = new StringBuilder();
+
+        MenksoftWord() {
+        }
+
+        /**
+         * Converts the word text[start, end) to Unicode and appends it to output.
+         */
+        void convertToUnicode(CharSequence text, int start, int end, StringBuilder output) {
+            wordRange.set(text, start, end);
+            inputWord = wordRange;
+            wordOutput.setLength(0);
+            convertToUnicode(wordOutput);
+            output.append(wordOutput);
+            // don't hold on to the caller's text
+            wordRange.set(null, 0, 0);
+            inputWord = null;
         }
 
         private void updateLocation(char charAbove, char charBelow) {
@@ -2977,11 +2188,11 @@ public final class MongolCode {
             return isMenksoftLetter(character) && !isMenksoftConsonant(character);
         }
 
-        String convertToUnicode() {
-            StringBuilder outputString = new StringBuilder();
+        // the rules look at outputString, so it must only hold this word
+        private void convertToUnicode(StringBuilder outputString) {
 
             if (inputWord == null || inputWord.length() == 0) {
-                return "";
+                return;
             }
 
             char charAbove = 0;
@@ -2991,84 +2202,12 @@ public final class MongolCode {
 
                 char charBelow = (i < length - 1) ? inputWord.charAt(i + 1) : 0;
 
-                updateLocation(charAbove, charBelow);
-
-                if (isMenksoftSpaceChar(currentChar)) {                    // space
-                    handleSpace(outputString, currentChar, charBelow);
-                } else if (currentChar < Glyph.A_START) {                  // punctuation
-                    handlePunctuation(outputString, currentChar);
-                } else if (currentChar < Glyph.E_START) {                  // A
-                    handleA(outputString, currentChar);
-                } else if (currentChar < Glyph.I_START) {                  // E
-                    handleE(outputString, currentChar);
-                } else if (currentChar < Glyph.O_START) {                  // I
-                    handleI(outputString, currentChar, charAbove, charBelow);
-                } else if (currentChar < Glyph.U_START) {                  // O
-                    handleO(outputString, currentChar);
-                } else if (currentChar < Glyph.OE_START) {                 // U
-                    handleU(outputString, currentChar);
-                } else if (currentChar < Glyph.UE_START) {                 // OE
-                    handleOE(outputString, currentChar);
-                } else if (currentChar < Glyph.EE_START) {                 // UE
-                    handleUE(outputString, currentChar);
-                } else if (currentChar < Glyph.NA_START) {                 // EE
-                    handleEE(outputString, currentChar, charAbove, charBelow);
-                } else if (isANG(currentChar)) {                           // ANG
-                    // handling ANG before NA because NA is appears
-                    // before and after ANG
-                    handleAng(outputString, currentChar);
-                } else if (currentChar < Glyph.BA_START) {                 // NA
-                    handleNa(outputString, currentChar, charAbove, charBelow);
-                } else if (currentChar < Glyph.PA_START) {                 // BA
-                    handleBa(outputString, currentChar);
-                } else if (currentChar < Glyph.QA_START) {                 // PA
-                    handlePa(outputString, currentChar);
-                } else if (currentChar < Glyph.GA_START) {                 // QA
-                    handleQa(outputString, currentChar, charBelow);
-                } else if (currentChar < Glyph.MA_START) {                 // GA
-                    handleGa(outputString, currentChar);
-                } else if (currentChar < Glyph.LA_START) {                 // MA
-                    handleMa(outputString, currentChar);
-                } else if (currentChar < Glyph.SA_START) {                 // LA
-                    handleLa(outputString, currentChar);
-                } else if (currentChar < Glyph.SHA_START) {                // SA
-                    handleSa(outputString, currentChar);
-                } else if (currentChar < Glyph.TA_START) {                 // SHA
-                    handleSha(outputString, currentChar);
-                } else if (currentChar < Glyph.DA_START) {                 // TA
-                    handleTa(outputString, currentChar);
-                } else if (currentChar < Glyph.CHA_START) {                // DA
-                    handleDa(outputString, currentChar);
-                } else if (currentChar < Glyph.JA_START) {                 // CHA
-                    handleCha(outputString, currentChar);
-                } else if (currentChar < Glyph.YA_START) {                 // JA
-                    handleJa(outputString, currentChar);
-                } else if (currentChar < Glyph.RA_START) {                 // YA
-                    handleYa(outputString, currentChar, charAbove, charBelow);
-                } else if (currentChar < Glyph.WA_START) {                 // RA
-                    handleRa(outputString, currentChar);
-                } else if (currentChar < Glyph.FA_START) {                 // WA
-                    handleWa(outputString, currentChar, charAbove, charBelow);
-                } else if (currentChar < Glyph.KA_START) {                 // FA
-                    handleFa(outputString, currentChar);
-                } else if (currentChar < Glyph.KHA_START) {                // KA
-                    handleKa(outputString, currentChar);
-                } else if (currentChar < Glyph.TSA_START) {                // KHA
-                    handleKha(outputString, currentChar);
-                } else if (currentChar < Glyph.ZA_START) {                 // TSA
-                    handleTsa(outputString, currentChar);
-                } else if (currentChar < Glyph.HAA_START) {                // ZA
-                    handleZa(outputString, currentChar);
-                } else if (currentChar < Glyph.ZRA_START) {                // HAA
-                    handleHaa(outputString, currentChar);
-                } else if (currentChar < Glyph.LHA_START) {                // ZRA
-                    handleZra(outputString, currentChar);
-                } else if (currentChar < Glyph.ZHI_START) {                // LHA
-                    handleLha(outputString, currentChar);
-                } else if (currentChar < Glyph.CHI_START) {                // ZHI
-                    handleZhi(outputString);
-                } else if (currentChar <= Glyph.MENKSOFT_END) {            // CHI
-                    handleChi(outputString);
+                String expansion = lookUpExpansion(outputString, currentChar, charAbove, charBelow);
+                if (expansion != null) {
+                    outputString.append(expansion);
+                } else {
+                    updateLocation(charAbove, charBelow);
+                    decodeGlyph(outputString, currentChar, charAbove, charBelow);
                 }
 
                 charAbove = currentChar;
@@ -3082,163 +2221,182 @@ public final class MongolCode {
 
                 currentChar = charBelow;
             }
+        }
+
+        // returns null if the glyph has no table entry and needs decodeGlyph()
+        private static String lookUpExpansion(StringBuilder outputString, char currentChar,
+                                              char charAbove, char charBelow) {
+            if (currentChar < Glyph.MENKSOFT_START || currentChar > Glyph.MENKSOFT_END)
+                return null;
+            int nnbs = (outputString.length() != 0 && outputString.charAt(0) == Uni.NNBS) ? 1 : 0;
+            return DECODE_TABLE[decodeIndex(currentChar,
+                    classifyAbove(charAbove), classifyBelow(charBelow), nnbs)];
+        }
+
+        private static int decodeIndex(char glyph, int aboveClass, int belowClass, int nnbs) {
+            return (((glyph - Glyph.MENKSOFT_START) * ABOVE_CLASS_COUNT + aboveClass)
+                    * BELOW_CLASS_COUNT + belowClass) * 2 + nnbs;
+        }
+
+        private static int classifyAbove(char character) {
+            if (character < Glyph.A_START || character > Glyph.MENKSOFT_END) return NOT_A_LETTER;
+            if (character >= Glyph.NA_START) return CONSONANT;
+            if (character <= Glyph.MEDI_A_UNKNOWN) return VOWEL_A;
+            return VOWEL;
+        }
+
+        private static int classifyBelow(char character) {
+            if (character < Glyph.A_START || character > Glyph.MENKSOFT_END) return NOT_A_LETTER;
+            if (character >= Glyph.INIT_MA_TOOTH && character <= Glyph.MEDI_MA_BP) return CONSONANT_M;
+            if (character >= Glyph.NA_START) return CONSONANT;
+            if (character >= Glyph.ISOL_I && character <= Glyph.ISOL_I_SUFFIX) return VOWEL_I;
+            return VOWEL;
+        }
+
+        // Runs every glyph through decodeGlyph() once for each class of neighbors
+        // that the rules distinguish, so the table and the rules can't disagree.
+        private static String[] buildDecodeTable() {
+            final char[] aboveSamples = new char[ABOVE_CLASS_COUNT];
+            aboveSamples[VOWEL_A] = Glyph.A_START;
+            aboveSamples[VOWEL] = Glyph.E_START;
+            aboveSamples[CONSONANT] = Glyph.NA_START;
+            final char[] belowSamples = new char[BELOW_CLASS_COUNT];
+            belowSamples[VOWEL_I] = Glyph.ISOL_I;
+            belowSamples[VOWEL] = Glyph.E_START;
+            belowSamples[CONSONANT_M] = Glyph.INIT_MA_TOOTH;
+            belowSamples[CONSONANT] = Glyph.NA_START;
+
+            MenksoftWord decoder = new MenksoftWord();
+            StringBuilder scratch = new StringBuilder();
+            Map<String, String> expansions = new HashMap<>();
+            int glyphCount = Glyph.MENKSOFT_END - Glyph.MENKSOFT_START + 1;
+            String[] table = new String[glyphCount * ABOVE_CLASS_COUNT * BELOW_CLASS_COUNT * 2];
+            for (char glyph = Glyph.MENKSOFT_START; glyph <= Glyph.MENKSOFT_END; glyph++) {
+                if (decoder.isMenksoftSpaceChar(glyph)) continue;
+                for (int above = 0; above < ABOVE_CLASS_COUNT; above++) {
+                    for (int below = 0; below < BELOW_CLASS_COUNT; below++) {
+                        decoder.updateLocation(aboveSamples[above], belowSamples[below]);
+                        if (decoder.dependsOnPrecedingOutput(glyph)) continue;
+                        for (int nnbs = 0; nnbs < 2; nnbs++) {
+                            scratch.setLength(0);
+                            if (nnbs == 1) scratch.append(Uni.NNBS);
+                            decoder.decodeGlyph(scratch, glyph, aboveSamples[above], belowSamples[below]);
+                            String expansion = scratch.substring(nnbs);
+                            String shared = expansions.get(expansion);
+                            if (shared == null) {
+                                expansions.put(expansion, expansion);
+                                shared = expansion;
+                            }
+                            table[decodeIndex(glyph, above, below, nnbs)] = shared;
+                        }
+                    }
+                }
+            }
+            return table;
+        }
+
+        // these rules look at the letters already written (long tooth UE, word gender)
+        private boolean dependsOnPrecedingOutput(char glyph) {
+            switch (location) {
+                case MEDIAL:
+                    return glyph == Glyph.MEDI_UE_FVS1
+                            || glyph == Glyph.MEDI_GA_FVS3_TOOTH
+                            || glyph == Glyph.MEDI_GA_FVS3_STEM;
+                case FINAL:
+                    return glyph == Glyph.FINA_GA_FVS1
+                            || glyph == Glyph.FINA_GA_FVS2;
+                default:
+                    return false;
+            }
+        }
 
-            return outputString.toString();
+        private void decodeGlyph(StringBuilder outputString, char currentChar,
+                                 char charAbove, char charBelow) {
+            if (isMenksoftSpaceChar(currentChar)) {                    // space
+                handleSpace(outputString, currentChar, charBelow);
+            } else if (currentChar < Glyph.A_START) {                  // punctuation
+                handlePunctuation(outputString, currentChar);
+            } else if (currentChar < Glyph.E_START) {                  // A
+                handleA(outputString, currentChar);
+            } else if (currentChar < Glyph.I_START) {                  // E
+                handleE(outputString, currentChar);
+            } else if (currentChar < Glyph.O_START) {                  // I
+                handleI(outputString, currentChar, charAbove, charBelow);
+            } else if (currentChar < Glyph.U_START) {                  // O
+                handleO(outputString, currentChar);
+            } else if (currentChar < Glyph.OE_START) {                 // U
+                handleU(outputString, currentChar);
+            } else if (currentChar < Glyph.UE_START) {                 // OE
+                handleOE(outputString, currentChar);
+            } else if (currentChar < Glyph.EE_START) {                 // UE
+                handleUE(outputString, currentChar);
+            } else if (currentChar < Glyph.NA_START) {                 // EE
+                handleEE(outputString, currentChar, charAbove, charBelow);
+            } else if (isANG(currentChar)) {                           // ANG
+                // handling ANG before NA because NA is appears
+                // before and after ANG
+                handleAng(outputString, currentChar);
+            } else if (currentChar < Glyph.BA_START) {                 // NA
+                handleNa(outputString, currentChar, charAbove, charBelow);
+            } else if (currentChar < Glyph.PA_START) {                 // BA
+                handleBa(outputString, currentChar);
+            } else if (currentChar < Glyph.QA_START) {                 // PA
+                handlePa(outputString, currentChar);
+            } else if (currentChar < Glyph.GA_START) {                 // QA
+                handleQa(outputString, currentChar, charBelow);
+            } else if (currentChar < Glyph.MA_START) {                 // GA
+                handleGa(outputString, currentChar);
+            } else if (currentChar < Glyph.LA_START) {                 // MA
+                handleMa(outputString, currentChar);
+            } else if (currentChar < Glyph.SA_START) {                 // LA
+                handleLa(outputString, currentChar);
+            } else if (currentChar < Glyph.SHA_START) {                // SA
+                handleSa(outputString, currentChar);
+            } else if (currentChar < Glyph.TA_START) {                 // SHA
+                handleSha(outputString, currentChar);
+            } else if (currentChar < Glyph.DA_START) {                 // TA
+                handleTa(outputString, currentChar);
+            } else if (currentChar < Glyph.CHA_START) {                // DA
+                handleDa(outputString, currentChar);
+            } else if (currentChar < Glyph.JA_START) {                 // CHA
+                handleCha(outputString, currentChar);
+            } else if (currentChar < Glyph.YA_START) {                 // JA
+                handleJa(outputString, currentChar);
+            } else if (currentChar < Glyph.RA_START) {                 // YA
+                handleYa(outputString, currentChar, charAbove, charBelow);
+            } else if (currentChar < Glyph.WA_START) {                 // RA
+                handleRa(outputString, currentChar);
+            } else if (currentChar < Glyph.FA_START) {                 // WA
+                handleWa(outputString, currentChar, charAbove, charBelow);
+            } else if (currentChar < Glyph.KA_START) {                 // FA
+                handleFa(outputString, currentChar);
+            } else if (currentChar < Glyph.KHA_START) {                // KA
+                handleKa(outputString, currentChar);
+            } else if (currentChar < Glyph.TSA_START) {                // KHA
+                handleKha(outputString, currentChar);
+            } else if (currentChar < Glyph.ZA_START) {                 // TSA
+                handleTsa(outputString, currentChar);
+            } else if (currentChar < Glyph.HAA_START) {                // ZA
+                handleZa(outputString, currentChar);
+            } else if (currentChar < Glyph.ZRA_START) {                // HAA
+                handleHaa(outputString, currentChar);
+            } else if (currentChar < Glyph.LHA_START) {                // ZRA
+                handleZra(outputString, currentChar);
+            } else if (currentChar < Glyph.ZHI_START) {                // LHA
+                handleLha(outputString, currentChar);
+            } else if (currentChar < Glyph.CHI_START) {                // ZHI
+                handleZhi(outputString);
+            } else if (currentChar <= Glyph.MENKSOFT_END) {            // CHI
+                handleChi(outputString);
+            }
         }
 
         private boolean isMenksoftInitialIsolateGlyph(char character) {
-            //noinspection SimplifiableIfStatement
-            if (character == 0) return false;
-            return character == Glyph.ISOL_A ||
-                    character == Glyph.ISOL_A_FVS1 ||
-                    character == Glyph.INIT_A ||
-                    character == Glyph.MEDI_A_FVS2 ||
-                    character == Glyph.ISOL_E ||
-                    character == Glyph.INIT_E ||
-                    character == Glyph.INIT_E_FVS1 ||
-                    character == Glyph.ISOL_I ||
-                    character == Glyph.ISOL_I_SUFFIX ||
-                    character == Glyph.INIT_I ||
-                    character == Glyph.INIT_O ||
-                    character == Glyph.ISOL_O ||
-                    character == Glyph.ISOL_U ||
-                    character == Glyph.U_START ||
-                    character == Glyph.ISOL_OE ||
-                    character == Glyph.INIT_OE ||
-                    character == Glyph.ISOL_OE_FVS1 ||
-                    character == Glyph.INIT_UE ||
-                    character == Glyph.UE_START ||
-                    character == Glyph.ISOL_UE_FVS1 ||
-                    character == Glyph.ISOL_EE ||
-                    character == Glyph.INIT_EE ||
-                    character == Glyph.INIT_NA_STEM ||
-                    character == Glyph.INIT_NA_TOOTH ||
-                    character == Glyph.INIT_NA_FVS1_STEM ||
-                    character == Glyph.INIT_NA_FVS1_TOOTH ||
-                    character == Glyph.INIT_BA ||
-                    character == Glyph.INIT_BA_OU ||
-                    character == Glyph.INIT_BA_STEM ||
-                    character == Glyph.INIT_PA ||
-                    character == Glyph.INIT_PA_OU ||
-                    character == Glyph.INIT_PA_STEM ||
-                    character == Glyph.INIT_QA_FEM ||
-                    character == Glyph.INIT_QA_FEM_OU ||
-                    character == Glyph.INIT_QA_FVS1_FEM ||
-                    character == Glyph.INIT_QA_FVS1_FEM_OU ||
-                    character == Glyph.INIT_QA_FVS1_STEM ||
-                    character == Glyph.INIT_QA_FVS1_TOOTH ||
-                    character == Glyph.INIT_QA_STEM ||
-                    character == Glyph.INIT_QA_TOOTH ||
-                    character == Glyph.INIT_GA_FEM ||
-                    character == Glyph.INIT_GA_FEM_OU ||
-                    character == Glyph.INIT_GA_FVS1_STEM ||
-                    character == Glyph.INIT_GA_FVS1_TOOTH ||
-                    character == Glyph.INIT_GA_STEM ||
-                    character == Glyph.INIT_GA_TOOTH ||
-                    character == Glyph.INIT_MA_TOOTH ||
-                    character == Glyph.INIT_MA_STEM_LONG ||
-                    character == Glyph.INIT_LA_TOOTH ||
-                    character == Glyph.INIT_LA_STEM_LONG ||
-                    character == Glyph.INIT_SA_STEM ||
-                    character == Glyph.INIT_SA_TOOTH ||
-                    character == Glyph.INIT_SHA_STEM ||
-                    character == Glyph.INIT_SHA_TOOTH ||
-                    character == Glyph.INIT_TA_STEM ||
-                    character == Glyph.INIT_TA_TOOTH ||
-                    character == Glyph.INIT_DA_FVS1 ||
-                    character == Glyph.INIT_DA_STEM ||
-                    character == Glyph.INIT_DA_TOOTH ||
-                    character == Glyph.INIT_CHA ||
-                    character == Glyph.INIT_JA_STEM ||
-                    character == Glyph.INIT_JA_TOOTH ||
-                    character == Glyph.INIT_YA ||
-                    character == Glyph.INIT_YA_FVS1 ||
-                    character == Glyph.INIT_RA_STEM ||
-                    character == Glyph.INIT_RA_TOOTH ||
-                    character == Glyph.INIT_WA ||
-                    character == Glyph.INIT_FA ||
-                    character == Glyph.INIT_FA_OU ||
-                    character == Glyph.INIT_FA_STEM ||
-                    character == Glyph.INIT_KA ||
-                    character == Glyph.INIT_KA_OU ||
-                    character == Glyph.INIT_KHA ||
-                    character == Glyph.INIT_KHA_OU ||
-                    character == Glyph.INIT_TSA ||
-                    character == Glyph.INIT_ZA ||
-                    character == Glyph.INIT_HAA ||
-                    character == Glyph.INIT_ZRA ||
-                    character == Glyph.INIT_LHA;
+            return (charClass(character) & MENKSOFT_INITIAL_ISOLATE) != 0;
         }
 
         private boolean isMenksoftFinalIsolateGlyph(char character) {
-            //noinspection SimplifiableIfStatement
-            if (character == 0) return false;
-            return character == Glyph.ISOL_A ||
-                    character == Glyph.ISOL_A_FVS1 ||
-                    character == Glyph.FINA_A ||
-                    character == Glyph.FINA_A_BP ||
-                    character == Glyph.FINA_A_FVS1 ||
-                    character == Glyph.FINA_A_MVS ||
-                    character == Glyph.ISOL_E ||
-                    character == Glyph.FINA_E ||
-                    character == Glyph.FINA_E_BP ||
-                    character == Glyph.FINA_E_MVS ||
-                    character == Glyph.ISOL_I ||
-                    character == Glyph.ISOL_I_SUFFIX ||
-                    character == Glyph.FINA_I ||
-                    character == Glyph.FINA_I_BP ||
-                    character == Glyph.ISOL_O ||
-                    character == Glyph.FINA_O ||
-                    character == Glyph.FINA_O_FVS1 ||
-                    character == Glyph.ISOL_U ||
-                    character == Glyph.FINA_U ||
-                    character == Glyph.FINA_U_BP ||
-                    character == Glyph.FINA_U_FVS1 ||
-                    character == Glyph.ISOL_OE ||
-                    character == Glyph.ISOL_OE_FVS1 ||
-                    character == Glyph.FINA_OE ||
-                    character == Glyph.FINA_OE_BP ||
-                    character == Glyph.FINA_OE_FVS1 ||
-                    character == Glyph.FINA_OE_FVS1_BP ||
-                    character == Glyph.FINA_OE_FVS2 ||
-                    character == Glyph.ISOL_UE ||
-                    character == Glyph.ISOL_UE_FVS1 ||
-                    character == Glyph.FINA_UE ||
-                    character == Glyph.FINA_UE_BP ||
-                    character == Glyph.FINA_UE_FVS1 ||
-                    character == Glyph.FINA_UE_FVS1_BP ||
-                    character == Glyph.FINA_UE_FVS2 ||
-                    character == Glyph.ISOL_EE ||
-                    character == Glyph.FINA_EE ||
-                    character == Glyph.FINA_NA ||
-                    character == Glyph.FINA_ANG ||
-                    character == Glyph.FINA_BA ||
-                    character == Glyph.FINA_BA_FVS1 ||
-                    character == Glyph.FINA_PA ||
-                    character == Glyph.FINA_QA ||
-                    character == Glyph.FINA_GA ||
-                    character == Glyph.FINA_GA_FVS2 ||
-                    character == Glyph.FINA_MA ||
-                    character == Glyph.FINA_LA ||
-                    character == Glyph.FINA_SA ||
-                    character == Glyph.FINA_SA_FVS1 ||
-                    character == Glyph.FINA_SHA ||
-                    character == Glyph.FINA_TA ||
-                    character == Glyph.FINA_DA ||
-                    character == Glyph.FINA_DA_FVS1 ||
-                    character == Glyph.FINA_CHA ||
-                    character == Glyph.FINA_JA ||
-                    character == Glyph.FINA_YA ||
-                    character == Glyph.FINA_RA ||
-                    character == Glyph.FINA_WA ||
-                    character == Glyph.FINA_WA_FVS1 ||
-                    character == Glyph.FINA_FA ||
-                    character == Glyph.FINA_KA ||
-                    character == Glyph.FINA_KHA ||
-                    character == Glyph.FINA_TSA ||
-                    character == Glyph.FINA_ZA ||
-                    character == Glyph.FINA_HAA ||
-                    character == Glyph.FINA_ZRA;
+            return (charClass(character) & MENKSOFT_FINAL_ISOLATE) != 0;
         }
 
         private boolean isANG(char currentChar) {
@@ -5368,4 +4526,504 @@ public final class MongolCode {
         }
     }
 
+    /**
+     * Menksoft code text together with maps between its indexes and the indexes
+     * of the Unicode text that it was converted from.
+     */
+    public static final class MenksoftText {
+
+        private final String text;
+        private final int[] unicodeToMenksoft;
+        private final int[] menksoftToUnicode;
+
+        MenksoftText(String text, int[] unicodeToMenksoft, int[] menksoftToUnicode) {
+            this.text = text;
+            this.unicodeToMenksoft = unicodeToMenksoft;
+            this.menksoftToUnicode = menksoftToUnicode;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @param unicodeOffset an index in the Unicode text, from 0 to its length
+         * @return the matching index in the Menksoft text. A stripped control
+         * character gives the index of the glyph after it.
+         */
+        public int getMenksoftOffset(int unicodeOffset) {
+            return unicodeToMenksoft[unicodeOffset];
+        }
+
+        /**
+         * @param menksoftOffset an index in the Menksoft text, from 0 to its length
+         * @return the index of the Unicode char that the glyph was rendered from
+         */
+        public int getUnicodeOffset(int menksoftOffset) {
+            return menksoftToUnicode[menksoftOffset];
+        }
+
+        public int getUnicodeLength() {
+            return unicodeToMenksoft.length - 1;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    // Removes the control characters that the font doesn't need while the glyphs
+    // are still being rendered, compacting them in place behind the renderer.
+    // A glyph is decided once the glyph after it has been rendered, and the
+    // previous glyph is remembered, so the result matches the unstripped text.
+    // The index maps are optional. A stripped char maps to the index of the
+    // next glyph that is kept.
+    private static class ControlCharStripper {
+
+        private int offset;
+        private int readIndex;
+        private int writeIndex;
+        private char charBefore;
+        private int[] unicodeToMenksoft;
+        private int[] menksoftToUnicode;
+
+        void reset(int offset, int[] unicodeToMenksoft, int[] menksoftToUnicode) {
+            this.offset = offset;
+            this.readIndex = offset;
+            this.writeIndex = offset;
+            this.charBefore = 0;
+            this.unicodeToMenksoft = unicodeToMenksoft;
+            this.menksoftToUnicode = menksoftToUnicode;
+        }
+
+        // decides all glyphs up to the last one rendered before renderedEnd
+        void advance(char[] glyphs, int renderedEnd) {
+            for (; readIndex < renderedEnd - 1; readIndex++) {
+                decide(glyphs, glyphs[readIndex + 1]);
+            }
+        }
+
+        // returns the number of glyphs that were kept
+        int finish(char[] glyphs, int renderedEnd) {
+            advance(glyphs, renderedEnd);
+            if (readIndex < renderedEnd) {
+                decide(glyphs, (char) 0);
+                readIndex++;
+            }
+            int length = renderedEnd - offset;
+            int count = writeIndex - offset;
+            if (unicodeToMenksoft != null) {
+                unicodeToMenksoft[length] = count;
+                menksoftToUnicode[count] = length;
+            }
+            // don't hold on to the caller's maps
+            unicodeToMenksoft = null;
+            menksoftToUnicode = null;
+            return count;
+        }
+
+        private void decide(char[] glyphs, char charAfter) {
+            char thisChar = glyphs[readIndex];
+            if (unicodeToMenksoft != null) {
+                unicodeToMenksoft[readIndex - offset] = writeIndex - offset;
+            }
+            if (!shouldBeStripped(thisChar, charBefore, charAfter)) {
+                if (menksoftToUnicode != null) {
+                    menksoftToUnicode[writeIndex - offset] = readIndex - offset;
+                }
+                glyphs[writeIndex++] = thisChar;
+            }
+            charBefore = thisChar;
+        }
+    }
+
+    // Per thread scratch state. It is never shared between threads.
+    private static class ConversionContext {
+
+        private static final int INITIAL_BUFFER_SIZE = 256;
+        // Don't keep a huge buffer alive after converting a huge document
+        private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+        final MongolWord mongolWord = new MongolWord();
+        final MenksoftWord menksoftWord = new MenksoftWord();
+        final ControlCharStripper stripper = new ControlCharStripper();
+        private char[] glyphBuffer = new char[INITIAL_BUFFER_SIZE];
+
+        char[] glyphBuffer(int minLength) {
+            if (minLength <= glyphBuffer.length) return glyphBuffer;
+            if (minLength > MAX_RETAINED_BUFFER_SIZE) return new char[minLength];
+            int newLength = Math.max(minLength, 2 * glyphBuffer.length);
+            glyphBuffer = new char[Math.min(newLength, MAX_RETAINED_BUFFER_SIZE)];
+            return glyphBuffer;
+        }
+    }
+
+    // A reusable view of part of a CharSequence, so that words can be
+    // rendered without copying them out of the input text.
+    private static class TextRange implements CharSequence {
+
+        private CharSequence text;
+        private int start;
+        private int length;
+
+        void set(CharSequence text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.length = end - start;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(this.start + start, this.start + end);
+        }
+
+        @Override
+        public String toString() {
+            return text.subSequence(start, start + length).toString();
+        }
+    }
+
+    /**
+     * A size bounded, least recently used cache from Unicode words to their
+     * Menksoft glyphs. All methods are thread safe.
+     */
+    public static final class WordCache {
+
+        // longer words hardly ever repeat so they aren't worth the memory
+        static final int MAX_WORD_LENGTH = 64;
+        // rough cost of the map entry, key and array headers on top of the chars
+        private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+        private final LinkedHashMap<WordKey, char[]> map =
+                new LinkedHashMap<>(64, 0.75f, true);
+        // only used while holding the lock so that lookups don't allocate
+        private final WordKey lookupKey = new WordKey();
+        private long maxSizeInBytes;
+        private long sizeInBytes;
+        private long hitCount;
+        private long missCount;
+        private long evictionCount;
+
+        WordCache(long maxSizeInBytes) {
+            this.maxSizeInBytes = maxSizeInBytes;
+        }
+
+        // copies the cached glyphs for text[start, end) to output if they are there
+        synchronized boolean get(CharSequence text, int start, int end,
+                                 char[] output, int outputOffset) {
+            char[] glyphs = map.get(lookupKey.set(text, start, end));
+            lookupKey.set(null, 0, 0);
+            if (glyphs == null) {
+                missCount++;
+                return false;
+            }
+            hitCount++;
+            System.arraycopy(glyphs, 0, output, outputOffset, glyphs.length);
+            return true;
+        }
+
+        synchronized void put(CharSequence text, int start, int end,
+                              char[] output, int outputOffset) {
+            int length = end - start;
+            WordKey key = new WordKey().set(text.subSequence(start, end).toString(), 0, length);
+            char[] glyphs = new char[length];
+            System.arraycopy(output, outputOffset, glyphs, 0, length);
+            if (map.put(key, glyphs) == null) {
+                sizeInBytes += entrySize(length);
+            }
+            trimToSize();
+        }
+
+        synchronized void resize(long maxSizeInBytes) {
+            this.maxSizeInBytes = maxSizeInBytes;
+            trimToSize();
+        }
+
+        private void trimToSize() {
+            Iterator<Map.Entry<WordKey, char[]>> iterator = map.entrySet().iterator();
+            while (sizeInBytes > maxSizeInBytes && iterator.hasNext()) {
+                Map.Entry<WordKey, char[]> eldest = iterator.next();
+                sizeInBytes -= entrySize(eldest.getValue().length);
+                iterator.remove();
+                evictionCount++;
+            }
+        }
+
+        private static long entrySize(int wordLength) {
+            // two bytes per char for both the key and the glyphs
+            return ENTRY_OVERHEAD_BYTES + 4L * wordLength;
+        }
+
+        public synchronized void clear() {
+            map.clear();
+            sizeInBytes = 0;
+        }
+
+        public synchronized int size() {
+            return map.size();
+        }
+
+        public synchronized long sizeInBytes() {
+            return sizeInBytes;
+        }
+
+        public synchronized long maxSizeInBytes() {
+            return maxSizeInBytes;
+        }
+
+        public synchronized long hitCount() {
+            return hitCount;
+        }
+
+        public synchronized long missCount() {
+            return missCount;
+        }
+
+        public synchronized long evictionCount() {
+            return evictionCount;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "WordCache[size=" + map.size() + ", bytes=" + sizeInBytes
+                    + "/" + maxSizeInBytes + ", hits=" + hitCount + ", misses=" + missCount
+                    + ", evictions=" + evictionCount + "]";
+        }
+    }
+
+    // Compares by content so that a key pointing into the input text can
+    // find an entry whose key owns a copy of the word.
+    private static final class WordKey {
+
+        private CharSequence text;
+        private int start;
+        private int length;
+        private int hash;
+
+        WordKey set(CharSequence text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.length = end - start;
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + text.charAt(i);
+            }
+            this.hash = h;
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof WordKey)) return false;
+            WordKey other = (WordKey) obj;
+            if (other.hash != hash || other.length != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (text.charAt(start + i) != other.text.charAt(other.start + i))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private static class UnicodeToMenksoftWriter extends Writer {
+
+        private static final int CHUNK_SIZE = 8192;
+
+        private final MongolCode converter;
+        private final Writer out;
+        private char[] pending = new char[CHUNK_SIZE];
+        private CharBuffer pendingText = CharBuffer.wrap(pending);
+        private int pendingLength;
+        private char[] glyphs = new char[CHUNK_SIZE];
+        private boolean closed;
+
+        UnicodeToMenksoftWriter(MongolCode converter, Writer out) {
+            super(out);
+            this.converter = converter;
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            synchronized (lock) {
+                ensureOpen();
+                while (len > 0) {
+                    if (pendingLength == pending.length) {
+                        convertPending(false);
+                    }
+                    int count = Math.min(len, pending.length - pendingLength);
+                    System.arraycopy(cbuf, off, pending, pendingLength, count);
+                    pendingLength += count;
+                    off += count;
+                    len -= count;
+                }
+            }
+        }
+
+        // converts everything up to the last chunk boundary, or everything at the end
+        private void convertPending(boolean endOfInput) throws IOException {
+            int split = endOfInput ? pendingLength : lastChunkBoundary();
+            if (split == 0) {
+                if (pendingLength == pending.length) growPending();
+                return;
+            }
+            if (glyphs.length < split) {
+                glyphs = new char[pending.length];
+            }
+            int count = converter.unicodeToMenksoft(pendingText, 0, split, glyphs, 0);
+            out.write(glyphs, 0, count);
+            pendingLength -= split;
+            System.arraycopy(pending, split, pending, 0, pendingLength);
+        }
+
+        private int lastChunkBoundary() {
+            for (int i = pendingLength - 1; i > 0; i--) {
+                if (converter.isUnicodeChunkBoundary(pending[i - 1], pending[i])) return i;
+            }
+            return 0;
+        }
+
+        // only happens for a single word that is longer than the whole buffer
+        private void growPending() {
+            char[] newPending = new char[2 * pending.length];
+            System.arraycopy(pending, 0, newPending, 0, pendingLength);
+            pending = newPending;
+            pendingText = CharBuffer.wrap(pending);
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) throw new IOException("Stream closed");
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (lock) {
+                ensureOpen();
+                convertPending(false);
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (lock) {
+                if (closed) return;
+                try {
+                    convertPending(true);
+                } finally {
+                    closed = true;
+                    out.close();
+                }
+            }
+        }
+    }
+
+    private static class MenksoftToUnicodeReader extends Reader {
+
+        private static final int CHUNK_SIZE = 8192;
+
+        private final MongolCode converter;
+        private final Reader in;
+        private char[] input = new char[CHUNK_SIZE];
+        private int inputLength;
+        private boolean endOfInput;
+        private String output = "";
+        private int outputIndex;
+        private boolean closed;
+
+        MenksoftToUnicodeReader(MongolCode converter, Reader in) {
+            super(in);
+            this.converter = converter;
+            this.in = in;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            synchronized (lock) {
+                ensureOpen();
+                if (len == 0) return 0;
+                while (outputIndex == output.length()) {
+                    if (!convertNextChunk()) return -1;
+                }
+                int count = Math.min(len, output.length() - outputIndex);
+                output.getChars(outputIndex, outputIndex + count, cbuf, off);
+                outputIndex += count;
+                return count;
+            }
+        }
+
+        // returns false when there is nothing left to convert
+        private boolean convertNextChunk() throws IOException {
+            if (endOfInput && inputLength == 0) return false;
+            if (!endOfInput) {
+                if (inputLength == input.length) growInput();
+                int count = in.read(input, inputLength, input.length - inputLength);
+                if (count < 0) {
+                    endOfInput = true;
+                } else {
+                    inputLength += count;
+                }
+            }
+            int split = endOfInput ? inputLength : lastChunkBoundary();
+            if (split == 0) return true;
+            output = converter.menksoftToUnicode(new String(input, 0, split));
+            outputIndex = 0;
+            inputLength -= split;
+            System.arraycopy(input, split, input, 0, inputLength);
+            return true;
+        }
+
+        private int lastChunkBoundary() {
+            for (int i = inputLength - 1; i > 0; i--) {
+                if (converter.isMenksoftChunkBoundary(input[i])) return i;
+            }
+            return 0;
+        }
+
+        // only happens for a single word that is longer than the whole buffer
+        private void growInput() {
+            char[] newInput = new char[2 * input.length];
+            System.arraycopy(input, 0, newInput, 0, inputLength);
+            input = newInput;
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) throw new IOException("Stream closed");
+        }
+
+        @Override
+        public boolean ready() throws IOException {
+            synchronized (lock) {
+                ensureOpen();
+                return outputIndex < output.length() || in.ready();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (lock) {
+                if (closed) return;
+                closed = true;
+                output = "";
+                in.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,169 @@
+package net.studymongolian.mongollibrary;
+
+import net.studymongolian.mongollibrary.MongolCode.Uni;
+
+/**
+ * The sort order behind MongolCode.collationKey() and the other collation
+ * methods.
+ *
+ * Every char has a weight. The letters come in the traditional order of the
+ * alphabet, after the Mongolian digits and before all other chars, which are
+ * ordered by their code. Controls that only pick a glyph (FVS, MVS, ZWJ, ZWNJ,
+ * NIRUGU) are ignored, so all encodings of a word that only differ in those
+ * sort together. NNBS and white space separate words and come before any
+ * letter, so a word with a suffix sorts right after the word itself.
+ *
+ * A key has one byte per char, except that chars without a weight of their own
+ * take three: OTHER and then the char.
+ */
+final class MongolCollation {
+
+    static final int IGNORED = 0;
+    private static final int SEPARATOR = 1;
+    private static final int FIRST_DIGIT = 2;
+    private static final int FIRST_LETTER = FIRST_DIGIT + 10;
+    private static final int OTHER = 0xFF;
+
+    // the number of key bytes in a prefix, so that prefixes are positive longs
+    static final int PREFIX_LENGTH = 7;
+
+    // the traditional order, which differs from the Unicode order in EE
+    private static final char[] LETTER_ORDER = {
+            Uni.A, Uni.E, Uni.EE, Uni.I, Uni.O, Uni.U, Uni.OE, Uni.UE,
+            Uni.NA, Uni.ANG, Uni.BA, Uni.PA, Uni.QA, Uni.GA, Uni.MA, Uni.LA,
+            Uni.SA, Uni.SHA, Uni.TA, Uni.DA, Uni.CHA, Uni.JA, Uni.YA, Uni.RA,
+            Uni.WA, Uni.FA, Uni.KA, Uni.KHA, Uni.TSA, Uni.ZA, Uni.HAA, Uni.ZRA,
+            Uni.LHA, Uni.ZHI, Uni.CHI};
+
+    private static final char BLOCK_START = '\u1800';
+    private static final char BLOCK_END = '\u18B0';
+    private static final byte[] BLOCK_WEIGHTS = new byte[BLOCK_END - BLOCK_START];
+
+    static {
+        for (int i = 0; i < BLOCK_WEIGHTS.length; i++) {
+            BLOCK_WEIGHTS[i] = (byte) OTHER;
+        }
+        for (int i = 0; i < 10; i++) {
+            BLOCK_WEIGHTS[Uni.MONGOLIAN_DIGIT_ZERO + i - BLOCK_START] = (byte) (FIRST_DIGIT + i);
+        }
+        int weight = FIRST_LETTER;
+        for (char letter : LETTER_ORDER) {
+            BLOCK_WEIGHTS[letter - BLOCK_START] = (byte) weight++;
+        }
+        // Todo, Sibe, Manchu and Ali Gali letters follow in the order of their codes
+        for (char letter = Uni.TODO_LONG_VOWEL_SIGN; letter <= '\u1878'; letter++) {
+            BLOCK_WEIGHTS[letter - BLOCK_START] = (byte) weight++;
+        }
+        for (char letter = '\u1880'; letter <= '\u18AA'; letter++) {
+            BLOCK_WEIGHTS[letter - BLOCK_START] = (byte) weight++;
+        }
+        for (char control = Uni.MONGOLIAN_NIRUGU; control <= '\u180F'; control++) {
+            BLOCK_WEIGHTS[control - BLOCK_START] = IGNORED;
+        }
+    }
+
+    private MongolCollation() {
+    }
+
+    static int getWeight(char character) {
+        if (character >= BLOCK_START && character < BLOCK_END)
+            return BLOCK_WEIGHTS[character - BLOCK_START] & 0xFF;
+        switch (character) {
+            case Uni.ZWJ:
+            case Uni.ZWNJ:
+            case Uni.WJ:
+                return IGNORED;
+            case Uni.NNBS:
+                return SEPARATOR;
+        }
+        if (Character.isWhitespace(character) || Character.isSpaceChar(character))
+            return SEPARATOR;
+        return OTHER;
+    }
+
+    // OTHER is followed by the char
+    private static int getKeyLength(int weight) {
+        if (weight == IGNORED) return 0;
+        if (weight == OTHER) return 3;
+        return 1;
+    }
+
+    static byte[] getKey(CharSequence text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            length += getKeyLength(getWeight(text.charAt(i)));
+        }
+        byte[] key = new byte[length];
+        int index = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char character = text.charAt(i);
+            int weight = getWeight(character);
+            if (weight == IGNORED) continue;
+            key[index++] = (byte) weight;
+            if (weight == OTHER) {
+                key[index++] = (byte) (character >> 8);
+                key[index++] = (byte) character;
+            }
+        }
+        return key;
+    }
+
+    // the first PREFIX_LENGTH bytes of the key, big-endian and padded with 0
+    static long getKeyPrefix(CharSequence text) {
+        long prefix = 0;
+        int length = 0;
+        for (int i = 0; i < text.length() && length < PREFIX_LENGTH; i++) {
+            char character = text.charAt(i);
+            int weight = getWeight(character);
+            if (weight == IGNORED) continue;
+            prefix = (prefix << 8) | weight;
+            length++;
+            if (weight != OTHER) continue;
+            if (length < PREFIX_LENGTH) {
+                prefix = (prefix << 8) | (character >> 8);
+                length++;
+            }
+            if (length < PREFIX_LENGTH) {
+                prefix = (prefix << 8) | (character & 0xFF);
+                length++;
+            }
+        }
+        return prefix << (8 * (PREFIX_LENGTH - length));
+    }
+
+    static int compareKeys(byte[] key1, byte[] key2) {
+        int length = Math.min(key1.length, key2.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (key1[i] & 0xFF) - (key2[i] & 0xFF);
+            if (difference != 0) return difference;
+        }
+        return key1.length - key2.length;
+    }
+
+    // Compares the same as the keys of the texts, but without making them. Each
+    // char that is not ignored is compared as its weight and then, for OTHER,
+    // the char, which is just what its bytes in the key are.
+    static int compare(CharSequence text1, CharSequence text2) {
+        int index1 = 0;
+        int index2 = 0;
+        while (true) {
+            int element1 = 0;
+            while (index1 < text1.length() && element1 == 0) {
+                element1 = getCollationElement(text1.charAt(index1++));
+            }
+            int element2 = 0;
+            while (index2 < text2.length() && element2 == 0) {
+                element2 = getCollationElement(text2.charAt(index2++));
+            }
+            if (element1 != element2) return element1 - element2;
+            if (element1 == 0) return 0;
+        }
+    }
+
+    // 0 if ignored
+    private static int getCollationElement(char character) {
+        int weight = getWeight(character);
+        if (weight == OTHER) return (OTHER << 16) | character;
+        return weight << 16;
+    }
+}
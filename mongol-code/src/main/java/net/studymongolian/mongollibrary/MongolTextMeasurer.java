@@ -0,0 +1,101 @@
+package net.studymongolian.mongollibrary;
+
+/**
+ * Measures Menksoft glyph text (the output of MongolCode.unicodeToMenksoft)
+ * with the advances from a {@link GlyphAdvanceTable}, so no Paint is needed.
+ * Widths are the unhinted sum of the glyph advances, which is what a Paint with
+ * linear text gives. Kerning is not applied.
+ *
+ * A measurer keeps no state besides the table, so it can be shared between threads.
+ */
+public final class MongolTextMeasurer {
+
+    private final GlyphAdvanceTable advances;
+
+    public MongolTextMeasurer(GlyphAdvanceTable advances) {
+        if (advances == null) throw new IllegalArgumentException("advances cannot be null");
+        this.advances = advances;
+    }
+
+    public GlyphAdvanceTable getAdvanceTable() {
+        return advances;
+    }
+
+    public float measureText(CharSequence text, float textSize) {
+        return measureText(text, 0, text.length(), textSize);
+    }
+
+    /**
+     * @return the width of text[start, end) in pixels at the given text size
+     */
+    public float measureText(CharSequence text, int start, int end, float textSize) {
+        return toPixels(measureUnits(text, start, end), textSize);
+    }
+
+    /**
+     * Gets the advance of every char in text[start, end) like Paint.getTextWidths().
+     * The low surrogate of a pair gets a width of 0.
+     *
+     * @param widths receives end - start widths
+     */
+    public void getTextWidths(CharSequence text, int start, int end, float textSize,
+                              float[] widths) {
+        for (int i = start; i < end; i++) {
+            char character = text.charAt(i);
+            if (isSurrogatePair(text, i, end)) {
+                widths[i - start] = toPixels(advances.getMissingGlyphAdvance(), textSize);
+                widths[++i - start] = 0;
+                continue;
+            }
+            widths[i - start] = toPixels(advances.getAdvance(character), textSize);
+        }
+    }
+
+    /**
+     * Counts how many chars from start fit in maxWidth, like Paint.breakText().
+     * A surrogate pair is never split.
+     *
+     * @return the number of chars from start that fit
+     */
+    public int breakText(CharSequence text, int start, int end, float textSize, float maxWidth) {
+        if (textSize <= 0) return end - start;
+        // compare in font units so that nothing is rounded while adding up
+        long maxUnits = (long) Math.floor((double) maxWidth * advances.getUnitsPerEm() / textSize);
+        long units = 0;
+        int i = start;
+        while (i < end) {
+            int charCount = isSurrogatePair(text, i, end) ? 2 : 1;
+            int advance = (charCount == 2)
+                    ? advances.getMissingGlyphAdvance()
+                    : advances.getAdvance(text.charAt(i));
+            if (units + advance > maxUnits) break;
+            units += advance;
+            i += charCount;
+        }
+        return i - start;
+    }
+
+    private long measureUnits(CharSequence text, int start, int end) {
+        long units = 0;
+        for (int i = start; i < end; i++) {
+            if (isSurrogatePair(text, i, end)) {
+                // only the BMP is read from the cmap
+                units += advances.getMissingGlyphAdvance();
+                i++;
+                continue;
+            }
+            units += advances.getAdvance(text.charAt(i));
+        }
+        return units;
+    }
+
+    private float toPixels(long units, float textSize) {
+        return units * textSize / advances.getUnitsPerEm();
+    }
+
+    private static boolean isSurrogatePair(CharSequence text, int index, int end) {
+        return Character.isHighSurrogate(text.charAt(index))
+                && index + 1 < end
+                && Character.isLowSurrogate(text.charAt(index + 1));
+    }
+}
@@ -0,0 +1,187 @@
+package net.studymongolian.mongollibrary;
+
+/**
+ * Finds Mongol words and the other segments of text, like a word
+ * BreakIterator but without copying the text to a String or allocating
+ * anything. It can be reused for any number of texts.
+ *
+ * A Mongol word is exactly what MongolCode renders as one word: a run of
+ * Mongolian chars (letters, MVS, FVS1-3, ZWJ, ZWNJ) that may start with an
+ * NNBS. So an NNBS always starts a new word (a suffix) and never ends one.
+ * The rest of the text is divided into runs of letters and digits, runs of
+ * white space and single other chars (punctuation, symbols, emoji).
+ *
+ * Offsets are indexes into the text, not relative to the start of the range.
+ */
+public final class MongolWordIterator {
+
+    public static final int DONE = -1;
+
+    private static final int MONGOL_WORD = 0;
+    private static final int LETTERS = 1;
+    private static final int SPACE = 2;
+    private static final int OTHER = 3;
+
+    private CharSequence text = "";
+    private int start;
+    private int end;
+
+    public MongolWordIterator() {
+    }
+
+    public MongolWordIterator(CharSequence text) {
+        setText(text);
+    }
+
+    public void setText(CharSequence text) {
+        setText(text, 0, text.length());
+    }
+
+    /**
+     * Only text[start, end) is looked at, as if the text ended there.
+     */
+    public void setText(CharSequence text, int start, int end) {
+        if (start < 0 || start > end || end > text.length())
+            throw new IndexOutOfBoundsException(
+                    "range " + start + ", " + end + " of length " + text.length());
+        this.text = text;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return the first segment boundary after offset, or DONE if offset is at the end
+     */
+    public int following(int offset) {
+        checkOffset(offset);
+        if (offset >= end) return DONE;
+        int type = typeAt(offset);
+        if (type == MONGOL_WORD) return getMongolWordEnd(text, offset + 1, end);
+        int i = offset + charCountAt(offset);
+        if (type == OTHER) return i;
+        while (i < end && typeAt(i) == type) {
+            i += charCountAt(i);
+        }
+        return i;
+    }
+
+    /**
+     * @return the last segment boundary before offset, or DONE if offset is at the start
+     */
+    public int preceding(int offset) {
+        checkOffset(offset);
+        if (offset <= start) return DONE;
+        return segmentStart(offset - 1);
+    }
+
+    public boolean isBoundary(int offset) {
+        checkOffset(offset);
+        if (offset == start || offset == end) return true;
+        return segmentStart(offset) == offset;
+    }
+
+    /**
+     * @return whether the char at index is part of a Mongol word
+     */
+    public boolean isMongolWordAt(int index) {
+        if (index < start || index >= end)
+            throw new IndexOutOfBoundsException("index " + index);
+        return isMongolWordChar(text.charAt(index));
+    }
+
+    /**
+     * @return the start of the Mongol word that the char before offset is part of,
+     * or offset if there is no such word
+     */
+    public int getMongolWordStart(int offset) {
+        checkOffset(offset);
+        return getMongolWordStart(text, start, offset);
+    }
+
+    /**
+     * @return the end of the Mongol word that the char at offset continues,
+     * or offset if the char doesn't continue a word (an NNBS starts a new one)
+     */
+    public int getMongolWordEnd(int offset) {
+        checkOffset(offset);
+        return getMongolWordEnd(text, offset, end);
+    }
+
+    // the start of the segment that the char at index is part of
+    private int segmentStart(int index) {
+        int type = typeAt(index);
+        if (type == MONGOL_WORD) {
+            if (text.charAt(index) == MongolCode.Uni.NNBS) return index;
+            return getMongolWordStart(text, start, index + 1);
+        }
+        int i = index;
+        if (isLowSurrogateOfPair(i)) i--;
+        if (type == OTHER) return i;
+        while (i > start) {
+            int previous = isLowSurrogateOfPair(i - 1) ? i - 2 : i - 1;
+            if (typeAt(previous) != type) break;
+            i = previous;
+        }
+        return i;
+    }
+
+    private int typeAt(int index) {
+        char character = text.charAt(index);
+        if (isMongolWordChar(character)) return MONGOL_WORD;
+        if (Character.isWhitespace(character) || Character.isSpaceChar(character)) return SPACE;
+        int codePoint = character;
+        if (Character.isHighSurrogate(character) && index + 1 < end
+                && Character.isLowSurrogate(text.charAt(index + 1))) {
+            codePoint = Character.toCodePoint(character, text.charAt(index + 1));
+        } else if (isLowSurrogateOfPair(index)) {
+            codePoint = Character.toCodePoint(text.charAt(index - 1), character);
+        }
+        if (Character.isLetterOrDigit(codePoint)) return LETTERS;
+        return OTHER;
+    }
+
+    private int charCountAt(int index) {
+        if (Character.isHighSurrogate(text.charAt(index)) && index + 1 < end
+                && Character.isLowSurrogate(text.charAt(index + 1))) return 2;
+        return 1;
+    }
+
+    private boolean isLowSurrogateOfPair(int index) {
+        return index > start
+                && Character.isLowSurrogate(text.charAt(index))
+                && Character.isHighSurrogate(text.charAt(index - 1));
+    }
+
+    private void checkOffset(int offset) {
+        if (offset < start || offset > end)
+            throw new IndexOutOfBoundsException(
+                    "offset " + offset + " is not in range " + start + ", " + end);
+    }
+
+    // These are shared with MongolCode, which renders one Mongol word at a time.
+
+    static boolean isMongolWordChar(char character) {
+        return MongolCode.isMongolian(character) || character == MongolCode.Uni.NNBS;
+    }
+
+    // goes back from offset over Mongolian chars and at most one NNBS before them
+    static int getMongolWordStart(CharSequence text, int limit, int offset) {
+        int wordStart = offset;
+        while (wordStart > limit && MongolCode.isMongolian(text.charAt(wordStart - 1))) {
+            wordStart--;
+        }
+        if (wordStart > limit && text.charAt(wordStart - 1) == MongolCode.Uni.NNBS) {
+            wordStart--;
+        }
+        return wordStart;
+    }
+
+    // goes forward from offset over Mongolian chars
+    static int getMongolWordEnd(CharSequence text, int offset, int limit) {
+        int wordEnd = offset;
+        while (wordEnd < limit && MongolCode.isMongolian(text.charAt(wordEnd))) {
+            wordEnd++;
+        }
+        return wordEnd;
+    }
+}
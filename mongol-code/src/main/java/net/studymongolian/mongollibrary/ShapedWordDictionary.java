@@ -0,0 +1,152 @@
+package net.studymongolian.mongollibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read only table of words and their Menksoft glyphs, made ahead of time by
+ * {@link ShapedWordDictionaryBuilder}. Set it with
+ * {@link MongolCode#setShapedWordDictionary(ShapedWordDictionary)} and common
+ * words are copied from the table instead of being shaped.
+ *
+ * The table is indexed by a minimal perfect hash, so a lookup is two hashes of
+ * the word and one comparison. It is read in place from a (memory mapped)
+ * ByteBuffer and takes no heap space of its own. It can be used from any
+ * number of threads at once.
+ *
+ * An asset in an Android app can be mapped as long as it is stored
+ * uncompressed (add the extension to aaptOptions noCompress):
+ *
+ * <pre>
+ * AssetFileDescriptor afd = context.getAssets().openFd("shaped-words.bin");
+ * FileChannel channel = afd.createInputStream().getChannel();
+ * ShapedWordDictionary dictionary = ShapedWordDictionary.load(
+ *         channel, afd.getStartOffset(), afd.getLength());
+ * </pre>
+ */
+public final class ShapedWordDictionary {
+
+    // File layout (big endian):
+    //   int    MAGIC
+    //   int    VERSION
+    //   int    count
+    //   int    displacements[count]  seed for the bucket, or -(slot + 1)
+    //   int    entryOffsets[count + 1]  in chars from the start of the data
+    //   char   data[]  each entry is the word followed by its same index glyphs
+    static final int MAGIC = 0x4D535744; // "MSWD"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int displacementsIndex;
+    private final int entryOffsetsIndex;
+    private final int dataIndex;
+
+    private ShapedWordDictionary(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE
+                || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IllegalArgumentException("not a version " + VERSION
+                    + " shaped word dictionary");
+        this.count = buffer.getInt(8);
+        this.displacementsIndex = HEADER_SIZE;
+        this.entryOffsetsIndex = displacementsIndex + 4 * count;
+        this.dataIndex = entryOffsetsIndex + 4 * (count + 1);
+        if (count < 0 || dataIndex > buffer.capacity()
+                || dataIndex + 2L * buffer.getInt(entryOffsetsIndex + 4 * count) > buffer.capacity())
+            throw new IllegalArgumentException("shaped word dictionary is truncated");
+    }
+
+    /**
+     * Uses the dictionary in buffer, from its position to its limit. The
+     * buffer is not copied, so it should not be changed afterward.
+     *
+     * @throws IllegalArgumentException if the buffer does not hold a dictionary
+     */
+    public static ShapedWordDictionary from(ByteBuffer buffer) {
+        // slice() also gives index 0 at the position and big endian order
+        return new ShapedWordDictionary(buffer.slice());
+    }
+
+    /**
+     * Memory maps a dictionary file.
+     */
+    public static ShapedWordDictionary load(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return load(channel, 0, channel.size());
+        } finally {
+            // the mapping stays valid after the file is closed
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Memory maps a dictionary that is stored in part of a file, such as an
+     * uncompressed asset inside an APK.
+     */
+    public static ShapedWordDictionary load(FileChannel channel, long position, long size)
+            throws IOException {
+        return from(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+    }
+
+    /**
+     * @return the number of words in the dictionary
+     */
+    public int size() {
+        return count;
+    }
+
+    // Copies the glyphs for the word text[start, end) to output and returns
+    // true, or returns false without writing anything if the word is not here.
+    boolean get(CharSequence text, int start, int end, char[] output, int outputOffset) {
+        if (count == 0) return false;
+        int length = end - start;
+        int slot = findSlot(text, start, end);
+        int entryStart = buffer.getInt(entryOffsetsIndex + 4 * slot);
+        int entryEnd = buffer.getInt(entryOffsetsIndex + 4 * (slot + 1));
+        if (entryEnd - entryStart != 2 * length) return false;
+
+        int keyIndex = dataIndex + 2 * entryStart;
+        for (int i = 0; i < length; i++) {
+            if (buffer.getChar(keyIndex + 2 * i) != text.charAt(start + i)) return false;
+        }
+        int glyphIndex = keyIndex + 2 * length;
+        for (int i = 0; i < length; i++) {
+            output[outputOffset + i] = buffer.getChar(glyphIndex + 2 * i);
+        }
+        return true;
+    }
+
+    private int findSlot(CharSequence text, int start, int end) {
+        int bucket = index(hash(text, start, end, 0), count);
+        int displacement = buffer.getInt(displacementsIndex + 4 * bucket);
+        if (displacement < 0) return -displacement - 1;
+        return index(hash(text, start, end, displacement), count);
+    }
+
+    static int index(int hash, int count) {
+        return (hash & 0x7FFFFFFF) % count;
+    }
+
+    // FNV-1a with a seed and a final mix, so that every seed gives a
+    // different spread of words over the slots
+    static int hash(CharSequence text, int start, int end, int seed) {
+        int hash = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        for (int i = start; i < end; i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,193 @@
+package net.studymongolian.mongollibrary;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Build time tool that shapes a word list with the current rules and writes it
+ * as a {@link ShapedWordDictionary} file.
+ *
+ * Usage: ShapedWordDictionaryBuilder &lt;word list&gt; &lt;output file&gt;
+ * (or ./gradlew :mongol-code:buildShapedWordDictionary -Pwords=... -Pout=...)
+ *
+ * The word list is UTF-8 text. Words are separated by whitespace and anything
+ * that is not a single Mongolian word (optionally starting with NNBS) is skipped.
+ */
+public final class ShapedWordDictionaryBuilder {
+
+    private ShapedWordDictionaryBuilder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ShapedWordDictionaryBuilder <word list> <output file>");
+            System.exit(1);
+        }
+        Set<String> words = new LinkedHashSet<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(args[0]), Charset.forName("UTF-8")));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                for (String word : line.trim().split("\\s+")) {
+                    if (isMongolWord(word)) words.add(word);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        OutputStream out = new FileOutputStream(args[1]);
+        try {
+            int count = write(words, out);
+            System.out.println("Wrote " + count + " words to " + args[1]);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Shapes the words and writes them to out as a dictionary.
+     *
+     * @param words Mongolian words, each one as MongolCode splits text into words
+     * @return the number of words written
+     * @throws IllegalArgumentException if one of the words is not a single Mongol word
+     */
+    public static int write(Collection<String> words, OutputStream out) throws IOException {
+        String[] keys = new LinkedHashSet<>(words).toArray(new String[0]);
+        for (String key : keys) {
+            if (!isMongolWord(key))
+                throw new IllegalArgumentException("not a single Mongol word: " + key);
+        }
+        int count = keys.length;
+        int[] displacements = new int[count];
+        int[] slotKeys = placeKeys(keys, displacements);
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(ShapedWordDictionary.MAGIC);
+        data.writeInt(ShapedWordDictionary.VERSION);
+        data.writeInt(count);
+        for (int displacement : displacements) {
+            data.writeInt(displacement);
+        }
+        int offset = 0;
+        for (int slot = 0; slot < count; slot++) {
+            data.writeInt(offset);
+            offset += 2 * keys[slotKeys[slot]].length();
+        }
+        data.writeInt(offset);
+
+        MongolCode renderer = MongolCode.INSTANCE;
+        char[] glyphs = new char[0];
+        for (int slot = 0; slot < count; slot++) {
+            String key = keys[slotKeys[slot]];
+            if (glyphs.length < key.length()) glyphs = new char[key.length()];
+            renderer.renderWordWithRules(key, glyphs);
+            data.writeChars(key);
+            for (int i = 0; i < key.length(); i++) {
+                data.writeChar(glyphs[i]);
+            }
+        }
+        data.flush();
+        return count;
+    }
+
+    // Hash and displace: keys are put in buckets by their seed 0 hash. Starting
+    // with the biggest bucket, each bucket gets the first seed that sends all
+    // of its keys to free slots. Buckets with one key just take a free slot.
+    // Returns the key index for every slot.
+    private static int[] placeKeys(final String[] keys, int[] displacements) {
+        int count = keys.length;
+        int[] slotKeys = new int[count];
+        Arrays.fill(slotKeys, -1);
+        if (count == 0) return slotKeys;
+
+        final List<List<Integer>> buckets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            buckets.add(new ArrayList<Integer>(1));
+        }
+        for (int key = 0; key < count; key++) {
+            int bucket = ShapedWordDictionary.index(hash(keys[key], 0), count);
+            buckets.get(bucket).add(key);
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return buckets.get(b).size() - buckets.get(a).size();
+            }
+        });
+
+        int next = 0;
+        int[] slots = new int[count];
+        for (; next < count; next++) {
+            List<Integer> bucket = buckets.get(order[next]);
+            if (bucket.size() <= 1) break;
+            for (int seed = 1; ; seed++) {
+                if (tryPlace(keys, bucket, seed, slotKeys, slots)) {
+                    displacements[order[next]] = seed;
+                    break;
+                }
+            }
+        }
+
+        int freeSlot = 0;
+        for (; next < count; next++) {
+            List<Integer> bucket = buckets.get(order[next]);
+            if (bucket.isEmpty()) break;
+            while (slotKeys[freeSlot] >= 0) freeSlot++;
+            slotKeys[freeSlot] = bucket.get(0);
+            displacements[order[next]] = -freeSlot - 1;
+        }
+        return slotKeys;
+    }
+
+    private static boolean tryPlace(String[] keys, List<Integer> bucket, int seed,
+                                    int[] slotKeys, int[] slots) {
+        int count = keys.length;
+        for (int i = 0; i < bucket.size(); i++) {
+            int slot = ShapedWordDictionary.index(hash(keys[bucket.get(i)], seed), count);
+            if (slotKeys[slot] >= 0) return false;
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slot) return false;
+            }
+            slots[i] = slot;
+        }
+        for (int i = 0; i < bucket.size(); i++) {
+            slotKeys[slots[i]] = bucket.get(i);
+        }
+        return true;
+    }
+
+    private static int hash(String key, int seed) {
+        return ShapedWordDictionary.hash(key, 0, key.length(), seed);
+    }
+
+    // the same words that MongolCode hands to the renderer one at a time
+    private static boolean isMongolWord(String text) {
+        if (text.isEmpty()) return false;
+        for (int i = 0; i < text.length(); i++) {
+            char character = text.charAt(i);
+            if (MongolCode.isMongolian(character)) continue;
+            if (i == 0 && character == MongolCode.Uni.NNBS && text.length() > 1) continue;
+            return false;
+        }
+        return true;
+    }
+}
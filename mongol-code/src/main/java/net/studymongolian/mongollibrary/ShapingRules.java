@@ -0,0 +1,167 @@
+package net.studymongolian.mongollibrary;
+
+import java.util.Arrays;
+
+/**
+ * The tables of one set of shaping rules (a file in src/main/rules), as
+ * compiled by ShapingRuleCompiler into ShapingRuleSets. MongolCode's MongolWord
+ * runs them.
+ *
+ * The rules of a letter in a location are a list of rules for each FVS, shape
+ * below and suffix (see {@link #getFirstRule}). A rule matches if all of its
+ * atoms (conditions) are true, and the first one that matches gives the glyph
+ * and the new shape below. An atom of kind ATOM_GROUP is true if all atoms of
+ * any one of the group's conjunctions are true. Atoms have no side effects, so
+ * it doesn't matter which ones are tested at build time.
+ *
+ * Chars are tested with masks over a small index (see {@link #getMaskBit(char)})
+ * so that a class of letters is one bit test.
+ */
+final class ShapingRules {
+
+    static final int LOCATION_COUNT = 4;
+    // no FVS and FVS1-3
+    static final int FVS_COUNT = 4;
+    // tooth, stem and round (a shape below is never SHAPE_KEEP)
+    static final int SHAPE_COUNT = 3;
+
+    static final int SHAPE_KEEP = 0;
+    static final int SHAPE_TOOTH = 1;
+    static final int SHAPE_STEM = 2;
+    static final int SHAPE_ROUND = 3;
+
+    static final int GENDER_NONE = 0;
+    static final int GENDER_MASCULINE = 1;
+    static final int GENDER_FEMININE = 2;
+    static final int GENDER_NEUTER = 3;
+
+    // the op of an atom is its kind, or'ed with NEGATED
+    static final int NEGATED = 1;
+    static final int ATOM_FVS = 1 << 1;
+    static final int ATOM_SUFFIX = 2 << 1;
+    static final int ATOM_SHAPE_BELOW = 3 << 1;
+    static final int ATOM_NEXT = 4 << 1;
+    static final int ATOM_PREVIOUS = 5 << 1;
+    static final int ATOM_PREVIOUS_2 = 6 << 1;
+    static final int ATOM_GENDER = 7 << 1;
+    static final int ATOM_GLYPH_BELOW = 8 << 1;
+    static final int ATOM_PREDICATE = 9 << 1;
+    static final int ATOM_GROUP = 10 << 1;
+
+    static final int PREDICATE_LONG_TOOTH_U = 0;
+    static final int PREDICATE_LONG_TOOTH_U_ABOVE = 1;
+    static final int PREDICATE_TWO_PART_NAME = 2;
+
+    // the index of chars that are in no mask (including no char at all)
+    private static final int NOT_INDEXED = 63;
+    private static final char BLOCK_START = '\u1800';
+    private static final char BLOCK_END = '\u18B0';
+
+    private final String name;
+    private final byte[] blockIndexes = new byte[BLOCK_END - BLOCK_START];
+    private final char[] otherIndexedChars;
+    private final byte[] otherIndexes;
+
+    final byte[] letterGenders;
+    final short[] ruleStarts;
+    final char[] ruleGlyphs;
+    final byte[] ruleShapes;
+    final short[] ruleAtomStarts;
+    final short[] groupStarts;
+    final short[] conjunctionAtomStarts;
+    final byte[] atomOps;
+    final long[] atomArguments;
+    final char[][] glyphSets;
+
+    ShapingRules(String name, char[] indexedChars, byte[] letterGenders,
+                 short[] ruleStarts, char[] ruleGlyphs, byte[] ruleShapes,
+                 short[] ruleAtomStarts, short[] groupStarts, short[] conjunctionAtomStarts,
+                 byte[] atomOps, long[] atomArguments, char[][] glyphSets) {
+        if (indexedChars.length > NOT_INDEXED)
+            throw new IllegalArgumentException("too many indexed chars");
+        this.name = name;
+        this.letterGenders = letterGenders;
+        this.ruleStarts = ruleStarts;
+        this.ruleGlyphs = ruleGlyphs;
+        this.ruleShapes = ruleShapes;
+        this.ruleAtomStarts = ruleAtomStarts;
+        this.groupStarts = groupStarts;
+        this.conjunctionAtomStarts = conjunctionAtomStarts;
+        this.atomOps = atomOps;
+        this.atomArguments = atomArguments;
+        this.glyphSets = glyphSets;
+
+        Arrays.fill(blockIndexes, (byte) NOT_INDEXED);
+        int otherCount = 0;
+        for (char character : indexedChars) {
+            if (!isInBlock(character)) otherCount++;
+        }
+        otherIndexedChars = new char[otherCount];
+        otherIndexes = new byte[otherCount];
+        otherCount = 0;
+        for (int i = 0; i < indexedChars.length; i++) {
+            char character = indexedChars[i];
+            if (isInBlock(character)) {
+                blockIndexes[character - BLOCK_START] = (byte) i;
+            } else {
+                otherIndexedChars[otherCount] = character;
+                otherIndexes[otherCount++] = (byte) i;
+            }
+        }
+    }
+
+    private static boolean isInBlock(char character) {
+        return character >= BLOCK_START && character < BLOCK_END;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the bit of character in the masks of ATOM_NEXT and ATOM_PREVIOUS atoms
+     */
+    int charIndex(char character) {
+        if (isInBlock(character)) return blockIndexes[character - BLOCK_START];
+        for (int i = 0; i < otherIndexedChars.length; i++) {
+            if (otherIndexedChars[i] == character) return otherIndexes[i];
+        }
+        return NOT_INDEXED;
+    }
+
+    /**
+     * @return a mask with just the bit of character, or 0 if it is in no mask
+     */
+    long getMaskBit(char character) {
+        int index = charIndex(character);
+        if (index == NOT_INDEXED) return 0;
+        return 1L << index;
+    }
+
+    boolean isInGlyphSet(char glyph, int glyphSet) {
+        for (char member : glyphSets[glyphSet]) {
+            if (member == glyph) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The compiler has already dropped the rules that can't match with this
+     * FVS, shape below and suffix, and the atoms that test them. The rules go
+     * on until one matches, and the last one always does.
+     *
+     * @param letter     the letter minus MONGOLIAN LETTER A
+     * @param location   the ordinal of a MongolCode.Location
+     * @param fvs        FVS1-3, or 0 for none
+     * @param shapeBelow SHAPE_TOOTH, SHAPE_STEM or SHAPE_ROUND
+     * @return the first rule of the letter in this context
+     */
+    int getFirstRule(int letter, int location, char fvs, int shapeBelow, boolean isSuffix) {
+        int fvsIndex = (fvs == 0) ? 0 : fvs - MongolCode.Uni.FVS1 + 1;
+        int index = letter * LOCATION_COUNT + location;
+        index = index * FVS_COUNT + fvsIndex;
+        index = index * SHAPE_COUNT + shapeBelow - SHAPE_TOOTH;
+        index = index * 2 + (isSuffix ? 1 : 0);
+        return ruleStarts[index];
+    }
+}
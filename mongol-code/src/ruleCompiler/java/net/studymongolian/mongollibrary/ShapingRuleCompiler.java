@@ -0,0 +1,646 @@
+package net.studymongolian.mongollibrary;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build time tool that compiles the shaping rule files in src/main/rules into
+ * the tables of the generated ShapingRuleSets class, which MongolCode uses to
+ * render Unicode letters as Menksoft glyphs.
+ *
+ * Usage: ShapingRuleCompiler &lt;rules dir&gt; &lt;output dir&gt; &lt;default rule set&gt;
+ * (run by the :mongol-code:generateShapingRules task before compileJava)
+ *
+ * Every file name.rules becomes a ShapingRules constant NAME. The default rule
+ * set is the one that MongolCode renders with. See unicode10.rules for the
+ * syntax of a rules file.
+ *
+ * The rules of a letter in a location are compiled once for every combination
+ * of FVS, shape below and suffix. The conditions on those are decided here, so
+ * at runtime only the conditions on the neighboring letters are left, and most
+ * combinations come down to a single rule without any.
+ */
+public final class ShapingRuleCompiler {
+
+    static final String GENERATED_CLASS = "ShapingRuleSets";
+
+    // The letters in Unicode order, from MONGOLIAN LETTER A to CHI
+    static final String[] LETTERS = {
+            "A", "E", "I", "O", "U", "OE", "UE", "EE", "NA", "ANG", "BA", "PA",
+            "QA", "GA", "MA", "LA", "SA", "SHA", "TA", "DA", "CHA", "JA", "YA", "RA",
+            "WA", "FA", "KA", "KHA", "TSA", "ZA", "HAA", "ZRA", "LHA", "ZHI", "CHI"};
+
+    // other chars that can be tested for above or below a letter
+    static final String[] OTHER_CHARS = {
+            "MVS", "ZWJ", "ZWNJ", "NNBS", "FVS1", "FVS2", "FVS3", "MONGOLIAN_NIRUGU"};
+
+    // in the order of MongolCode.Location
+    static final String[] LOCATIONS = {"isolate", "initial", "medial", "final"};
+
+    // The names in the rules and the ShapingRules constants they compile to.
+    // The generated class refers to the constants by name so that this tool
+    // doesn't depend on their values.
+    static final String[] SHAPES = {"tooth", "stem", "round"};
+    static final String[] SHAPE_CONSTANTS = {"SHAPE_TOOTH", "SHAPE_STEM", "SHAPE_ROUND"};
+    static final String[] GENDERS = {"masculine", "feminine", "neuter"};
+    static final String[] GENDER_CONSTANTS = {
+            "GENDER_MASCULINE", "GENDER_FEMININE", "GENDER_NEUTER"};
+    static final String[] PREDICATES = {"longToothU", "longToothUAbove", "twoPartName"};
+    static final String[] PREDICATE_CONSTANTS = {
+            "PREDICATE_LONG_TOOTH_U", "PREDICATE_LONG_TOOTH_U_ABOVE", "PREDICATE_TWO_PART_NAME"};
+
+    // no FVS and FVS1-3
+    static final int FVS_COUNT = 4;
+
+    private static final int LINE_WIDTH = 100;
+    private static final String INDENT = "                    ";
+
+    private ShapingRuleCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println(
+                    "Usage: ShapingRuleCompiler <rules dir> <output dir> <default rule set>");
+            System.exit(1);
+        }
+        File[] files = new File(args[0]).listFiles();
+        if (files == null) throw new IOException("not a directory: " + args[0]);
+        Arrays.sort(files);
+        List<RuleSet> ruleSets = new ArrayList<>();
+        for (File file : files) {
+            if (!file.getName().endsWith(".rules")) continue;
+            Reader reader = new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8"));
+            try {
+                ruleSets.add(parse(file.getName(), reader));
+            } finally {
+                reader.close();
+            }
+        }
+
+        File outputDir = new File(args[1], "net/studymongolian/mongollibrary");
+        if (!outputDir.isDirectory() && !outputDir.mkdirs())
+            throw new IOException("could not create " + outputDir);
+        File output = new File(outputDir, GENERATED_CLASS + ".java");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(output), Charset.forName("UTF-8"));
+        try {
+            writer.write(generate(ruleSets, args[2]));
+        } finally {
+            writer.close();
+        }
+        System.out.println("Compiled " + ruleSets.size() + " rule sets to " + output);
+    }
+
+    /**
+     * Parses one rules file.
+     *
+     * @param fileName the file name, which also names the rule set
+     * @throws IllegalArgumentException with the file and line if the rules are not valid
+     */
+    static RuleSet parse(String fileName, Reader input) throws IOException {
+        RuleSet ruleSet = new RuleSet(fileName.replaceFirst("\\.rules$", ""));
+        Parser parser = new Parser(fileName, ruleSet);
+        BufferedReader reader = new BufferedReader(input);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            parser.parseLine(line, lineNumber);
+        }
+        parser.finish();
+        return ruleSet;
+    }
+
+    /**
+     * @return the Java source of the class that holds the rule sets
+     * @throws IllegalArgumentException if the default rule set is not one of them
+     */
+    static String generate(List<RuleSet> ruleSets, String defaultRuleSet) {
+        StringBuilder out = new StringBuilder();
+        out.append("package net.studymongolian.mongollibrary;\n\n");
+        out.append("import net.studymongolian.mongollibrary.MongolCode.Glyph;\n");
+        out.append("import net.studymongolian.mongollibrary.MongolCode.Uni;\n\n");
+        out.append("import static net.studymongolian.mongollibrary.ShapingRules.*;\n\n");
+        out.append("// Generated by ShapingRuleCompiler from src/main/rules. Do not edit.\n");
+        out.append("final class ").append(GENERATED_CLASS).append(" {\n\n");
+
+        out.append("    // the chars that the masks of the rules are indexed by\n");
+        List<String> chars = new ArrayList<>();
+        for (String name : LETTERS) chars.add("Uni." + name);
+        for (String name : OTHER_CHARS) chars.add("Uni." + name);
+        out.append("    static final char[] INDEXED_CHARS = ");
+        appendArray(out, "char", chars, "    ");
+        out.append(";\n\n");
+
+        boolean foundDefault = false;
+        for (RuleSet ruleSet : ruleSets) {
+            if (ruleSet.name.equals(defaultRuleSet)) foundDefault = true;
+            ruleSet.generate(out);
+        }
+        if (!foundDefault)
+            throw new IllegalArgumentException("no rule set named " + defaultRuleSet);
+        out.append("    static final ShapingRules DEFAULT = ")
+                .append(constantName(defaultRuleSet)).append(";\n\n");
+        out.append("    private ").append(GENERATED_CLASS).append("() {\n    }\n}\n");
+        return out.toString();
+    }
+
+    static String constantName(String ruleSetName) {
+        return ruleSetName.toUpperCase().replaceAll("[^A-Z0-9]", "_");
+    }
+
+    // appends new type[]{values} with the values wrapped at LINE_WIDTH
+    private static void appendArray(StringBuilder out, String type, List<String> values,
+                                    String indent) {
+        out.append("new ").append(type).append("[]{");
+        int lineStart = out.length();
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            if (i == 0 || out.length() - lineStart + value.length() + 2 > LINE_WIDTH) {
+                out.append('\n');
+                lineStart = out.length();
+                out.append(indent).append("        ");
+            } else {
+                out.append(' ');
+            }
+            out.append(value);
+            if (i < values.size() - 1) out.append(',');
+        }
+        out.append('}');
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    // bit i is set for the char at INDEXED_CHARS[i]
+    private static int charIndex(String name) {
+        int index = indexOf(LETTERS, name);
+        if (index >= 0) return index;
+        index = indexOf(OTHER_CHARS, name);
+        if (index >= 0) return LETTERS.length + index;
+        return -1;
+    }
+
+    static final class Atom {
+        final String kind;
+        final boolean negated;
+        final String argument;
+        // for the atoms that are decided at build time: the FVS number or shape index
+        final int value;
+
+        Atom(String kind, boolean negated, String argument, int value) {
+            this.kind = kind;
+            this.negated = negated;
+            this.argument = argument;
+            this.value = value;
+        }
+
+        boolean isStatic() {
+            return kind.equals("ATOM_FVS") || kind.equals("ATOM_SUFFIX")
+                    || kind.equals("ATOM_SHAPE_BELOW");
+        }
+
+        // fvs is 0 for none, shape is an index of SHAPES
+        boolean matches(int fvs, int shape, boolean suffix) {
+            boolean result;
+            switch (kind) {
+                case "ATOM_FVS":
+                    result = (fvs == value);
+                    break;
+                case "ATOM_SUFFIX":
+                    result = suffix;
+                    break;
+                case "ATOM_SHAPE_BELOW":
+                    result = (shape == value);
+                    break;
+                default:
+                    throw new IllegalStateException(kind + " is not decided at build time");
+            }
+            return result != negated;
+        }
+    }
+
+    static final class Rule {
+        final List<Atom> atoms;
+        final String glyph;
+        final String shape;
+
+        Rule(List<Atom> atoms, String glyph, String shape) {
+            this.atoms = atoms;
+            this.glyph = glyph;
+            this.shape = shape;
+        }
+    }
+
+    static final class RuleSet {
+        final String name;
+        final List<List<Rule>> rules = new ArrayList<>();
+        final String[] genders = new String[LETTERS.length];
+        final List<List<List<Atom>>> groups = new ArrayList<>();
+        final List<List<String>> glyphSets = new ArrayList<>();
+
+        RuleSet(String name) {
+            this.name = name;
+            Arrays.fill(genders, "GENDER_NONE");
+            for (int i = 0; i < LETTERS.length * LOCATIONS.length; i++) {
+                rules.add(new ArrayList<Rule>());
+            }
+        }
+
+        List<Rule> getRules(int letter, int location) {
+            return rules.get(letter * LOCATIONS.length + location);
+        }
+
+        /**
+         * @return the rules that can match with this FVS, shape below and
+         * suffix. It ends with the first rule that always matches.
+         */
+        List<Rule> specialize(List<Rule> rules, int fvs, int shape, boolean suffix) {
+            List<Rule> specialized = new ArrayList<>();
+            for (Rule rule : rules) {
+                boolean canMatch = true;
+                boolean alwaysMatches = true;
+                for (Atom atom : rule.atoms) {
+                    if (!atom.isStatic()) {
+                        alwaysMatches = false;
+                    } else if (!atom.matches(fvs, shape, suffix)) {
+                        canMatch = false;
+                        break;
+                    }
+                }
+                if (!canMatch) continue;
+                specialized.add(rule);
+                if (alwaysMatches) break;
+            }
+            return specialized;
+        }
+
+        void generate(StringBuilder out) {
+            // The specialized rule lists are stored one after the other, without
+            // the atoms that were decided here, and the same list is only stored
+            // once. Each list ends with a rule that always matches, so only the
+            // start of a list is needed.
+            List<Rule> orderedRules = new ArrayList<>();
+            List<String> ruleStarts = new ArrayList<>();
+            Map<List<Rule>, Integer> listStarts = new HashMap<>();
+            for (List<Rule> locationRules : rules) {
+                for (int fvs = 0; fvs < FVS_COUNT; fvs++) {
+                    for (int shape = 0; shape < SHAPES.length; shape++) {
+                        for (int suffix = 0; suffix < 2; suffix++) {
+                            List<Rule> list = specialize(locationRules, fvs, shape, suffix == 1);
+                            Integer start = listStarts.get(list);
+                            if (start == null) {
+                                start = orderedRules.size();
+                                orderedRules.addAll(list);
+                                listStarts.put(list, start);
+                            }
+                            ruleStarts.add(String.valueOf(start));
+                        }
+                    }
+                }
+            }
+
+            // rule atoms come first so that each rule's atoms are contiguous,
+            // then the atoms of the conjunctions of the groups
+            List<Atom> atoms = new ArrayList<>();
+            List<String> glyphs = new ArrayList<>();
+            List<String> shapes = new ArrayList<>();
+            List<String> ruleAtomStarts = new ArrayList<>();
+            for (Rule rule : orderedRules) {
+                glyphs.add("Glyph." + rule.glyph);
+                shapes.add(rule.shape);
+                ruleAtomStarts.add(String.valueOf(atoms.size()));
+                for (Atom atom : rule.atoms) {
+                    if (!atom.isStatic()) atoms.add(atom);
+                }
+            }
+            ruleAtomStarts.add(String.valueOf(atoms.size()));
+
+            List<String> groupStarts = new ArrayList<>();
+            List<String> conjunctionAtomStarts = new ArrayList<>();
+            int conjunctionCount = 0;
+            for (List<List<Atom>> group : groups) {
+                groupStarts.add(String.valueOf(conjunctionCount));
+                for (List<Atom> conjunction : group) {
+                    conjunctionAtomStarts.add(String.valueOf(atoms.size()));
+                    atoms.addAll(conjunction);
+                    conjunctionCount++;
+                }
+            }
+            groupStarts.add(String.valueOf(conjunctionCount));
+            conjunctionAtomStarts.add(String.valueOf(atoms.size()));
+
+            List<String> atomOps = new ArrayList<>();
+            List<String> atomArguments = new ArrayList<>();
+            for (Atom atom : atoms) {
+                atomOps.add(atom.negated ? atom.kind + " | NEGATED" : atom.kind);
+                atomArguments.add(atom.argument);
+            }
+
+            List<String> glyphSetValues = new ArrayList<>();
+            for (List<String> glyphSet : glyphSets) {
+                StringBuilder value = new StringBuilder("{");
+                for (int i = 0; i < glyphSet.size(); i++) {
+                    if (i > 0) value.append(", ");
+                    value.append("Glyph.").append(glyphSet.get(i));
+                }
+                glyphSetValues.add(value.append('}').toString());
+            }
+
+            String indent = "            ";
+            out.append("    // ").append(name).append(".rules: ").append(orderedRules.size())
+                    .append(" rules\n");
+            out.append("    static final ShapingRules ").append(constantName(name))
+                    .append(" = new ShapingRules(\n");
+            out.append(indent).append('"').append(name).append("\",\n");
+            out.append(indent).append("INDEXED_CHARS,\n");
+            appendArgument(out, "byte", Arrays.asList(genders));
+            appendArgument(out, "short", ruleStarts);
+            appendArgument(out, "char", glyphs);
+            appendArgument(out, "byte", shapes);
+            appendArgument(out, "short", ruleAtomStarts);
+            appendArgument(out, "short", groupStarts);
+            appendArgument(out, "short", conjunctionAtomStarts);
+            appendArgument(out, "byte", atomOps);
+            appendArgument(out, "long", atomArguments);
+            out.append(indent);
+            appendArray(out, "char[]", glyphSetValues, indent);
+            out.append(");\n\n");
+        }
+
+        private static void appendArgument(StringBuilder out, String type, List<String> values) {
+            String indent = "            ";
+            out.append(indent);
+            appendArray(out, type, values, indent);
+            out.append(",\n");
+        }
+    }
+
+    // Parses a rules file line by line:
+    //
+    //   class <name> = <letter or class>...
+    //   define <name> = <conditions> [or <conditions>]...
+    //   letter <LETTER> [masculine|feminine] [shape=<shape>]
+    //       <location> [<condition>...] -> <GLYPH> [<shape>]
+    //
+    // Anything after # is a comment.
+    private static final class Parser {
+
+        private final String fileName;
+        private final RuleSet ruleSet;
+        private final Map<String, Long> classes = new HashMap<>();
+        private final Map<String, Integer> groups = new LinkedHashMap<>();
+        private final Map<String, Integer> glyphSets = new HashMap<>();
+        private final boolean[] lettersSeen = new boolean[LETTERS.length];
+        private int lineNumber;
+        private int letter = -1;
+        private String letterShape;
+
+        Parser(String fileName, RuleSet ruleSet) {
+            this.fileName = fileName;
+            this.ruleSet = ruleSet;
+        }
+
+        void parseLine(String line, int lineNumber) {
+            this.lineNumber = lineNumber;
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            line = line.trim();
+            if (line.isEmpty()) return;
+            String[] tokens = line.split("\\s+");
+            switch (tokens[0]) {
+                case "class":
+                    parseClass(tokens);
+                    break;
+                case "define":
+                    parseDefine(tokens);
+                    break;
+                case "letter":
+                    parseLetter(tokens);
+                    break;
+                default:
+                    parseRule(tokens);
+            }
+        }
+
+        void finish() {
+            for (int i = 0; i < LETTERS.length; i++) {
+                if (!lettersSeen[i]) throw error("no rules for letter " + LETTERS[i]);
+                for (int location = 0; location < LOCATIONS.length; location++) {
+                    List<Rule> rules = ruleSet.getRules(i, location);
+                    if (rules.isEmpty() || !rules.get(rules.size() - 1).atoms.isEmpty())
+                        throw error("the last " + LOCATIONS[location] + " rule of "
+                                + LETTERS[i] + " must have no conditions");
+                }
+            }
+        }
+
+        private void parseClass(String[] tokens) {
+            if (tokens.length < 4 || !tokens[2].equals("="))
+                throw error("expected: class <name> = <letter>...");
+            String name = tokens[1];
+            checkNewName(name);
+            long mask = 0;
+            for (int i = 3; i < tokens.length; i++) {
+                mask |= parseCharSet(tokens[i]);
+            }
+            classes.put(name, mask);
+        }
+
+        private void parseDefine(String[] tokens) {
+            if (tokens.length < 4 || !tokens[2].equals("="))
+                throw error("expected: define <name> = <conditions> [or <conditions>]...");
+            String name = tokens[1];
+            checkNewName(name);
+            List<List<Atom>> conjunctions = new ArrayList<>();
+            List<Atom> conjunction = new ArrayList<>();
+            for (int i = 3; i < tokens.length; i++) {
+                if (tokens[i].equals("or")) {
+                    if (conjunction.isEmpty()) throw error("empty condition before or");
+                    conjunctions.add(conjunction);
+                    conjunction = new ArrayList<>();
+                } else {
+                    conjunction.add(parseCondition(tokens[i]));
+                }
+            }
+            if (conjunction.isEmpty()) throw error("empty condition at the end of " + name);
+            conjunctions.add(conjunction);
+            groups.put(name, ruleSet.groups.size());
+            ruleSet.groups.add(conjunctions);
+        }
+
+        private void parseLetter(String[] tokens) {
+            if (tokens.length < 2) throw error("expected: letter <LETTER>");
+            letter = indexOf(LETTERS, tokens[1]);
+            if (letter < 0) throw error("unknown letter " + tokens[1]);
+            if (lettersSeen[letter]) throw error("letter " + tokens[1] + " is already defined");
+            lettersSeen[letter] = true;
+            letterShape = "SHAPE_KEEP";
+            for (int i = 2; i < tokens.length; i++) {
+                if (tokens[i].startsWith("shape=")) {
+                    letterShape = SHAPE_CONSTANTS[parseShape(tokens[i].substring("shape=".length()))];
+                    continue;
+                }
+                int gender = indexOf(GENDERS, tokens[i]);
+                if (gender < 0 || tokens[i].equals("neuter"))
+                    throw error("expected masculine, feminine or shape=<shape>: " + tokens[i]);
+                ruleSet.genders[letter] = GENDER_CONSTANTS[gender];
+            }
+        }
+
+        private void parseRule(String[] tokens) {
+            if (letter < 0) throw error("rule before the first letter");
+            int location = indexOf(LOCATIONS, tokens[0]);
+            if (location < 0) throw error("unknown location or keyword " + tokens[0]);
+            int arrow = Arrays.asList(tokens).indexOf("->");
+            if (arrow < 0 || arrow == tokens.length - 1 || arrow < tokens.length - 3)
+                throw error("expected: <location> [<condition>...] -> <GLYPH> [<shape>]");
+            List<Atom> atoms = new ArrayList<>();
+            for (int i = 1; i < arrow; i++) {
+                atoms.add(parseCondition(tokens[i]));
+            }
+            String glyph = tokens[arrow + 1];
+            checkGlyphName(glyph);
+            String shape = letterShape;
+            if (arrow == tokens.length - 3) shape = SHAPE_CONSTANTS[parseShape(tokens[arrow + 2])];
+            List<Rule> rules = ruleSet.getRules(letter, location);
+            if (!rules.isEmpty() && rules.get(rules.size() - 1).atoms.isEmpty())
+                throw error("this rule is never used because the one before it has no conditions");
+            rules.add(new Rule(atoms, glyph, shape));
+        }
+
+        private Atom parseCondition(String token) {
+            boolean negated = false;
+            String name = token;
+            String value = null;
+            int equals = token.indexOf('=');
+            if (equals > 0) {
+                name = token.substring(0, equals);
+                value = token.substring(equals + 1);
+                if (name.endsWith("!")) {
+                    negated = true;
+                    name = name.substring(0, name.length() - 1);
+                }
+                if (value.isEmpty()) throw error("missing value in " + token);
+            } else if (token.startsWith("!")) {
+                negated = true;
+                name = token.substring(1);
+            }
+
+            if (value == null) {
+                switch (name) {
+                    case "fvs1":
+                    case "fvs2":
+                    case "fvs3":
+                        return new Atom("ATOM_FVS", negated, "Uni." + name.toUpperCase(),
+                                name.charAt(3) - '0');
+                    case "suffix":
+                        return new Atom("ATOM_SUFFIX", negated, "0", 0);
+                }
+                int predicate = indexOf(PREDICATES, name);
+                if (predicate >= 0)
+                    return new Atom("ATOM_PREDICATE", negated, PREDICATE_CONSTANTS[predicate], 0);
+                Integer group = groups.get(name);
+                if (group != null)
+                    return new Atom("ATOM_GROUP", negated, String.valueOf(group), 0);
+                throw error("unknown condition " + token);
+            }
+
+            switch (name) {
+                case "below":
+                    int shape = parseShape(value);
+                    return new Atom("ATOM_SHAPE_BELOW", negated, SHAPE_CONSTANTS[shape], shape);
+                case "next":
+                    return new Atom("ATOM_NEXT", negated, mask(parseCharSets(value)), 0);
+                case "prev":
+                    return new Atom("ATOM_PREVIOUS", negated, mask(parseCharSets(value)), 0);
+                case "prev2":
+                    return new Atom("ATOM_PREVIOUS_2", negated, mask(parseCharSets(value)), 0);
+                case "gender":
+                    int gender = indexOf(GENDERS, value);
+                    if (gender < 0) throw error("unknown gender " + value);
+                    return new Atom("ATOM_GENDER", negated, GENDER_CONSTANTS[gender], 0);
+                case "glyphBelow":
+                    return new Atom("ATOM_GLYPH_BELOW", negated,
+                            String.valueOf(parseGlyphSet(value)), 0);
+                default:
+                    throw error("unknown condition " + token);
+            }
+        }
+
+        // letters, chars and classes separated by |
+        private long parseCharSets(String value) {
+            long mask = 0;
+            for (String name : value.split("\\|")) {
+                mask |= parseCharSet(name);
+            }
+            return mask;
+        }
+
+        private long parseCharSet(String name) {
+            Long mask = classes.get(name);
+            if (mask != null) return mask;
+            int index = charIndex(name);
+            if (index < 0) throw error("unknown letter or class " + name);
+            return 1L << index;
+        }
+
+        // the same set of glyphs is only stored once
+        private int parseGlyphSet(String value) {
+            Integer index = glyphSets.get(value);
+            if (index != null) return index;
+            List<String> glyphs = Arrays.asList(value.split("\\|"));
+            for (String glyph : glyphs) {
+                checkGlyphName(glyph);
+            }
+            index = ruleSet.glyphSets.size();
+            ruleSet.glyphSets.add(glyphs);
+            glyphSets.put(value, index);
+            return index;
+        }
+
+        private int parseShape(String name) {
+            int shape = indexOf(SHAPES, name);
+            if (shape < 0) throw error("unknown shape " + name);
+            return shape;
+        }
+
+        private static String mask(long mask) {
+            return "0x" + Long.toHexString(mask) + "L";
+        }
+
+        // the names themselves are checked by javac when the generated class is compiled
+        private void checkGlyphName(String glyph) {
+            if (!glyph.matches("[A-Z][A-Z0-9_]*")) throw error("not a glyph name: " + glyph);
+        }
+
+        private void checkNewName(String name) {
+            if (!name.matches("[a-zA-Z][a-zA-Z0-9]*")) throw error("not a valid name: " + name);
+            if (classes.containsKey(name) || groups.containsKey(name)
+                    || charIndex(name) >= 0 || indexOf(PREDICATES, name) >= 0)
+                throw error(name + " is already defined");
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(fileName + ":" + lineNumber + ": " + message);
+        }
+    }
+}
@@ -4,6 +4,12 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class ConvertMenksoftToUnicodeTest {
 
     private MongolCode converter = MongolCode.INSTANCE;
@@ -3794,4 +3800,40 @@ public class ConvertMenksoftToUnicodeTest {
         String expected = "\uE266\uE32C\uE268";
         assertEquals(expected, result);
     }
+
+    @Test
+    public void readerMatchesOneShotConversion() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append("\uE2F1\uE289\uE2BC\uE2EB\uE289\uE2F9 \uE263\uE292\uE2B5 abc\n");
+        }
+        String menksoft = builder.toString();
+        Reader reader = converter.newMenksoftToUnicodeReader(new StringReader(menksoft));
+        StringBuilder result = new StringBuilder();
+        char[] buffer = new char[500];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            result.append(buffer, 0, count);
+        }
+        reader.close();
+        String expected = convertMenksoftToUnicode(menksoft);
+        assertEquals(expected, result.toString());
+    }
+
+    @Test
+    public void parallelMatchesSequentialConversion() throws InterruptedException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append("\uE2F1\uE289\uE2BC\uE2EB\uE289\uE2F9 \uE263\uE292\uE2B5 abc\n");
+        }
+        String menksoft = builder.toString();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            String result = converter.menksoftToUnicodeParallel(menksoft, executor);
+            String expected = convertMenksoftToUnicode(menksoft);
+            assertEquals(expected, result);
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
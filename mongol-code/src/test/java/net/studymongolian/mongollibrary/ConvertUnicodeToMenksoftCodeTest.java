@@ -4,6 +4,13 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class ConvertUnicodeToMenksoftCodeTest {
 
     private MongolCode converter = MongolCode.INSTANCE;
@@ -6091,4 +6098,138 @@ public class ConvertUnicodeToMenksoftCodeTest {
         String expected = "\uE271\uE2EF\uE301\uE276\uE2B5";
         assertEquals(expected, result);
     }
+
+
+    ///////////////////// Buffer overloads /////////////////////
+
+
+    @Test
+    public void charArrayDestination() {
+        String unicode = "abc ᠨᠠ\u200Dᠢᠮᠠ xyz"; // NA(ZWJ)IMA
+        char[] dest = new char[10];
+        int count = converter.unicodeToMenksoft(unicode, 4, 10, dest, 2);
+        String result = new String(dest, 2, count);
+        String expected = "\uE2B1\uE26C\uE27E\uE2F5\uE268";
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void charArrayDestination_sameAsString() {
+        String unicode = " ᠶᠢᠨ";
+        char[] dest = new char[unicode.length()];
+        int count = converter.unicodeToMenksoft(unicode, 0, unicode.length(), dest, 0);
+        String result = new String(dest, 0, count);
+        String expected = convert(unicode);
+        assertEquals(expected, result);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void charArrayDestination_tooSmall() {
+        String unicode = "ᠨᠠ\u200Dᠢᠮᠠ";
+        char[] dest = new char[unicode.length() - 1];
+        converter.unicodeToMenksoft(unicode, 0, unicode.length(), dest, 0);
+    }
+
+    @Test
+    public void charBufferDestination() {
+        String unicode = "ᠨᠠ\u200Dᠢᠮᠠ";
+        CharBuffer dest = CharBuffer.allocate(20);
+        dest.put('a');
+        int count = converter.unicodeToMenksoft(unicode, 0, unicode.length(), dest);
+        dest.flip();
+        String result = dest.toString();
+        String expected = "a\uE2B1\uE26C\uE27E\uE2F5\uE268";
+        assertEquals(5, count);
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void appendableDestination() throws IOException {
+        String unicode = "ᠨᠠ\u200Dᠢᠮᠠ";
+        StringBuilder dest = new StringBuilder("a");
+        int count = converter.unicodeToMenksoft(unicode, 0, unicode.length(), dest);
+        String result = dest.toString();
+        String expected = "a\uE2B1\uE26C\uE27E\uE2F5\uE268";
+        assertEquals(5, count);
+        assertEquals(expected, result);
+    }
+
+
+    @Test
+    public void offsetMapsSkipStrippedControlChars() {
+        String unicode = "ᠨᠠ\u200Dᠢᠮᠠ"; // NA(ZWJ)IMA
+        MongolCode.MenksoftText result = converter.unicodeToMenksoftWithOffsets(unicode);
+        assertEquals(convert(unicode), result.getText());
+        int[] expectedMenksoftOffsets = {0, 1, 2, 2, 3, 4, 5};
+        for (int i = 0; i <= unicode.length(); i++) {
+            assertEquals(expectedMenksoftOffsets[i], result.getMenksoftOffset(i));
+        }
+        int[] expectedUnicodeOffsets = {0, 1, 3, 4, 5, 6};
+        for (int i = 0; i <= result.getText().length(); i++) {
+            assertEquals(expectedUnicodeOffsets[i], result.getUnicodeOffset(i));
+        }
+    }
+
+    @Test
+    public void offsetMapsWithoutStripping() {
+        String unicode = "abc ᠮᠣᠩᠭᠣᠯ";
+        MongolCode.MenksoftText result = converter.unicodeToMenksoftWithOffsets(unicode);
+        for (int i = 0; i <= unicode.length(); i++) {
+            assertEquals(i, result.getMenksoftOffset(i));
+            assertEquals(i, result.getUnicodeOffset(i));
+        }
+    }
+
+
+    ////////////////////// Streaming //////////////////////
+
+
+    @Test
+    public void writerMatchesOneShotConversion() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append("ᠮᠣᠩᠭᠣᠯ ᠤᠨ ᠪᠢᠴᠢᠭ᠂ abc ᠨᠠ\u200Dᠢᠮᠠ\n");
+        }
+        String unicode = builder.toString();
+        StringWriter result = new StringWriter();
+        Writer writer = converter.newUnicodeToMenksoftWriter(result);
+        for (int i = 0; i < unicode.length(); i += 1000) {
+            writer.write(unicode, i, Math.min(1000, unicode.length() - i));
+        }
+        writer.close();
+        String expected = convert(unicode);
+        assertEquals(expected, result.toString());
+    }
+
+    @Test
+    public void writerWithWordLongerThanChunk() throws IOException {
+        StringBuilder builder = new StringBuilder("ᠪ");
+        for (int i = 0; i < 20000; i++) {
+            builder.append("ᠠ");
+        }
+        String unicode = builder.toString();
+        StringWriter result = new StringWriter();
+        Writer writer = converter.newUnicodeToMenksoftWriter(result);
+        writer.write(unicode);
+        writer.close();
+        String expected = convert(unicode);
+        assertEquals(expected, result.toString());
+    }
+
+    @Test
+    public void parallelMatchesSequentialConversion() throws InterruptedException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append("ᠮᠣᠩᠭᠣᠯ ᠤᠨ ᠪᠢᠴᠢᠭ᠂ abc ᠨᠠ\u200Dᠢᠮᠠ\n");
+        }
+        String unicode = builder.toString();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            String result = converter.unicodeToMenksoftParallel(unicode, executor);
+            String expected = convert(unicode);
+            assertEquals(expected, result);
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
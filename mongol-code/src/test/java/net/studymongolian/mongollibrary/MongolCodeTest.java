@@ -3,6 +3,10 @@ package net.studymongolian.mongollibrary;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class MongolCodeTest {
 
@@ -165,4 +169,127 @@ public class MongolCodeTest {
         String expected = MongolCode.Suffix.UEN;
         assertEquals(expected, result);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void isMongolian_lettersAndControlChars() {
+        assertTrue(MongolCode.isMongolian(MongolCode.Uni.A));
+        assertTrue(MongolCode.isMongolian(MongolCode.Uni.CHI));
+        assertTrue(MongolCode.isMongolian(MongolCode.Uni.TODO_DZA));
+        assertTrue(MongolCode.isMongolian(MongolCode.Uni.MONGOLIAN_NIRUGU));
+        assertTrue(MongolCode.isMongolian(MongolCode.Uni.FVS1));
+        assertTrue(MongolCode.isMongolian(MongolCode.Uni.MVS));
+        assertTrue(MongolCode.isMongolian(MongolCode.Uni.ZWJ));
+        assertTrue(MongolCode.isMongolian(MongolCode.Uni.ZWNJ));
+    }
+
+    @Test
+    public void isMongolian_otherChars() {
+        assertFalse(MongolCode.isMongolian(MongolCode.Uni.NNBS));
+        assertFalse(MongolCode.isMongolian(MongolCode.Uni.WJ));
+        assertFalse(MongolCode.isMongolian(MongolCode.Uni.MONGOLIAN_BIRGA));
+        assertFalse(MongolCode.isMongolian(MongolCode.Uni.MONGOLIAN_DIGIT_ZERO));
+        assertFalse(MongolCode.isMongolian('a'));
+        assertFalse(MongolCode.isMongolian('\u0000'));
+        assertFalse(MongolCode.isMongolian('\uE234'));
+        assertFalse(MongolCode.isMongolian('\uFFFF'));
+    }
+
+    @Test
+    public void wordCache_sameResultWithCache() {
+        MongolCode converter = MongolCode.INSTANCE;
+        String unicode = "ᠮᠣᠩᠭᠣᠯ ᠪᠢᠴᠢᠭ ᠮᠣᠩᠭᠣᠯ ᠤᠨ ᠪᠢᠴᠢᠭ";
+        String expected = converter.unicodeToMenksoft(unicode);
+        converter.setWordCacheSize(10000);
+        try {
+            assertEquals(expected, converter.unicodeToMenksoft(unicode));
+            assertEquals(expected, converter.unicodeToMenksoft(unicode));
+        } finally {
+            converter.setWordCacheSize(0);
+        }
+    }
+
+    @Test
+    public void wordCache_countsHitsAndMisses() {
+        MongolCode converter = MongolCode.INSTANCE;
+        converter.setWordCacheSize(10000);
+        try {
+            converter.unicodeToMenksoft("ᠮᠣᠩᠭᠣᠯ ᠮᠣᠩᠭᠣᠯ ᠪᠢᠴᠢᠭ");
+            MongolCode.WordCache cache = converter.getWordCache();
+            assertEquals(2, cache.missCount());
+            assertEquals(1, cache.hitCount());
+            assertEquals(2, cache.size());
+        } finally {
+            converter.setWordCacheSize(0);
+        }
+    }
+
+    @Test
+    public void wordCache_evictsWhenOverBudget() {
+        MongolCode converter = MongolCode.INSTANCE;
+        converter.setWordCacheSize(150);
+        try {
+            converter.unicodeToMenksoft("ᠮᠣᠩᠭᠣᠯ ᠪᠢᠴᠢᠭ");
+            MongolCode.WordCache cache = converter.getWordCache();
+            assertEquals(1, cache.size());
+            assertEquals(1, cache.evictionCount());
+            assertTrue(cache.sizeInBytes() <= cache.maxSizeInBytes());
+        } finally {
+            converter.setWordCacheSize(0);
+        }
+    }
+
+    @Test
+    public void wordCache_offByDefault() {
+        assertNull(MongolCode.INSTANCE.getWordCache());
+    }
+
+    @Test
+    public void unicodeToMenksoft_noMongolianReturnsInput() {
+        String text = "Hello, мир 123 ";
+        assertSame(text, MongolCode.INSTANCE.unicodeToMenksoft(text));
+    }
+
+    @Test
+    public void menksoftToUnicode_noMenksoftReturnsInput() {
+        String text = "Hello, мир 123 ";
+        assertSame(text, MongolCode.INSTANCE.menksoftToUnicode(text));
+    }
+
+    @Test
+    public void unicodeToMenksoft_longNonMongolRunsAroundWords() {
+        MongolCode converter = MongolCode.INSTANCE;
+        String word = "ᠮᠣᠩᠭᠣᠯ";
+        String menksoft = converter.unicodeToMenksoft(word);
+        String result = converter.unicodeToMenksoft("The word " + word + " means Mongol.");
+        assertEquals("The word " + menksoft + " means Mongol.", result);
+        assertEquals("The word " + word + " means Mongol.", converter.menksoftToUnicode(result));
+    }
+
+    @Test
+    public void conversion_isThreadSafe() throws InterruptedException {
+        final MongolCode converter = MongolCode.INSTANCE;
+        final String unicode = "ᠮᠣᠩᠭᠣᠯ ᠪᠢᠴᠢᠭ ᠦᠨ ᠰᠣᠨᠢᠨ ᠭᠠᠵᠠᠷ ᠠᠴᠠ abc";
+        final String menksoft = converter.unicodeToMenksoft(unicode);
+        final String roundTrip = converter.menksoftToUnicode(menksoft);
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        if (!menksoft.equals(converter.unicodeToMenksoft(unicode))
+                                || !roundTrip.equals(converter.menksoftToUnicode(menksoft))) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(failed[0]);
+    }
+}
@@ -0,0 +1,114 @@
+package net.studymongolian.mongollibrary;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MongolCollationTest {
+
+    // in the expected order
+    private static final String[] SORTED_WORDS = {
+            "ᠠ",          // A
+            "ᠠᠪ",         // AB
+            "ᠡ",          // E
+            "ᠧ",          // EE comes right after E
+            "ᠢ",          // I
+            "ᠪᠢᠴᠢᠭ",      // BICHIG
+            "ᠪᠢᠴᠢᠭ\u202Fᠤᠨ", // BICHIG NNBS UN, before longer words
+            "ᠪᠢᠴᠢᠭᠠ",     // BICHIGA
+            "ᠮᠣᠩᠭᠣᠯ",     // MONGGOL
+            "ᠴᠢ",         // CHI
+            "abc",        // other chars come last
+            "😀"};
+
+    private static int sign(int number) {
+        return Integer.signum(number);
+    }
+
+    @Test
+    public void collationKey_sortsInTraditionalOrder() {
+        for (int i = 0; i < SORTED_WORDS.length - 1; i++) {
+            String word1 = SORTED_WORDS[i];
+            String word2 = SORTED_WORDS[i + 1];
+            byte[] key1 = MongolCode.collationKey(word1);
+            byte[] key2 = MongolCode.collationKey(word2);
+            assertTrue(word1 + " < " + word2, MongolCode.compareCollationKeys(key1, key2) < 0);
+            assertTrue(word1 + " < " + word2, MongolCode.compareCollation(word1, word2) < 0);
+            assertTrue(word1 + " <= " + word2, MongolCode.collationKeyPrefix(word1)
+                    <= MongolCode.collationKeyPrefix(word2));
+        }
+    }
+
+    @Test
+    public void collationKey_ignoresFormattingControls() {
+        String plain = "\u182A\u1820\u1822\u1828\u1820"; // BAINA
+        // B FVS1 A ZWJ I N MVS A
+        String withControls = "\u182A\u180B\u1820\u200D\u1822\u1828\u180E\u1820";
+        assertArrayEquals(MongolCode.collationKey(plain), MongolCode.collationKey(withControls));
+        assertEquals(0, MongolCode.compareCollation(plain, withControls));
+        assertEquals(MongolCode.collationKeyPrefix(plain), MongolCode.collationKeyPrefix(withControls));
+    }
+
+    @Test
+    public void collationKey_oneBytePerLetter() {
+        assertEquals(6, MongolCode.collationKey("ᠮᠣᠩᠭᠣᠯ").length);
+        assertEquals(3, MongolCode.collationKey("a").length);
+        assertEquals(0, MongolCode.collationKey("").length);
+    }
+
+    @Test
+    public void collationKeyPrefix_isPositive() {
+        assertTrue(MongolCode.collationKeyPrefix("\uFFFF\uFFFF\uFFFF") > 0);
+        assertEquals(0, MongolCode.collationKeyPrefix(""));
+    }
+
+    @Test
+    public void collationKeyPrefixes_fillsArray() {
+        long[] prefixes = new long[SORTED_WORDS.length];
+        MongolCode.collationKeyPrefixes(SORTED_WORDS, prefixes);
+        for (int i = 0; i < SORTED_WORDS.length; i++) {
+            assertEquals(MongolCode.collationKeyPrefix(SORTED_WORDS[i]), prefixes[i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void collationKeyPrefixes_arrayTooShort() {
+        MongolCode.collationKeyPrefixes(SORTED_WORDS, new long[1]);
+    }
+
+    @Test
+    public void compare_agreesWithKeysAndPrefixes() {
+        char[] chars = {
+                MongolCode.Uni.A, MongolCode.Uni.E, MongolCode.Uni.EE, MongolCode.Uni.I,
+                MongolCode.Uni.NA, MongolCode.Uni.GA, MongolCode.Uni.CHI, MongolCode.Uni.FVS1,
+                MongolCode.Uni.MVS, MongolCode.Uni.ZWJ, MongolCode.Uni.NNBS,
+                MongolCode.Uni.MONGOLIAN_DIGIT_ONE, MongolCode.Uni.MONGOLIAN_COMMA, ' ', 'a'};
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            String text1 = randomText(random, chars);
+            String text2 = randomText(random, chars);
+            int expected = sign(MongolCode.compareCollationKeys(
+                    MongolCode.collationKey(text1), MongolCode.collationKey(text2)));
+            assertEquals(text1 + " " + text2, expected,
+                    sign(MongolCode.compareCollation(text1, text2)));
+            long prefix1 = MongolCode.collationKeyPrefix(text1);
+            long prefix2 = MongolCode.collationKeyPrefix(text2);
+            if (prefix1 != prefix2) {
+                assertEquals(text1 + " " + text2, expected, sign(Long.compare(prefix1, prefix2)));
+            }
+        }
+    }
+
+    private static String randomText(Random random, char[] chars) {
+        int length = random.nextInt(10);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(chars[random.nextInt(chars.length)]);
+        }
+        return builder.toString();
+    }
+}
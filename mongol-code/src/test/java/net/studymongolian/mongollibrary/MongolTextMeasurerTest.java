@@ -0,0 +1,200 @@
+package net.studymongolian.mongollibrary;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MongolTextMeasurerTest {
+
+    private static final int UNITS_PER_EM = 1000;
+    private static final float TEXT_SIZE = 20;
+
+    private MongolTextMeasurer measurer;
+
+    @Before
+    public void setUp() throws IOException {
+        measurer = new MongolTextMeasurer(GlyphAdvanceTable.parse(ByteBuffer.wrap(makeFont())));
+    }
+
+    // A font with just the tables that are read. Glyph 0 (missing) is 500 units
+    // wide, 'a' is 250 and  is 1000.  is past the last long metric,
+    // so it also gets 1000. ZWJ has the glyph of 'a' and LRM that of ,
+    // but ZWNJ has none.
+    private static byte[] makeFont() throws IOException {
+        byte[] cmap = table(new Writer() {
+            @Override
+            public void write(DataOutputStream out) throws IOException {
+                out.writeShort(0);          // version
+                out.writeShort(1);          // one subtable
+                out.writeShort(3);          // Windows
+                out.writeShort(1);          // Unicode BMP
+                out.writeInt(12);
+                int segCount = 4;
+                out.writeShort(4);          // format
+                out.writeShort(16 + 8 * segCount);
+                out.writeShort(0);
+                out.writeShort(2 * segCount);
+                out.writeShort(0);
+                out.writeShort(0);
+                out.writeShort(0);
+                out.writeShort('a');        // end codes
+                out.writeShort(0x200E);
+                out.writeShort(0xE235);
+                out.writeShort(0xFFFF);
+                out.writeShort(0);
+                out.writeShort('a');        // start codes
+                out.writeShort(0x200D);
+                out.writeShort(0xE234);
+                out.writeShort(0xFFFF);
+                out.writeShort(1 - 'a');    // deltas
+                out.writeShort(1 - 0x200D);
+                out.writeShort(2 - 0xE234);
+                out.writeShort(1);
+                out.writeShort(0);          // range offsets
+                out.writeShort(0);
+                out.writeShort(0);
+                out.writeShort(0);
+            }
+        });
+        byte[] head = table(new Writer() {
+            @Override
+            public void write(DataOutputStream out) throws IOException {
+                out.write(new byte[18]);
+                out.writeShort(UNITS_PER_EM);
+                out.write(new byte[34]);
+            }
+        });
+        byte[] hhea = table(new Writer() {
+            @Override
+            public void write(DataOutputStream out) throws IOException {
+                out.write(new byte[34]);
+                out.writeShort(3);          // numberOfHMetrics
+            }
+        });
+        byte[] hmtx = table(new Writer() {
+            @Override
+            public void write(DataOutputStream out) throws IOException {
+                int[] advances = {500, 250, 1000};
+                for (int advance : advances) {
+                    out.writeShort(advance);
+                    out.writeShort(0);
+                }
+                out.writeShort(0);          // lsb of glyph 3
+            }
+        });
+        byte[] maxp = table(new Writer() {
+            @Override
+            public void write(DataOutputStream out) throws IOException {
+                out.writeInt(0x00005000);
+                out.writeShort(4);          // numGlyphs
+            }
+        });
+
+        String[] tags = {"cmap", "head", "hhea", "hmtx", "maxp"};
+        byte[][] tables = {cmap, head, hhea, hmtx, maxp};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x00010000);
+        out.writeShort(tables.length);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        int offset = 12 + 16 * tables.length;
+        for (int i = 0; i < tables.length; i++) {
+            out.writeBytes(tags[i]);
+            out.writeInt(0);
+            out.writeInt(offset);
+            out.writeInt(tables[i].length);
+            offset += tables[i].length;
+        }
+        for (byte[] table : tables) {
+            out.write(table);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] table(Writer writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writer.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void getAdvance_fromCmapAndHmtx() {
+        GlyphAdvanceTable table = measurer.getAdvanceTable();
+        assertEquals(UNITS_PER_EM, table.getUnitsPerEm());
+        assertEquals(250, table.getAdvance('a'));
+        assertEquals(1000, table.getAdvance(''));
+        assertEquals(1000, table.getAdvance(''));
+        assertEquals(500, table.getAdvance('b'));
+        assertEquals(500, table.getAdvance(''));
+    }
+
+    @Test
+    public void getAdvance_formatControlsAreZeroWidth() {
+        GlyphAdvanceTable table = measurer.getAdvanceTable();
+        char[] controls = {'\u200E', '\u200F', '\u2028', '\u2029',
+                '\u202A', '\u202B', '\u202C', '\u202D', '\u202E'};
+        for (char control : controls) {
+            assertEquals(0, table.getAdvance(control));
+        }
+    }
+
+    @Test
+    public void getAdvance_joinersAreZeroWidthWithoutGlyph() {
+        GlyphAdvanceTable table = measurer.getAdvanceTable();
+        assertEquals(0, table.getAdvance('\u200C'));
+        assertEquals(250, table.getAdvance('\u200D'));
+    }
+
+    @Test
+    public void measureText_skipsFormatControls() {
+        float result = measurer.measureText("\u202Ba\u200C\u202C", TEXT_SIZE);
+        assertEquals(250 * TEXT_SIZE / UNITS_PER_EM, result, 0.0001f);
+    }
+
+    @Test
+    public void measureText_scalesToTextSize() {
+        float result = measurer.measureText("ab", TEXT_SIZE);
+        assertEquals((250 + 1000 + 1000 + 500) * TEXT_SIZE / UNITS_PER_EM, result, 0.0001f);
+    }
+
+    @Test
+    public void measureText_range() {
+        float result = measurer.measureText("bab", 1, 3, TEXT_SIZE);
+        assertEquals(1250 * TEXT_SIZE / UNITS_PER_EM, result, 0.0001f);
+    }
+
+    @Test
+    public void getTextWidths_surrogatePairIsOneGlyph() {
+        float[] widths = new float[4];
+        measurer.getTextWidths("a𑙠", 0, 4, TEXT_SIZE, widths);
+        float[] expected = {5, 10, 0, 20};
+        assertArrayEquals(expected, widths, 0.0001f);
+    }
+
+    @Test
+    public void breakText_countsCharsThatFit() {
+        String text = "a";
+        assertEquals(0, measurer.breakText(text, 0, 3, TEXT_SIZE, 19.9f));
+        assertEquals(1, measurer.breakText(text, 0, 3, TEXT_SIZE, 20));
+        assertEquals(2, measurer.breakText(text, 0, 3, TEXT_SIZE, 30));
+        assertEquals(3, measurer.breakText(text, 0, 3, TEXT_SIZE, 100));
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_rejectsOtherData() throws IOException {
+        GlyphAdvanceTable.parse(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6}));
+    }
+}
@@ -0,0 +1,107 @@
+package net.studymongolian.mongollibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MongolWordIteratorTest {
+
+    // ᠪᠢᠴᠢᠭ NNBS ᠤᠨ space ᠪᠠᠢᠨ MVS ᠠ space abc12 ,! emoji
+    private static final String TEXT = "ᠪᠢᠴᠢᠭ ᠤᠨ ᠪᠠᠢᠨ᠎ᠠ abc12 ,!😀";
+    private static final int[] BOUNDARIES = {0, 5, 8, 9, 15, 16, 21, 22, 23, 24, 26};
+
+    @Test
+    public void following_stepsThroughSegments() {
+        MongolWordIterator iterator = new MongolWordIterator(TEXT);
+        int offset = 0;
+        for (int i = 1; i < BOUNDARIES.length; i++) {
+            offset = iterator.following(offset);
+            assertEquals(BOUNDARIES[i], offset);
+        }
+        assertEquals(MongolWordIterator.DONE, iterator.following(offset));
+    }
+
+    @Test
+    public void preceding_stepsBackThroughSegments() {
+        MongolWordIterator iterator = new MongolWordIterator(TEXT);
+        int offset = TEXT.length();
+        for (int i = BOUNDARIES.length - 2; i >= 0; i--) {
+            offset = iterator.preceding(offset);
+            assertEquals(BOUNDARIES[i], offset);
+        }
+        assertEquals(MongolWordIterator.DONE, iterator.preceding(offset));
+    }
+
+    @Test
+    public void followingAndPreceding_fromInsideSegments() {
+        MongolWordIterator iterator = new MongolWordIterator(TEXT);
+        assertEquals(5, iterator.following(2));
+        assertEquals(0, iterator.preceding(2));
+        assertEquals(15, iterator.following(12)); // MVS is inside the word
+        assertEquals(9, iterator.preceding(14));
+        assertEquals(26, iterator.following(25)); // inside a surrogate pair
+    }
+
+    @Test
+    public void isBoundary() {
+        MongolWordIterator iterator = new MongolWordIterator(TEXT);
+        for (int offset = 0; offset <= TEXT.length(); offset++) {
+            boolean expected = false;
+            for (int boundary : BOUNDARIES) {
+                if (boundary == offset) expected = true;
+            }
+            assertEquals("offset " + offset, expected, iterator.isBoundary(offset));
+        }
+    }
+
+    @Test
+    public void getMongolWordStart_stopsAtNnbs() {
+        MongolWordIterator iterator = new MongolWordIterator(TEXT);
+        assertEquals(5, iterator.getMongolWordStart(8));
+        assertEquals(5, iterator.getMongolWordStart(6));
+        assertEquals(0, iterator.getMongolWordStart(5));
+        assertEquals(9, iterator.getMongolWordStart(9));
+        assertEquals(9, iterator.getMongolWordStart(15));
+    }
+
+    @Test
+    public void getMongolWordEnd_doesNotContinuePastNnbs() {
+        MongolWordIterator iterator = new MongolWordIterator(TEXT);
+        assertEquals(5, iterator.getMongolWordEnd(2));
+        assertEquals(5, iterator.getMongolWordEnd(5));
+        assertEquals(8, iterator.getMongolWordEnd(6));
+        assertEquals(15, iterator.getMongolWordEnd(13));
+        assertEquals(16, iterator.getMongolWordEnd(16));
+    }
+
+    @Test
+    public void isMongolWordAt() {
+        MongolWordIterator iterator = new MongolWordIterator(TEXT);
+        assertTrue(iterator.isMongolWordAt(0));
+        assertTrue(iterator.isMongolWordAt(5));
+        assertTrue(iterator.isMongolWordAt(13));
+        assertFalse(iterator.isMongolWordAt(8));
+        assertFalse(iterator.isMongolWordAt(16));
+    }
+
+    @Test
+    public void setText_range() {
+        MongolWordIterator iterator = new MongolWordIterator();
+        iterator.setText(TEXT, 2, 12);
+        assertEquals(5, iterator.following(2));
+        assertEquals(12, iterator.following(9));
+        assertEquals(2, iterator.preceding(5));
+        assertEquals(2, iterator.getMongolWordStart(4));
+        assertEquals(12, iterator.getMongolWordEnd(10));
+        assertTrue(iterator.isBoundary(12));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void following_outsideOfRange() {
+        MongolWordIterator iterator = new MongolWordIterator();
+        iterator.setText(TEXT, 2, 12);
+        iterator.following(13);
+    }
+}
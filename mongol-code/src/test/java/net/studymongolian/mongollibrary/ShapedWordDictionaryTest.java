@@ -0,0 +1,76 @@
+package net.studymongolian.mongollibrary;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShapedWordDictionaryTest {
+
+    private static final List<String> WORDS = Arrays.asList(
+            "ᠮᠣᠩᠭᠣᠯ", "ᠪᠢᠴᠢᠭ", "\u202Fᠤᠨ", "ᠰᠠᠢᠨ", "ᠪᠠᠢᠨ᠎ᠠ", "ᠤᠯᠠᠭᠠᠨᠪᠠᠭᠠᠲᠤᠷ",
+            "ᠭᠠᠵᠠᠷ", "ᠨᠣᠮ", "ᠦᠭᠡ", "ᠬᠥᠮᠥᠨ", "ᠰᠤᠷᠤᠭᠴᠢ", "ᠠᠪᠤ");
+
+    private static ShapedWordDictionary build(List<String> words) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ShapedWordDictionaryBuilder.write(words, out);
+        return ShapedWordDictionary.from(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    @Test
+    public void get_returnsRuleShapedGlyphs() throws IOException {
+        ShapedWordDictionary dictionary = build(WORDS);
+        assertEquals(WORDS.size(), dictionary.size());
+        MongolCode converter = MongolCode.INSTANCE;
+        for (String word : WORDS) {
+            char[] glyphs = new char[word.length()];
+            assertTrue(dictionary.get(word, 0, word.length(), glyphs, 0));
+            assertEquals(converter.unicodeToMenksoftSameIndex(word), new String(glyphs));
+        }
+    }
+
+    @Test
+    public void get_missingWord() throws IOException {
+        ShapedWordDictionary dictionary = build(WORDS);
+        String word = "ᠲᠡᠮᠡᠭᠡ";
+        assertFalse(dictionary.get(word, 0, word.length(), new char[word.length()], 0));
+    }
+
+    @Test
+    public void get_emptyDictionary() throws IOException {
+        ShapedWordDictionary dictionary = build(Collections.<String>emptyList());
+        assertEquals(0, dictionary.size());
+        assertFalse(dictionary.get("ᠨᠣᠮ", 0, 3, new char[3], 0));
+    }
+
+    @Test
+    public void unicodeToMenksoft_sameResultWithDictionary() throws IOException {
+        MongolCode converter = MongolCode.INSTANCE;
+        String unicode = "ᠮᠣᠩᠭᠣᠯ ᠪᠢᠴᠢᠭ ᠤᠨ ᠲᠡᠮᠡᠭᠡ abc ᠨᠣᠮ᠃";
+        String expected = converter.unicodeToMenksoft(unicode);
+        converter.setShapedWordDictionary(build(WORDS));
+        try {
+            assertEquals(expected, converter.unicodeToMenksoft(unicode));
+        } finally {
+            converter.setShapedWordDictionary(null);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void from_rejectsOtherData() {
+        ShapedWordDictionary.from(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void write_rejectsText() throws IOException {
+        ShapedWordDictionaryBuilder.write(Collections.singletonList("abc"), new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,128 @@
+package net.studymongolian.mongollibrary;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShapingRuleCompilerTest {
+
+    // every letter gets one glyph, except for the rules that are tested
+    private static String withOtherLetters(String rules) {
+        StringBuilder builder = new StringBuilder(rules);
+        for (String letter : ShapingRuleCompiler.LETTERS) {
+            if (Pattern.compile("(?m)^letter " + letter + "\\b").matcher(rules).find()) continue;
+            builder.append("letter ").append(letter).append('\n');
+            for (String location : ShapingRuleCompiler.LOCATIONS) {
+                builder.append(location).append(" -> ISOL_A\n");
+            }
+        }
+        return builder.toString();
+    }
+
+    private static ShapingRuleCompiler.RuleSet parse(String rules) throws IOException {
+        return ShapingRuleCompiler.parse("test.rules", new StringReader(withOtherLetters(rules)));
+    }
+
+    private static void assertParseError(String rules, String expectedMessage) throws IOException {
+        try {
+            parse(rules);
+            fail("expected an error: " + expectedMessage);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("test.rules:"));
+            assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+        }
+    }
+
+    @Test
+    public void parse_rulesInOrder() throws IOException {
+        ShapingRuleCompiler.RuleSet ruleSet = parse("" +
+                "class round = BA PA\n" +
+                "letter A masculine\n" +
+                "isolate -> ISOL_A\n" +
+                "initial -> INIT_A\n" +
+                "medial fvs1 -> MEDI_A_FVS1 stem\n" +
+                "medial prev=round !suffix -> MEDI_A_BP\n" +
+                "medial -> MEDI_A\n" +
+                "final -> FINA_A\n");
+        List<ShapingRuleCompiler.Rule> medial = ruleSet.getRules(0, 2);
+        assertEquals(3, medial.size());
+        assertEquals("MEDI_A_FVS1", medial.get(0).glyph);
+        assertEquals("SHAPE_STEM", medial.get(0).shape);
+        assertEquals("SHAPE_KEEP", medial.get(1).shape);
+        assertEquals(2, medial.get(1).atoms.size());
+        assertEquals("GENDER_MASCULINE", ruleSet.genders[0]);
+    }
+
+    @Test
+    public void specialize_dropsRulesThatCanNotMatch() throws IOException {
+        ShapingRuleCompiler.RuleSet ruleSet = parse("" +
+                "letter A\n" +
+                "isolate -> ISOL_A\n" +
+                "initial -> INIT_A\n" +
+                "medial fvs1 -> MEDI_A_FVS1\n" +
+                "medial below=round next=E -> MEDI_A_BP\n" +
+                "medial -> MEDI_A\n" +
+                "final -> FINA_A\n");
+        List<ShapingRuleCompiler.Rule> medial = ruleSet.getRules(0, 2);
+        // FVS1: the first rule always matches
+        assertEquals(medial.subList(0, 1), ruleSet.specialize(medial, 1, 0, false));
+        // no FVS, stem below: only the last rule is left
+        assertEquals(medial.subList(2, 3), ruleSet.specialize(medial, 0, 1, false));
+        // no FVS, round below: the next letter still has to be tested
+        assertEquals(medial.subList(1, 3), ruleSet.specialize(medial, 0, 2, false));
+    }
+
+    @Test
+    public void parse_missingLastRuleWithoutConditions() throws IOException {
+        assertParseError("" +
+                "letter A\n" +
+                "isolate -> ISOL_A\n" +
+                "initial -> INIT_A\n" +
+                "medial fvs1 -> MEDI_A_FVS1\n" +
+                "final -> FINA_A\n",
+                "the last medial rule of A must have no conditions");
+    }
+
+    @Test
+    public void parse_unreachableRule() throws IOException {
+        assertParseError("" +
+                "letter A\n" +
+                "isolate -> ISOL_A\n" +
+                "isolate fvs1 -> ISOL_A_FVS1\n",
+                "test.rules:3: this rule is never used");
+    }
+
+    @Test
+    public void parse_unknownCondition() throws IOException {
+        assertParseError("" +
+                "letter A\n" +
+                "isolate above=round -> ISOL_A\n",
+                "unknown condition above=round");
+    }
+
+    @Test
+    public void parse_unknownLetter() throws IOException {
+        assertParseError("class round = BA PA XA\n", "test.rules:1: unknown letter or class XA");
+    }
+
+    @Test
+    public void generate_unknownDefaultRuleSet() throws IOException {
+        List<ShapingRuleCompiler.RuleSet> ruleSets = Collections.singletonList(parse(""));
+        String source = ShapingRuleCompiler.generate(ruleSets, "test");
+        assertTrue(source.contains("static final ShapingRules DEFAULT = TEST;"));
+        try {
+            ShapingRuleCompiler.generate(ruleSets, "unicode9");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("no rule set named unicode9", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package net.studymongolian.mongollibrary;
+
+
+import android.content.Context;
+import android.text.Editable;
+import androidx.test.InstrumentationRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class MongolEditTextInstrumentedTest {
+
+    // counts the work that every change of the text does for the IME and scrolling
+    private static class CountingEditText extends MongolEditText {
+        int extractedTextReports;
+        int scrollPosts;
+
+        CountingEditText(Context context) {
+            super(context);
+        }
+
+        // only reporting the extracted text reads the whole text through getText()
+        @Override
+        public Editable getText() {
+            extractedTextReports++;
+            return super.getText();
+        }
+
+        @Override
+        public boolean post(Runnable action) {
+            scrollPosts++;
+            return super.post(action);
+        }
+    }
+
+    // batch edits
+
+    @Test
+    public void batchEdit_reportsExtractedTextOnceAtEnd() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                CountingEditText editText = new CountingEditText(context);
+                Editable text = editText.getText();
+                text.append("ᠮᠣᠩ ᠪᠢ");
+                editText.extractedTextReports = 0;
+                editText.scrollPosts = 0;
+
+                // like an IME that replaces a word
+                editText.beginBatchEdit();
+                text.delete(4, 6);
+                text.insert(4, "ᠭᠣᠯ");
+                editText.setSelection(text.length());
+                assertEquals(0, editText.extractedTextReports);
+                assertEquals(0, editText.scrollPosts);
+                editText.endBatchEdit();
+
+                assertEquals(1, editText.extractedTextReports);
+                assertEquals(1, editText.scrollPosts);
+            }
+        });
+    }
+
+    @Test
+    public void edit_reportsExtractedText() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                CountingEditText editText = new CountingEditText(context);
+                Editable text = editText.getText();
+                editText.extractedTextReports = 0;
+                editText.scrollPosts = 0;
+                text.append("ᠮᠣᠩ");
+                assertEquals(1, editText.extractedTextReports);
+                assertEquals(1, editText.scrollPosts);
+            }
+        });
+    }
+}
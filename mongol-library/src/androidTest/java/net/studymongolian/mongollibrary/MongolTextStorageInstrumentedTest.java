@@ -1,7 +1,13 @@
 package net.studymongolian.mongollibrary;
 
 
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.text.Editable;
+import android.text.InputFilter;
 import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.view.Gravity;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
 import org.junit.Test;
@@ -180,4 +186,190 @@ public class MongolTextStorageInstrumentedTest {
         CharSequence expected = new SpannableStringBuilder("a2c");
         assertEquals(expected, result);
     }
+
+    // batch edits
+
+    @Test
+    public void batchEdit_afterTextChangedOnceAtEnd() {
+        MongolTextStorage storage = new MongolTextStorage("abcdef");
+        final StringBuilder calls = new StringBuilder();
+        storage.setOnChangeListener(new MongolTextStorage.OnChangeListener() {
+            @Override
+            public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+                calls.append("before ");
+            }
+
+            @Override
+            public void onTextChanged(CharSequence text, int start, int before, int count) {
+                calls.append("on ").append(start).append(before).append(count).append(' ');
+            }
+
+            @Override
+            public void afterTextChanged(Editable editable) {
+                calls.append("after");
+            }
+
+            @Override
+            public void onSpanChanged(Spanned buf, Object what, int oldStart, int newStart, int oldEnd, int newEnd) {
+            }
+        });
+        storage.beginBatchEdit();
+        storage.replace(1, 2, "XY");
+        storage.delete(4, 5);
+        assertEquals("before on 112 before on 410 ", calls.toString());
+        storage.endBatchEdit();
+        assertEquals("aXYcef", storage.toString());
+        assertEquals("before on 112 before on 410 after", calls.toString());
+    }
+
+    @Test
+    public void batchEdit_layoutCanDrawBetweenEdits() {
+        // several lines long
+        final MongolTextStorage storage = new MongolTextStorage(
+                "\u182E\u1823\u1829 \u182A\u1822 \u182E\u1823\u1829 \u182A\u1822 \u182E\u1823\u1829");
+        final MongolLayout layout = new MongolLayout(storage.getGlyphText(), 0, storage.length(),
+                new TextPaintPlus(), 100, Gravity.TOP, 1, 0, false, Integer.MAX_VALUE);
+        // like MongolEditText, which lays out the glyph text again on every change
+        storage.setOnChangeListener(new MongolTextStorage.OnChangeListener() {
+            @Override
+            public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence text, int start, int before, int count) {
+                layout.setText(storage.getGlyphText());
+            }
+
+            @Override
+            public void afterTextChanged(Editable editable) {
+            }
+
+            @Override
+            public void onSpanChanged(Spanned buf, Object what, int oldStart, int newStart, int oldEnd, int newEnd) {
+            }
+        });
+        Canvas canvas = new Canvas(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888));
+        layout.draw(canvas);
+
+        storage.beginBatchEdit();
+        storage.insert(6, " \u182D\u1823\u182F");
+        layout.draw(canvas);
+        storage.delete(0, 20);
+        layout.draw(canvas);
+        assertEquals(storage.length(), layout.getLineEnd(layout.getLineCount() - 1));
+        assertTrue(layout.getLineStart(layout.getLineCount() - 1) <= storage.length());
+        storage.endBatchEdit();
+        layout.draw(canvas);
+
+        String expected = MongolCode.INSTANCE.unicodeToMenksoftSameIndex(storage.toString());
+        assertEquals(expected, layout.getText().toString());
+    }
+
+    @Test
+    public void batchEdit_rendersGlyphsAtEnd() {
+        MongolTextStorage storage = new MongolTextStorage("\u182E\u1823\u1829 \u182A\u1822");
+        storage.beginBatchEdit();
+        storage.insert(3, "\u182D\u1823\u182F");
+        storage.delete(0, 1);
+        storage.endBatchEdit();
+        String expected = MongolCode.INSTANCE.unicodeToMenksoftSameIndex(storage.toString());
+        assertEquals(expected, storage.getGlyphText().toString());
+    }
+
+    // lazy glyph rendering
+
+    @Test
+    public void lazyGlyphRendering_rendersOnlyDrawnLines() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append("\u182E\u1823\u1829\u182D\u1823\u182F ");
+        }
+        MongolTextStorage storage = new MongolTextStorage("");
+        storage.setLazyGlyphRendering(true);
+        storage.setText(builder);
+        GlyphText glyphs = (GlyphText) storage.getGlyphText();
+        MongolLayout layout = new MongolLayout(glyphs, 0, glyphs.length(),
+                new TextPaintPlus(), 100, Gravity.TOP, 1, 0, false, Integer.MAX_VALUE);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888));
+        // like MongolTextView, which passes the part of it that can be seen
+        layout.draw(canvas, 0, 100);
+        assertTrue(glyphs.isRendered(0));
+        assertFalse(glyphs.isRendered(glyphs.length() - 1));
+
+        // the rest of the lines are broken when they are needed
+        MongolTextStorage eagerStorage = new MongolTextStorage(builder);
+        MongolLayout eagerLayout = new MongolLayout(eagerStorage.getGlyphText(), 0, eagerStorage.length(),
+                new TextPaintPlus(), 100, Gravity.TOP, 1, 0, false, Integer.MAX_VALUE);
+        assertEquals(eagerLayout.getWidth(), layout.getWidth());
+        assertEquals(eagerLayout.getLineCount(), layout.getLineCount());
+        for (int i = 0; i < layout.getLineCount(); i++) {
+            assertEquals(eagerLayout.getLineStart(i), layout.getLineStart(i));
+        }
+        assertEquals(eagerStorage.getGlyphText().toString(), glyphs.toString());
+    }
+
+    @Test
+    public void lazyGlyphRendering_widthLimitBreaksOnlySomeLines() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append("\u182E\u1823\u1829\u182D\u1823\u182F ");
+        }
+        MongolTextStorage storage = new MongolTextStorage("");
+        storage.setLazyGlyphRendering(true);
+        storage.setText(builder);
+        GlyphText glyphs = (GlyphText) storage.getGlyphText();
+        MongolLayout layout = new MongolLayout(glyphs, 0, glyphs.length(),
+                new TextPaintPlus(), 100, Gravity.TOP, 1, 0, false, Integer.MAX_VALUE);
+        int limitedWidth = layout.getWidth(100);
+        assertTrue(limitedWidth >= 100);
+        assertFalse(glyphs.isRendered(glyphs.length() - 1));
+        assertTrue(layout.getWidth() > limitedWidth);
+    }
+
+    // precomputed text
+
+    @Test
+    public void setPrecomputedText_keepsFilters() {
+        MongolTextStorage storage = new MongolTextStorage("");
+        storage.append("a");
+        InputFilter[] filters = new InputFilter[]{new InputFilter.LengthFilter(3)};
+        storage.setFilters(filters);
+        MongolPrecomputedText.Params params =
+                new MongolPrecomputedText.Params.Builder(new TextPaintPlus()).build();
+        storage.setText(MongolPrecomputedText.create("abcdef", params));
+        assertEquals("abc", storage.toString());
+        assertArrayEquals(filters, storage.getFilters());
+        storage.append("g");
+        assertEquals("abc", storage.toString());
+    }
+
+    @Test
+    public void setPrecomputedText_clearsSpans() {
+        MongolTextStorage storage = new MongolTextStorage("abc");
+        storage.setSpan(new Object(), 0, 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        final StringBuilder calls = new StringBuilder();
+        storage.setOnChangeListener(new MongolTextStorage.OnChangeListener() {
+            @Override
+            public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence text, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable editable) {
+            }
+
+            @Override
+            public void onSpanChanged(Spanned buf, Object what, int oldStart, int newStart, int oldEnd, int newEnd) {
+                calls.append("span ");
+            }
+        });
+        MongolPrecomputedText.Params params =
+                new MongolPrecomputedText.Params.Builder(new TextPaintPlus()).build();
+        storage.setText(MongolPrecomputedText.create("def", params));
+        assertEquals("span ", calls.toString());
+        assertEquals("def", storage.toString());
+    }
 }
@@ -0,0 +1,138 @@
+package net.studymongolian.mongollibrary;
+
+
+import android.content.Context;
+import android.os.Looper;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.TextPaint;
+import android.text.style.MetricAffectingSpan;
+import android.view.View;
+import androidx.test.InstrumentationRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class MongolTextViewInstrumentedTest {
+
+    private static class RecordingExecutor implements Executor {
+        final List<Runnable> commands = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            commands.add(command);
+        }
+    }
+
+    // runs what is posted when the test says so, even though it isn't attached
+    private static class PostingTextView extends MongolTextView {
+        final List<Runnable> posted = new ArrayList<>();
+
+        PostingTextView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public boolean post(Runnable action) {
+            posted.add(action);
+            return true;
+        }
+    }
+
+    // makes measuring fail on any thread but the main thread
+    private static class MainThreadOnlySpan extends MetricAffectingSpan {
+        @Override
+        public void updateMeasureState(TextPaint textPaint) {
+            checkThread();
+        }
+
+        @Override
+        public void updateDrawState(TextPaint textPaint) {
+            checkThread();
+        }
+
+        private static void checkThread() {
+            if (Looper.myLooper() != Looper.getMainLooper())
+                throw new IllegalStateException("not on the main thread");
+        }
+    }
+
+    // setTextAsync
+
+    @Test
+    public void setTextAsync_wrapContentEmptyText_startsWork() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final RecordingExecutor executor = new RecordingExecutor();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                MongolTextView textView = new MongolTextView(context);
+                // wrap_content height with empty text in a parent that gives it no room
+                int widthSpec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.AT_MOST);
+                int heightSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.AT_MOST);
+                textView.measure(widthSpec, heightSpec);
+                textView.layout(0, 0, textView.getMeasuredWidth(), textView.getMeasuredHeight());
+                assertEquals(0, textView.getHeight());
+
+                textView.setTextAsync("ᠪᠢᠴᠢᠭ", executor);
+            }
+        });
+        assertEquals(1, executor.commands.size());
+        executor.commands.get(0).run();
+    }
+
+    @Test
+    public void setTextAsync_neverMeasured_startsWork() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final RecordingExecutor executor = new RecordingExecutor();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                MongolTextView textView = new MongolTextView(context);
+                textView.setVisibility(View.GONE);
+                textView.setTextAsync("ᠪᠢᠴᠢᠭ", executor);
+            }
+        });
+        assertEquals(1, executor.commands.size());
+    }
+
+    @Test
+    public void setTextAsync_workFails_setsTextOnMainThread() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final RecordingExecutor executor = new RecordingExecutor();
+        final PostingTextView[] textView = new PostingTextView[1];
+        final SpannableString text = new SpannableString("ᠪᠢᠴᠢᠭ");
+        text.setSpan(new MainThreadOnlySpan(), 0, text.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                textView[0] = new PostingTextView(context);
+                int spec = View.MeasureSpec.makeMeasureSpec(500, View.MeasureSpec.EXACTLY);
+                textView[0].measure(spec, spec);
+                textView[0].layout(0, 0, 500, 500);
+                textView[0].setTextAsync(text, executor);
+            }
+        });
+
+        // the work runs on this test thread, where measuring the span throws
+        assertEquals(1, executor.commands.size());
+        executor.commands.get(0).run();
+        assertEquals(1, textView[0].posted.size());
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                textView[0].posted.get(0).run();
+                assertEquals(text.toString(), textView[0].getText().toString());
+            }
+        });
+    }
+}
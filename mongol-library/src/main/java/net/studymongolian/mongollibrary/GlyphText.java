@@ -0,0 +1,208 @@
+package net.studymongolian.mongollibrary;
+
+import androidx.annotation.NonNull;
+import android.text.GetChars;
+import android.text.Spanned;
+
+import java.lang.reflect.Array;
+import java.nio.CharBuffer;
+
+// The glyph text of a MongolTextStorage.
+//
+// It has one glyph for every Unicode char, so both have the same indexes.
+// That is why there is only one set of spans: the spans are read from the
+// Unicode text, and edits and span changes don't have to be copied here.
+//
+// The ranges that are rendered are kept in an interval set. An edit copies
+// the new Unicode chars and takes the words around it out of the set. They
+// are rendered again right away, or during a batch edit when the glyph text
+// there is read (usually by MongolLayout and MongolTextLine) or at the end
+// of the batch. In lazy mode nothing is rendered until it is read, so only
+// the text that MongolLayout breaks into lines and draws is ever rendered.
+//
+// Reading changes this object in lazy mode and during a batch edit, so it may
+// only be used on one thread.
+final class GlyphText implements Spanned, GetChars {
+
+    private static final int GLYPH_BUFFER_LENGTH = 1024;
+    // in lazy mode reading char by char renders at least this many chars at once
+    private static final int MIN_RENDER_LENGTH = 512;
+
+    private final Spanned mUnicodeText;
+    private final MongolCode mRenderer;
+    private PieceTable mChars; // the Unicode chars where they aren't rendered
+    private final IntervalSet mRendered = new IntervalSet();
+    private boolean mIsLazy;
+    private boolean mIsDeferred;
+    // Words are rendered into this buffer, and the wrapper passes it to the
+    // piece table without a copy. Longer ranges, like the whole text when it
+    // is set, get their own array so that a large one isn't kept.
+    private final char[] mGlyphBuffer = new char[GLYPH_BUFFER_LENGTH];
+    private final CharBuffer mGlyphBufferWrapper = CharBuffer.wrap(mGlyphBuffer);
+
+    /**
+     * @param unicodeText the Unicode text, which this follows as it is edited
+     */
+    GlyphText(Spanned unicodeText, MongolCode renderer) {
+        mUnicodeText = unicodeText;
+        mRenderer = renderer;
+        setText(unicodeText, false);
+    }
+
+    /**
+     * @param text       the glyphs, or the Unicode chars if they aren't rendered
+     * @param isRendered whether text is already rendered
+     */
+    void setText(CharSequence text, boolean isRendered) {
+        mChars = new PieceTable(text, 0, text.length());
+        mRendered.clear();
+        if (isRendered) {
+            mRendered.add(0, text.length());
+        } else if (!mIsLazy && !mIsDeferred) {
+            render(0, text.length());
+        }
+    }
+
+    /**
+     * Leaving lazy mode renders everything that isn't rendered yet.
+     */
+    void setLazy(boolean isLazy) {
+        mIsLazy = isLazy;
+        if (!isLazy && !mIsDeferred) render(0, length());
+    }
+
+    /**
+     * While rendering is deferred, the words that edits change are only
+     * rendered when they are read. When it ends, the rest of them are
+     * rendered at once, unless in lazy mode.
+     */
+    void setDeferRendering(boolean isDeferred) {
+        mIsDeferred = isDeferred;
+        if (!isDeferred && !mIsLazy) render(0, length());
+    }
+
+    /**
+     * Follows an edit of the Unicode text that replaced [start, end) with
+     * newLength chars. The Unicode text has to be changed already.
+     */
+    void replace(int start, int end, int newLength) {
+        mChars.replace(start, end, mUnicodeText, start, start + newLength);
+        mRendered.replace(start, end, newLength);
+        // the forms of the letters can change anywhere in the words around the edit
+        int wordStart = MongolWordIterator.getMongolWordStart(mUnicodeText, 0, start);
+        int wordEnd = MongolWordIterator.getMongolWordEnd(
+                mUnicodeText, start + newLength, mUnicodeText.length());
+        mRendered.remove(wordStart, wordEnd);
+        if (!mIsLazy && !mIsDeferred) renderWords(wordStart, wordEnd);
+    }
+
+    Spanned getUnicodeText() {
+        return mUnicodeText;
+    }
+
+    boolean isRendered(int index) {
+        return mRendered.contains(index);
+    }
+
+    private void render(int start, int end) {
+        if (mIsLazy) end = Math.min(length(), Math.max(end, start + MIN_RENDER_LENGTH));
+        int gapStart = mRendered.nextMissing(start, end);
+        while (gapStart < end) {
+            int gapEnd = mRendered.nextContained(gapStart, end);
+            int wordStart = MongolWordIterator.getMongolWordStart(mUnicodeText, 0, gapStart);
+            int wordEnd = MongolWordIterator.getMongolWordEnd(
+                    mUnicodeText, gapEnd, mUnicodeText.length());
+            renderWords(wordStart, wordEnd);
+            gapStart = mRendered.nextMissing(wordEnd, end);
+        }
+    }
+
+    private void renderWords(int start, int end) {
+        int length = end - start;
+        char[] glyphs = mGlyphBuffer;
+        CharBuffer glyphsWrapper = mGlyphBufferWrapper;
+        if (length > glyphs.length) {
+            glyphs = new char[length];
+            glyphsWrapper = CharBuffer.wrap(glyphs);
+        }
+        mRenderer.unicodeToMenksoftSameIndex(mUnicodeText, start, end, glyphs, 0);
+        // only replace the glyphs that changed, which is often just a few
+        // letters of a word and nothing for text that isn't Mongolian
+        int prefix = 0;
+        while (prefix < length && glyphs[prefix] == mChars.charAt(start + prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < length - prefix
+                && glyphs[length - 1 - suffix] == mChars.charAt(end - 1 - suffix)) {
+            suffix++;
+        }
+        if (prefix < length) {
+            mChars.replace(start + prefix, end - suffix, glyphsWrapper, prefix, length - suffix);
+        }
+        mRendered.add(start, end);
+    }
+
+    @Override
+    public int length() {
+        return mChars.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= 0 && !mRendered.contains(index)) render(index, index + 1);
+        return mChars.charAt(index);
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dest, int destoff) {
+        if (start >= 0 && start < end) render(start, end);
+        mChars.getChars(start, end, dest, destoff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start >= 0 && start < end) render(start, end);
+        char[] chars = new char[end - start];
+        mChars.getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    @NonNull
+    public String toString() {
+        render(0, length());
+        return mChars.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T[] getSpans(int start, int end, Class<T> type) {
+        T[] spans = mUnicodeText.getSpans(start, end, type);
+        // MongolTextStorage has none when its text isn't Spanned
+        if (spans == null) return (T[]) Array.newInstance(type, 0);
+        return spans;
+    }
+
+    @Override
+    public int getSpanStart(Object tag) {
+        return mUnicodeText.getSpanStart(tag);
+    }
+
+    @Override
+    public int getSpanEnd(Object tag) {
+        return mUnicodeText.getSpanEnd(tag);
+    }
+
+    @Override
+    public int getSpanFlags(Object tag) {
+        return mUnicodeText.getSpanFlags(tag);
+    }
+
+    @Override
+    public int nextSpanTransition(int start, int limit, Class type) {
+        int transition = mUnicodeText.nextSpanTransition(start, limit, type);
+        // see getSpans()
+        return (transition <= start) ? limit : transition;
+    }
+}
@@ -18,7 +18,6 @@ import android.view.inputmethod.InputConnection;
 import androidx.core.content.ContextCompat;
 import androidx.core.graphics.ColorUtils;
 
-import java.text.BreakIterator;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -63,6 +62,7 @@ public class ImeContainer extends ViewGroup
     private InputConnection mInputConnection;
     private PopupKeyCandidate mShowSystemKeyboardsOption;
     private Paint mBackgroundPaint;
+    private final MongolWordIterator mWordIterator = new MongolWordIterator();
 
     public ImeContainer(Context context) {
         super(context, null, 0);
@@ -705,6 +705,7 @@ public class ImeContainer extends ViewGroup
         return words;
     }
 
+    // a space or NNBS right after a Mongolian letter
     private boolean isQualifiedSpaceAt(CharSequence text, int index) {
         int length = text.length();
         if (index < 0 || index >= length) return false;
@@ -715,19 +716,8 @@ public class ImeContainer extends ViewGroup
     }
 
     private int getStartIndex(int endIndex, CharSequence previous) {
-        int startIndex = endIndex;
-        for (int i = endIndex - 1; i >= 0; i--) {
-            char previousChar = previous.charAt(i);
-            if (MongolCode.isMongolian(previousChar)) {
-                startIndex = i;
-            } else if (previousChar == MongolCode.Uni.NNBS) {
-                startIndex = i;
-                break;
-            } else {
-                break;
-            }
-        }
-        return startIndex;
+        mWordIterator.setText(previous);
+        return mWordIterator.getMongolWordStart(endIndex);
     }
 
     /**
@@ -1255,10 +1245,9 @@ public class ImeContainer extends ViewGroup
     }
 
     private int getPreviousWordBoundary(CharSequence text, int selectionStart) {
-        BreakIterator boundary = BreakIterator.getWordInstance();
-        boundary.setText(text.toString());
-        int preceding = boundary.preceding(selectionStart);
-        return (preceding == BreakIterator.DONE) ? selectionStart : preceding;
+        mWordIterator.setText(text);
+        int preceding = mWordIterator.preceding(selectionStart);
+        return (preceding == MongolWordIterator.DONE) ? selectionStart : preceding;
     }
 
     @Override
@@ -1273,10 +1262,9 @@ public class ImeContainer extends ViewGroup
     }
 
     private int getNextWordBoundary(CharSequence text, int selectionEnd) {
-        BreakIterator boundary = BreakIterator.getWordInstance();
-        boundary.setText(text.toString());
-        int next = boundary.following(selectionEnd);
-        return (next == BreakIterator.DONE) ? selectionEnd : next;
+        mWordIterator.setText(text);
+        int next = mWordIterator.following(selectionEnd);
+        return (next == MongolWordIterator.DONE) ? selectionEnd : next;
     }
 
     @Override
@@ -0,0 +1,143 @@
+package net.studymongolian.mongollibrary;
+
+// A set of text positions kept as sorted ranges [start, end) that neither
+// overlap nor touch. Finding a position is a binary search. Adding, removing
+// and shifting the ranges after an edit moves the ranges after it in the
+// arrays, which is cheap because there are usually only a few of them.
+final class IntervalSet {
+
+    private int[] mStarts = new int[8];
+    private int[] mEnds = new int[8];
+    private int mCount;
+
+    int getRangeCount() {
+        return mCount;
+    }
+
+    void clear() {
+        mCount = 0;
+    }
+
+    boolean contains(int position) {
+        int i = firstGreater(mEnds, position);
+        return i < mCount && mStarts[i] <= position;
+    }
+
+    /**
+     * @return the first position in [start, limit) that is not in the set, or
+     * limit if there is none
+     */
+    int nextMissing(int start, int limit) {
+        int i = firstGreater(mEnds, start);
+        if (i < mCount && mStarts[i] <= start) return Math.min(mEnds[i], limit);
+        return Math.min(start, limit);
+    }
+
+    /**
+     * @return the first position in [start, limit) that is in the set, or
+     * limit if there is none
+     */
+    int nextContained(int start, int limit) {
+        int i = firstGreater(mEnds, start);
+        if (i == mCount) return limit;
+        return Math.min(Math.max(mStarts[i], start), limit);
+    }
+
+    void add(int start, int end) {
+        if (start >= end) return;
+        // the ranges that overlap or touch [start, end) become one
+        int i = firstGreater(mEnds, start - 1);
+        int j = firstGreater(mStarts, end);
+        if (i < j) {
+            start = Math.min(start, mStarts[i]);
+            end = Math.max(end, mEnds[j - 1]);
+        }
+        splice(i, j, 1);
+        mStarts[i] = start;
+        mEnds[i] = end;
+    }
+
+    void remove(int start, int end) {
+        if (start >= end) return;
+        int i = firstGreater(mEnds, start);
+        int j = firstGreater(mStarts, end - 1);
+        if (i >= j) return;
+        int leftStart = mStarts[i];
+        int rightEnd = mEnds[j - 1];
+        boolean keepLeft = leftStart < start;
+        boolean keepRight = rightEnd > end;
+        splice(i, j, (keepLeft ? 1 : 0) + (keepRight ? 1 : 0));
+        if (keepLeft) {
+            mStarts[i] = leftStart;
+            mEnds[i] = start;
+            i++;
+        }
+        if (keepRight) {
+            mStarts[i] = end;
+            mEnds[i] = rightEnd;
+        }
+    }
+
+    /**
+     * Moves the ranges for text [start, end) that is replaced by newLength
+     * chars. The new chars are not in the set.
+     */
+    void replace(int start, int end, int newLength) {
+        remove(start, end);
+        int shift = newLength - (end - start);
+        if (shift == 0) return;
+        // a range around an insertion point is cut in two
+        int i = firstGreater(mEnds, start);
+        if (i < mCount && mStarts[i] < start) {
+            splice(i + 1, i + 1, 1);
+            mStarts[i + 1] = start;
+            mEnds[i + 1] = mEnds[i];
+            mEnds[i] = start;
+        }
+        i = firstGreater(mStarts, end - 1);
+        for (int k = i; k < mCount; k++) {
+            mStarts[k] += shift;
+            mEnds[k] += shift;
+        }
+        // when text is deleted the ranges before and after it can touch
+        if (i > 0 && i < mCount && mEnds[i - 1] == mStarts[i]) {
+            mEnds[i - 1] = mEnds[i];
+            splice(i, i + 1, 0);
+        }
+    }
+
+    // the index of the first of the values that is greater than value
+    private int firstGreater(int[] values, int value) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] > value) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    // makes room for newCount ranges in place of the ranges [i, j)
+    private void splice(int i, int j, int newCount) {
+        int count = mCount - (j - i) + newCount;
+        if (count > mStarts.length) {
+            int capacity = Math.max(count, mStarts.length * 2);
+            int[] starts = new int[capacity];
+            int[] ends = new int[capacity];
+            System.arraycopy(mStarts, 0, starts, 0, i);
+            System.arraycopy(mEnds, 0, ends, 0, i);
+            System.arraycopy(mStarts, j, starts, i + newCount, mCount - j);
+            System.arraycopy(mEnds, j, ends, i + newCount, mCount - j);
+            mStarts = starts;
+            mEnds = ends;
+        } else {
+            System.arraycopy(mStarts, j, mStarts, i + newCount, mCount - j);
+            System.arraycopy(mEnds, j, mEnds, i + newCount, mCount - j);
+        }
+        mCount = count;
+    }
+}
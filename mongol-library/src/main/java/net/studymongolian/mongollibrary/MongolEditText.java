@@ -66,6 +66,7 @@ public class MongolEditText extends MongolTextView {
     private static final int CURSOR_DEFAULT_COLOR = Color.parseColor("#4ac3ff"); // blue
     private Path mCursorPath;
     private GestureDetector mDetector;
+    private final MongolWordIterator mWordIterator = new MongolWordIterator();
     int mBatchEditNesting = 0;
     private ArrayList<TextWatcher> mListeners;
     private boolean mAllowSystemKeyboard = true;
@@ -147,16 +148,14 @@ public class MongolEditText extends MongolTextView {
             public void onTextChanged(CharSequence text, int start, int before, int count) {
                 // TODO just update the layout from the start position rather than everything
                 MongolEditText.super.mLayout.setText(mTextStorage.getGlyphText());
-                reportExtractedText();
                 invalidate();
                 requestLayout();
 
-                post(new Runnable() {
-                    @Override
-                    public void run() {
-                        scrollToCursorPositionIfNeeded();
-                    }
-                });
+                // a batch edit reports the text and scrolls once when it ends
+                if (mBatchEditNesting <= 0) {
+                    reportExtractedText();
+                    postScrollToCursorPosition();
+                }
 
                 // notify any listeners the user may have added
                 if (mListeners != null && mListeners.size() > 0) {
@@ -190,8 +189,11 @@ public class MongolEditText extends MongolTextView {
 
                 if (isNonIntermediateSelectionSpan(buf, what)) {
                     sendUpdateSelection();
-                    reportExtractedText();
-                    scrollToCursorPositionIfNeeded();
+                    // a batch edit reports the text and scrolls once when it ends
+                    if (mBatchEditNesting <= 0) {
+                        reportExtractedText();
+                        scrollToCursorPositionIfNeeded();
+                    }
                 }
             }
         });
@@ -245,6 +247,15 @@ public class MongolEditText extends MongolTextView {
         mDetector = new GestureDetector(getContext(), new MyListener());
     }
 
+    private void postScrollToCursorPosition() {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                scrollToCursorPositionIfNeeded();
+            }
+        });
+    }
+
     private void scrollToCursorPositionIfNeeded() {
         ViewParent parent = getParent();
         if (!(parent instanceof HorizontalScrollView)) return;
@@ -687,8 +698,8 @@ public class MongolEditText extends MongolTextView {
             int offset = getOffsetForPosition(x, y);
 
             // select word
-            BreakIterator iterator = BreakIterator.getWordInstance();
-            iterator.setText(getText().toString());
+            MongolWordIterator iterator = mWordIterator;
+            iterator.setText(mTextStorage);
 
             // start and end are the word boundaries;
             int start;
@@ -700,10 +711,10 @@ public class MongolEditText extends MongolTextView {
             int end = iterator.following(offset);
 
             // handle tapping at the very beginning or end.
-            if (end == BreakIterator.DONE) {
+            if (end == MongolWordIterator.DONE) {
                 end = start;
                 start = iterator.preceding(offset);
-                if (start == BreakIterator.DONE) start = end;
+                if (start == MongolWordIterator.DONE) start = end;
             }
 
             setSelection(start, end);
@@ -1209,12 +1220,18 @@ public class MongolEditText extends MongolTextView {
 
     public boolean beginBatchEdit() {
         int nesting = ++mBatchEditNesting;
+        if (nesting == 1) {
+            // the glyphs that the edits change are rendered when they are read
+            // or once when the batch ends
+            mTextStorage.beginBatchEdit();
+        }
         return nesting > 0; // should always be true
     }
 
     public boolean endBatchEdit() {
         int nesting = --mBatchEditNesting;
         if (nesting == 0) {
+            mTextStorage.endBatchEdit();
             finishBatchEdit();
         }
         return nesting > 0;
@@ -1223,6 +1240,7 @@ public class MongolEditText extends MongolTextView {
     void ensureEndedBatchEdit() {
         if (mBatchEditNesting != 0) {
             mBatchEditNesting = 0;
+            mTextStorage.endBatchEdit();
             finishBatchEdit();
         }
     }
@@ -1230,6 +1248,8 @@ public class MongolEditText extends MongolTextView {
     void finishBatchEdit() {
         sendUpdateSelection();
         reportExtractedText();
+        // after the layout has been widened for the new text
+        postScrollToCursorPosition();
     }
 
     private void sendUpdateSelection() {
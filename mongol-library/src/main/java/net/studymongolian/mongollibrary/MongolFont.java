@@ -4,6 +4,8 @@ package net.studymongolian.mongollibrary;
 import android.content.Context;
 import android.graphics.Typeface;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Hashtable;
 
 // This class is used to cache fonts to avoid memory leaks.
@@ -27,6 +29,7 @@ public class MongolFont {
     //public static final String JCLGQ = "fonts/MenksoftJclgq.ttf";           // Computer
 
     private static Hashtable<String, Typeface> fontCache = new Hashtable<>();
+    private static Hashtable<String, GlyphAdvanceTable> advanceCache = new Hashtable<>();
 
     public static Typeface get(String name, Context context) {
         if (name == null) return null;
@@ -46,4 +49,34 @@ public class MongolFont {
         }
         return tf;
     }
-}
\ No newline at end of file
+
+    // The glyph advances of the same font that get() returns, for measuring
+    // with MongolTextMeasurer. Can be called from any thread.
+    public static GlyphAdvanceTable getAdvanceTable(String name, Context context) {
+        if (name == null) return null;
+        GlyphAdvanceTable table = advanceCache.get(name);
+        if (table == null) {
+            try {
+                table = readAdvanceTable(name, context);
+            } catch (IOException e) {
+                try {
+                    table = readAdvanceTable(QAGAN, context);
+                } catch (IOException err) {
+                    return null;
+                }
+            }
+            advanceCache.put(name, table);
+        }
+        return table;
+    }
+
+    private static GlyphAdvanceTable readAdvanceTable(String name, Context context)
+            throws IOException {
+        InputStream in = context.getAssets().open(name);
+        try {
+            return GlyphAdvanceTable.read(in);
+        } finally {
+            in.close();
+        }
+    }
+}
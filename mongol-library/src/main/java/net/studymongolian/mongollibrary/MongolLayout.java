@@ -8,8 +8,10 @@ import android.text.TextUtils;
 import android.view.Gravity;
 
 import java.text.BreakIterator;
+import java.text.CharacterIterator;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Future;
 
 // lines use width/height in horizontal orientation
 // layout uses width/height in vertical orientation
@@ -25,6 +27,9 @@ public class MongolLayout {
     private float mSpacingAdd;
     private List<LineInfo> mLinesInfo; // = new ArrayList<>();
     private boolean needsLineUpdate;
+    private LineBreaker mLineBreaker; // null when every line is broken
+    private MongolTextLine[] mMeasuredLines; // only for lines measured ahead of time
+    private Rect mDesiredSize; // only for lines measured ahead of time
     private static final double EXTRA_ROUNDING = 0.5;
 
     private static final char CHAR_SPACE = ' ';
@@ -109,24 +114,31 @@ public class MongolLayout {
      * @param canvas the canvas to draw the layout on
      */
     public void draw(Canvas canvas) {
-        if (mHeight <= 0) return;
-
-        if (needsLineUpdate) updateLines();
+        drawText(canvas);
+    }
 
-        // TODO for now draw all the lines. Should we only draw the visible lines?
-        // (see Layout source code)
-        int lastLine = mLinesInfo.size() - 1;
-        if (lastLine < 0) return;
+    /**
+     * Draws only the lines that reach into [left, right). The lines past right
+     * don't have to be broken yet.
+     *
+     * @param canvas the canvas to draw the layout on
+     * @param left   the left of the part that can be seen, in layout coordinates
+     * @param right  the right of the part that can be seen, in layout coordinates
+     */
+    public void draw(Canvas canvas, int left, int right) {
+        drawText(canvas, left, right);
+    }
 
-        drawText(canvas);
+    public void drawText(Canvas canvas) {
+        drawText(canvas, Integer.MIN_VALUE, Integer.MAX_VALUE);
     }
 
     @SuppressWarnings("SuspiciousNameCombination")
-    public void drawText(Canvas canvas) {
+    public void drawText(Canvas canvas, int left, int right) {
 
         if (mHeight <= 0) return;
 
-        if (needsLineUpdate) updateLines();
+        updateLines(right, null);
 
         float metricsBottom = mTextPaint.getFontMetricsInt().bottom;
 
@@ -138,10 +150,19 @@ public class MongolLayout {
 
         // draw the lines one at a time
         int lastLine = mLinesInfo.size() - 1;
+        // the end of the last line isn't known until the next one is broken
+        if (mLineBreaker != null) lastLine--;
         for (int i = 0; i <= lastLine; i++) {
+            int lineLeft = (i > 0) ? mLinesInfo.get(i - 1).top : 0;
+            if (lineLeft >= right) break;
+            if (mLinesInfo.get(i).top < left) {
+                x += mLinesInfo.get(i).top - lineLeft;
+                continue;
+            }
+
             int start = mLinesInfo.get(i).startOffset;
             int end;
-            if (i < lastLine) {
+            if (i + 1 < mLinesInfo.size()) {
                 end = mLinesInfo.get(i + 1).startOffset;
             } else {
                 end = mText.length();
@@ -159,7 +180,14 @@ public class MongolLayout {
                 if (gravityOffset < 0) gravityOffset = 0;
             }
 
-            tl.set(mTextPaint, mText, start, end);
+            MongolTextLine line;
+            if (mMeasuredLines != null) {
+                line = mMeasuredLines[i];
+                line.attach(mTextPaint, mText);
+            } else {
+                line = tl;
+                line.set(mTextPaint, mText, start, end);
+            }
             int lineHeight;
             if (i > 0) {
                 lineHeight = mLinesInfo.get(i).top - mLinesInfo.get(i - 1).top;
@@ -168,7 +196,7 @@ public class MongolLayout {
             }
             int extraSpacing = (int) (mLinesInfo.get(i).extraSpacing);
             float metricsTop = metricsBottom - lineHeight + extraSpacing;
-            tl.draw(canvas, x, metricsTop, y + gravityOffset, metricsBottom);
+            line.draw(canvas, x, metricsTop, y + gravityOffset, metricsBottom);
 
             x += lineHeight;
         }
@@ -176,11 +204,30 @@ public class MongolLayout {
         MongolTextLine.recycle(tl);
     }
 
-    // TODO refactor this method. It's messy and hard to read.
-    @SuppressWarnings("SuspiciousNameCombination")
     private void updateLines() {
+        updateLines(Integer.MAX_VALUE, null);
+    }
+
+    // Lines are only broken as far as they are needed, so that text that is
+    // never drawn or measured doesn't have to be read (or rendered). This
+    // breaks them until every line that reaches into [0, maxTop) is complete,
+    // and the next call goes on from there.
+    // Stops early and goes on from there next time if task is cancelled.
+    private void updateLines(int maxTop, Future<?> task) {
+        if (needsLineUpdate) startLines();
+        if (mLineBreaker != null) breakLines(maxTop, task);
+    }
+
+    // finishes the lines if they were started, so that the line getters don't
+    // see only some of them
+    private void finishLines() {
+        if (!needsLineUpdate && mLineBreaker != null) breakLines(Integer.MAX_VALUE, null);
+    }
 
+    private void startLines() {
         needsLineUpdate = false;
+        mMeasuredLines = null;
+        mLineBreaker = null;
 
         if (mLinesInfo == null || mLinesInfo.size() > 0)
             mLinesInfo = new ArrayList<>();
@@ -191,20 +238,54 @@ public class MongolLayout {
             return;
         }
 
-        // XXX can we just use a char sequence? BreakIterator is the only thing that needs a String.
-
+        // The glyph text has the same indexes as its Unicode text, so the breaks
+        // are found in the Unicode text, which never has to be rendered. Before
+        // API 24 setText() copies all of it to a String, which is still much
+        // faster than rendering it. Later only the part that is broken into
+        // lines is read.
+        CharSequence breakText = (mText instanceof GlyphText)
+                ? ((GlyphText) mText).getUnicodeText() : mText;
         BreakIterator boundary = BreakIterator.getLineInstance();
-        boundary.setText(mText.toString());
+        boundary.setText(new CharSequenceIterator(breakText));
+        LineBreaker breaker = new LineBreaker();
+        breaker.boundary = boundary;
+        breaker.start = boundary.first();
+        breaker.lineStart = breaker.start;
+        breaker.end = boundary.next();
+        mLineBreaker = breaker;
+    }
+
+    // TODO refactor this method. It's messy and hard to read.
+    @SuppressWarnings("SuspiciousNameCombination")
+    private void breakLines(int maxTop, Future<?> task) {
+
+        LineBreaker breaker = mLineBreaker;
+        BreakIterator boundary = breaker.boundary;
         float extraSpacing;
-        int start = boundary.first();
-        int lineStart = start;
-        float measuredSum = 0;
+        int start = breaker.start;
+        int lineStart = breaker.lineStart;
+        float measuredSum = breaker.measuredSum;
         RectF measuredSize;
-        int top = 0; // cumulative sum of line heights
-        float lineHeightMax = 0;
+        int top = breaker.top; // cumulative sum of line heights
+        float lineHeightMax = breaker.lineHeightMax;
         boolean hadToSplitWord = false;
         MongolTextLine tl = MongolTextLine.obtain();
-        for (int end = boundary.next(); end != BreakIterator.DONE; ) {
+        for (int end = breaker.end; end != BreakIterator.DONE; ) {
+
+            // the line before the last one ends past maxTop, so every line
+            // before maxTop is complete
+            int lineCount = mLinesInfo.size();
+            boolean isFarEnough = lineCount > 1 && mLinesInfo.get(lineCount - 2).top >= maxTop;
+            if (isFarEnough || (task != null && task.isCancelled())) {
+                breaker.start = start;
+                breaker.end = end;
+                breaker.lineStart = lineStart;
+                breaker.measuredSum = measuredSum;
+                breaker.top = top;
+                breaker.lineHeightMax = lineHeightMax;
+                MongolTextLine.recycle(tl);
+                return;
+            }
 
             boolean forceNewLine = false;
             if (mText.charAt(end - 1) == '\n') {
@@ -303,6 +384,61 @@ public class MongolLayout {
             top += lineHeightMax;
             mLinesInfo.add(new LineInfo(lineStart, top, measuredSum, 0));
         }
+        MongolTextLine.recycle(tl);
+        mLineBreaker = null;
+    }
+
+    /**
+     * Breaks the text into lines and measures the runs of every line now, so
+     * that drawing doesn't have to measure anything. This may be called on a
+     * background thread as long as nothing else is using this layout or its paint.
+     *
+     * @param task the background work that this is done for, or null. If it is
+     *             cancelled this stops as soon as it can.
+     * @return false if this stopped because task was cancelled
+     */
+    boolean measureLines(Future<?> task) {
+        updateLines(Integer.MAX_VALUE, task);
+        if (mLineBreaker != null) return false;
+        int lineCount = mLinesInfo.size();
+        MongolTextLine[] lines = new MongolTextLine[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            if (task != null && task.isCancelled()) return false;
+            lines[i] = new MongolTextLine();
+            lines[i].set(mTextPaint, mText, getLineStart(i), getLineEnd(i));
+        }
+        mMeasuredLines = lines;
+        mDesiredSize = getDesiredSize(mText, 0, mText.length(), mTextPaint);
+        return true;
+    }
+
+    /**
+     * Takes over the lines that source measured for the same glyph text.
+     * The paint of this layout must have the same text metrics as the paint of
+     * source. Lines are measured again if the line spacing is different.
+     *
+     * @param text the glyph text, which has the same content as the text of source
+     */
+    void setMeasuredLines(MongolLayout source, CharSequence text) {
+        setText(text);
+        if (source.mMeasuredLines == null
+                || source.mSpacingAdd != mSpacingAdd
+                || source.mSpacingMult != mSpacingMult)
+            return;
+        mHeight = source.mHeight;
+        mLinesInfo = source.mLinesInfo;
+        mMeasuredLines = source.mMeasuredLines;
+        mDesiredSize = source.mDesiredSize;
+        needsLineUpdate = false;
+        mLineBreaker = null;
+    }
+
+    /**
+     * @return the size from getDesiredSize() if it was measured along with
+     * the lines, otherwise null
+     */
+    Rect getMeasuredDesiredSize() {
+        return mDesiredSize;
     }
 
     private float getExtraSpacing(float lineHeight) {
@@ -321,11 +457,13 @@ public class MongolLayout {
      */
     void reflowLines() {
         needsLineUpdate = true;
+        mDesiredSize = null;
     }
 
     public void setText(CharSequence text) {
         mText = text;
         needsLineUpdate = true;
+        mDesiredSize = null;
     }
 
     public int getHeight() {
@@ -344,7 +482,16 @@ public class MongolLayout {
     }
 
     public int getWidth() {
-        if (needsLineUpdate) updateLines();
+        return getWidth(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Like getWidth(), but only breaks the lines until they are wider than maxWidth.
+     *
+     * @return the width, or at least maxWidth if the lines go on past it
+     */
+    int getWidth(int maxWidth) {
+        updateLines(maxWidth, null);
         if (mLinesInfo == null || mLinesInfo.size() == 0) return 0;
         int lastLine = mLinesInfo.size() - 1;
         //noinspection SuspiciousNameCombination
@@ -373,6 +520,7 @@ public class MongolLayout {
 
     public final int getLineBottom(int line) {
         if (line <= 0) return 0;
+        finishLines();
         return mLinesInfo.get(line - 1).top;
     }
 
@@ -383,6 +531,7 @@ public class MongolLayout {
     }
 
     public int getLineTop(int line) {
+        finishLines();
         if (mLinesInfo == null || mLinesInfo.size() == 0) {
             return mTextPaint.getFontMetricsInt().bottom - mTextPaint.getFontMetricsInt().top;
         }
@@ -390,16 +539,19 @@ public class MongolLayout {
     }
 
     public int getLineCount() {
+        finishLines();
         return mLinesInfo != null ? mLinesInfo.size() : 0;
         //return mLinesInfo.size();
     }
 
     public final int getLineStart(int line) {
+        finishLines();
         if (mLinesInfo == null || mLinesInfo.size() == 0) return 0;
         return mLinesInfo.get(line).startOffset;
     }
 
     public final int getLineEnd(int line) {
+        finishLines();
         if (mLinesInfo == null || mLinesInfo.size() == 0) return 0;
         if (line == mLinesInfo.size() - 1) {
             return mText.length();
@@ -433,6 +585,7 @@ public class MongolLayout {
     // to the right of the last line of the text, you get the last line.
     public int getLineForHorizontal(int horizontal) {
         if (horizontal <= 0) return 0;
+        finishLines();
         if (mLinesInfo == null || mLinesInfo.size() == 0) return 0;
         final int lineCount = mLinesInfo.size();
         int high = lineCount;
@@ -505,6 +658,88 @@ public class MongolLayout {
     }
 
 
+    // where breakLines() goes on from
+    private static class LineBreaker {
+        BreakIterator boundary;
+        int start;
+        int end;
+        int lineStart;
+        float measuredSum;
+        int top;
+        float lineHeightMax;
+    }
+
+    // lets BreakIterator read the text without copying all of it to a String
+    // (from API 24; before that BreakIterator copies it anyway)
+    private static class CharSequenceIterator implements CharacterIterator {
+        private final CharSequence mText;
+        private int mIndex;
+
+        CharSequenceIterator(CharSequence text) {
+            mText = text;
+        }
+
+        @Override
+        public char first() {
+            mIndex = 0;
+            return current();
+        }
+
+        @Override
+        public char last() {
+            mIndex = Math.max(0, mText.length() - 1);
+            return current();
+        }
+
+        @Override
+        public char current() {
+            return (mIndex < mText.length()) ? mText.charAt(mIndex) : DONE;
+        }
+
+        @Override
+        public char next() {
+            if (mIndex < mText.length()) mIndex++;
+            return current();
+        }
+
+        @Override
+        public char previous() {
+            if (mIndex == 0) return DONE;
+            mIndex--;
+            return current();
+        }
+
+        @Override
+        public char setIndex(int position) {
+            if (position < 0 || position > mText.length())
+                throw new IllegalArgumentException("Invalid index " + position);
+            mIndex = position;
+            return current();
+        }
+
+        @Override
+        public int getBeginIndex() {
+            return 0;
+        }
+
+        @Override
+        public int getEndIndex() {
+            return mText.length();
+        }
+
+        @Override
+        public int getIndex() {
+            return mIndex;
+        }
+
+        @Override
+        public Object clone() {
+            CharSequenceIterator copy = new CharSequenceIterator(mText);
+            copy.mIndex = mIndex;
+            return copy;
+        }
+    }
+
     private class LineInfo {
         int startOffset;
 
@@ -0,0 +1,283 @@
+package net.studymongolian.mongollibrary;
+
+import android.graphics.Typeface;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.view.Gravity;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Text that has already been rendered to glyphs, broken into lines and
+ * measured for a MongolTextView, like Android's PrecomputedText is for
+ * TextView. All of this work can be done on a background thread so that
+ * MongolTextView.setPrecomputedText() only has to attach the result and draw it.
+ *
+ * <pre>
+ * MongolPrecomputedText.Params params = new MongolPrecomputedText.Params.Builder(
+ *         textView.getTextMetricsParams()).setHeight(textAreaHeight).build();
+ * Future&lt;MongolPrecomputedText&gt; future =
+ *         MongolPrecomputedText.create(longText, params, executor);
+ * ...
+ * textView.setPrecomputedText(future.get());
+ * </pre>
+ *
+ * A MongolPrecomputedText is immutable and can be set on more than one view.
+ */
+public class MongolPrecomputedText {
+
+    // background work checks whether it was cancelled after rendering this many chars
+    private static final int RENDER_CHUNK_LENGTH = 4096;
+
+    private final CharSequence mText;
+    private final CharSequence mGlyphText;
+    private final Params mParams;
+    private final MongolLayout mLayout;
+
+    private MongolPrecomputedText(CharSequence text, CharSequence glyphText,
+                                  Params params, MongolLayout layout) {
+        mText = text;
+        mGlyphText = glyphText;
+        mParams = params;
+        mLayout = layout;
+    }
+
+    /**
+     * Renders, breaks and measures the text on the calling thread.
+     *
+     * @param text   Unicode text, which may contain spans
+     * @param params the text metrics and height of the view the text will be set on
+     * @return the precomputed text
+     */
+    public static MongolPrecomputedText create(CharSequence text, Params params) {
+        if (params == null) throw new IllegalArgumentException("params cannot be null");
+        return create(text, params, (Future<?>) null);
+    }
+
+    // returns null if task is cancelled before the work is done
+    private static MongolPrecomputedText create(CharSequence text, Params params, Future<?> task) {
+        if (text == null) text = "";
+
+        // A private storage renders the glyphs exactly like MongolTextView.setText().
+        // They are rendered a piece at a time to see if the task was cancelled.
+        MongolTextStorage storage = new MongolTextStorage("");
+        storage.beginBatchEdit();
+        storage.setText(text);
+        CharSequence glyphs = storage.getGlyphText();
+        int length = glyphs.length();
+        char[] buffer = new char[Math.min(length, RENDER_CHUNK_LENGTH)];
+        for (int start = 0; start < length; start += RENDER_CHUNK_LENGTH) {
+            if (task != null && task.isCancelled()) return null;
+            TextUtils.getChars(glyphs, start, Math.min(length, start + RENDER_CHUNK_LENGTH), buffer, 0);
+        }
+        storage.endBatchEdit();
+
+        CharSequence unicodeText = immutableCopy(storage.getUnicodeText(), text instanceof Spanned);
+        CharSequence glyphText = immutableCopy(storage.getGlyphText(), text instanceof Spanned);
+
+        // the same params may be used on several threads at once, so the
+        // layout measures with its own paint
+        MongolLayout layout = new MongolLayout(
+                glyphText,
+                0,
+                glyphText.length(),
+                params.getTextPaintPlus(),
+                params.mHeight,
+                Gravity.TOP,
+                params.mSpacingMult,
+                params.mSpacingAdd,
+                false,
+                Integer.MAX_VALUE);
+        if (params.mHeight > 0 && !layout.measureLines(task)) {
+            return null;
+        }
+        return new MongolPrecomputedText(unicodeText, glyphText, params, layout);
+    }
+
+    /**
+     * Renders, breaks and measures the text with the executor. The text should
+     * not be changed until the future is done. Cancelling the future stops the
+     * work even if it has already started.
+     *
+     * @param text     Unicode text, which may contain spans
+     * @param params   the text metrics and height of the view the text will be set on
+     * @param executor runs the work, for example a background thread pool
+     * @return a future that gives the precomputed text
+     */
+    public static Future<MongolPrecomputedText> create(final CharSequence text,
+                                                       final Params params,
+                                                       Executor executor) {
+        if (params == null) throw new IllegalArgumentException("params cannot be null");
+        if (executor == null) throw new IllegalArgumentException("executor cannot be null");
+        FutureTask<MongolPrecomputedText> task = newTask(text, params);
+        executor.execute(task);
+        return task;
+    }
+
+    // the work of create(text, params, executor), which hasn't been started yet
+    static FutureTask<MongolPrecomputedText> newTask(CharSequence text, Params params) {
+        Precomputation work = new Precomputation(text, params);
+        FutureTask<MongolPrecomputedText> task = new FutureTask<>(work);
+        work.mTask = task;
+        return task;
+    }
+
+    private static class Precomputation implements Callable<MongolPrecomputedText> {
+
+        private final CharSequence mText;
+        private final Params mParams;
+        // set before the task can run
+        private Future<?> mTask;
+
+        Precomputation(CharSequence text, Params params) {
+            mText = text;
+            mParams = params;
+        }
+
+        @Override
+        public MongolPrecomputedText call() {
+            return create(mText, mParams, mTask);
+        }
+    }
+
+    private static CharSequence immutableCopy(CharSequence text, boolean keepSpans) {
+        if (keepSpans) return new SpannedString(text);
+        return text.toString();
+    }
+
+    /**
+     * @return the Unicode text
+     */
+    public CharSequence getText() {
+        return mText;
+    }
+
+    public int length() {
+        return mText.length();
+    }
+
+    public Params getParams() {
+        return mParams;
+    }
+
+    CharSequence getGlyphText() {
+        return mGlyphText;
+    }
+
+    MongolLayout getLayout() {
+        return mLayout;
+    }
+
+    /**
+     * The settings that the text is measured and broken into lines with. The
+     * text metrics of the paint have to match the view that the text is set on.
+     * If the height or line spacing don't match, the view breaks the lines again.
+     */
+    public static final class Params {
+
+        private final TextPaintPlus mPaint;
+        private final int mHeight;
+        private final float mSpacingAdd;
+        private final float mSpacingMult;
+
+        private Params(TextPaintPlus paint, int height, float spacingAdd, float spacingMult) {
+            mPaint = paint;
+            mHeight = height;
+            mSpacingAdd = spacingAdd;
+            mSpacingMult = spacingMult;
+        }
+
+        /**
+         * @return the height of a vertical line in pixels (not including padding)
+         */
+        public int getHeight() {
+            return mHeight;
+        }
+
+        public float getLineSpacingExtra() {
+            return mSpacingAdd;
+        }
+
+        public float getLineSpacingMultiplier() {
+            return mSpacingMult;
+        }
+
+        /**
+         * @return a copy of the paint that the text is measured with
+         */
+        public TextPaint getTextPaint() {
+            return getTextPaintPlus();
+        }
+
+        TextPaintPlus getTextPaintPlus() {
+            TextPaintPlus paint = new TextPaintPlus();
+            paint.set(mPaint);
+            return paint;
+        }
+
+        /**
+         * @return true if text measured with paint would have the same widths
+         */
+        public boolean isSameTextMetrics(TextPaint paint) {
+            if (paint.getTextSize() != mPaint.getTextSize()) return false;
+            if (paint.getTextScaleX() != mPaint.getTextScaleX()) return false;
+            if (paint.getTextSkewX() != mPaint.getTextSkewX()) return false;
+            if (paint.getFlags() != mPaint.getFlags()) return false;
+            Typeface typeface = paint.getTypeface();
+            if (typeface == null) return mPaint.getTypeface() == null;
+            return typeface.equals(mPaint.getTypeface());
+        }
+
+        public static class Builder {
+
+            private final TextPaintPlus mPaint;
+            private int mHeight;
+            private float mSpacingAdd = MongolLayout.DEFAULT_LINESPACING_ADDITION;
+            private float mSpacingMult = MongolLayout.DEFAULT_LINESPACING_MULTIPLIER;
+
+            /**
+             * @param paint the paint is copied, so later changes to it are not used
+             */
+            public Builder(TextPaintPlus paint) {
+                if (paint == null) throw new IllegalArgumentException("paint cannot be null");
+                mPaint = new TextPaintPlus();
+                mPaint.set(paint);
+            }
+
+            /**
+             * Starts with the values of params, for example to change the height of
+             * the params from MongolTextView.getTextMetricsParams().
+             */
+            public Builder(Params params) {
+                this(params.mPaint);
+                mHeight = params.mHeight;
+                mSpacingAdd = params.mSpacingAdd;
+                mSpacingMult = params.mSpacingMult;
+            }
+
+            /**
+             * @param height the height of a vertical line in pixels (not including padding).
+             *               Lines are only broken ahead of time if this is greater than 0.
+             */
+            public Builder setHeight(int height) {
+                mHeight = Math.max(height, 0);
+                return this;
+            }
+
+            public Builder setLineSpacing(float add, float mult) {
+                mSpacingAdd = add;
+                mSpacingMult = mult;
+                return this;
+            }
+
+            public Params build() {
+                return new Params(mPaint, mHeight, mSpacingAdd, mSpacingMult);
+            }
+        }
+    }
+}
@@ -38,10 +38,17 @@ class MongolTextLine {
     private CharSequence mText;
     private List<TextRun> mTextRuns;
 
-    // XXX is having a static variable a bad idea here?
     // The purpose of the work paint is to avoid modifying paint
     // variables being passed in while measuring spanned text.
-    private static final TextPaintPlus sWorkPaint = new TextPaintPlus();
+    // Each thread has its own so that lines can be measured on another thread
+    // without every line holding a paint.
+    private static final ThreadLocal<TextPaintPlus> sWorkPaint =
+            new ThreadLocal<TextPaintPlus>() {
+                @Override
+                protected TextPaintPlus initialValue() {
+                    return new TextPaintPlus();
+                }
+            };
 
     // A text run is a substring of text within the text line. The substring is made up of
     //     (1) a single emoji or CJK character,
@@ -64,7 +71,7 @@ class MongolTextLine {
 
             TextPaintPlus wp;
             if (isSpanned) {
-                wp = sWorkPaint;
+                wp = sWorkPaint.get();
                 wp.set(mPaint);
                 MetricAffectingSpan[] spans = ((Spanned) mText).getSpans(offset, offset + length, MetricAffectingSpan.class);
                 for (MetricAffectingSpan span : spans) {
@@ -111,10 +118,18 @@ class MongolTextLine {
                 }
             }
         }
-        // XXX do we need to do something with sWorkPaint here?
     }
 
 
+    /**
+     * Points an already measured line at a paint and text with the same metrics
+     * and content, so that it can be drawn without measuring the runs again.
+     */
+    void attach(TextPaintPlus paint, CharSequence text) {
+        mPaint = paint;
+        mText = text;
+    }
+
     void set(TextPaintPlus paint, CharSequence text, int start, int end) {
 
         int nextSpanTransition = 0;
@@ -249,7 +264,7 @@ class MongolTextLine {
 
             TextPaintPlus wp;
             if (hasSpan) {
-                wp = sWorkPaint;
+                wp = sWorkPaint.get();
                 wp.set(mPaint);
                 CharacterStyle[] csSpans = ((Spanned) mText).getSpans(start, end, CharacterStyle.class);
                 for (CharacterStyle span : csSpans) {
@@ -259,7 +274,8 @@ class MongolTextLine {
                 wp = mPaint;
             }
 
-            float width = wp.measureText(mText, start, end);
+            // the spans that affect the width were already applied when measuring
+            float width = run.measuredWidth;
 
             // background color
             if (wp.bgColor != 0) {
@@ -381,7 +397,7 @@ class MongolTextLine {
                     break;
                 }
 
-                TextPaintPlus wp = sWorkPaint;
+                TextPaintPlus wp = sWorkPaint.get();
                 wp.set(mPaint);
                 if (hasSpan) {
                     MetricAffectingSpan[] maSpans = ((Spanned) mText).getSpans(start, start + length, MetricAffectingSpan.class);
@@ -15,21 +15,26 @@ package net.studymongolian.mongollibrary;
 import androidx.annotation.NonNull;
 import android.text.Editable;
 import android.text.InputFilter;
-import android.text.SpannableStringBuilder;
 import android.text.Spanned;
-import android.text.style.CharacterStyle;
+import android.text.TextUtils;
 
 
 public class MongolTextStorage implements Editable {
 
     private CharSequence mUnicodeText;
-    private CharSequence mGlyphText;
+    private GlyphText mGlyphText;
     private MongolCode mRenderer;
     private OnChangeListener mChangelistener;
+    private Editable.Factory mEditableFactory = Editable.Factory.getInstance();
+
+    private int mBatchEditNesting;
+    private boolean mBatchHasChanged;
 
     MongolTextStorage(CharSequence unicodeText) {
         mRenderer = MongolCode.INSTANCE;
         this.mChangelistener = null;
+        mUnicodeText = "";
+        mGlyphText = new GlyphText(this, mRenderer);
         setText(unicodeText);
     }
 
@@ -47,6 +52,60 @@ public class MongolTextStorage implements Editable {
     }
 
 
+    /**
+     * Sets the kind of Editable that the Unicode text is kept in once it is
+     * edited. The default makes SpannableStringBuilders.
+     * PieceTableEditable.FACTORY is faster for editing long documents.
+     */
+    void setEditableFactory(Editable.Factory factory) {
+        mEditableFactory = factory;
+        if (mUnicodeText instanceof Editable) {
+            InputFilter[] filters = getFilters();
+            mUnicodeText = factory.newEditable(mUnicodeText);
+            ((Editable) mUnicodeText).setFilters(filters);
+        }
+    }
+
+    /**
+     * In lazy mode the glyphs of a word are only rendered when the glyph text
+     * there is read, which is usually when it is laid out. An edit only marks
+     * the words around it to be rendered again.
+     */
+    void setLazyGlyphRendering(boolean lazy) {
+        mGlyphText.setLazy(lazy);
+    }
+
+    /**
+     * Starts a group of edits that are rendered as one. Until the matching
+     * endBatchEdit() the glyphs are only rendered when they are read. The
+     * listener is still told before and on every change, so that a layout of
+     * the glyph text can follow each one, but afterTextChanged() is only
+     * called once at the end. Batch edits may be nested.
+     */
+    public void beginBatchEdit() {
+        if (mBatchEditNesting++ == 0) mGlyphText.setDeferRendering(true);
+    }
+
+    /**
+     * Ends a group of edits started with beginBatchEdit(). At the end of the
+     * outermost batch the words that were changed are rendered, and
+     * afterTextChanged() is called if anything was changed.
+     */
+    public void endBatchEdit() {
+        if (mBatchEditNesting == 0 || --mBatchEditNesting > 0) return;
+        mGlyphText.setDeferRendering(false);
+        if (!mBatchHasChanged) return;
+        mBatchHasChanged = false;
+        if (mChangelistener != null)
+            mChangelistener.afterTextChanged(this);
+    }
+
+    // the text is only copied to an Editable when it is first changed
+    private void makeEditable() {
+        if (mUnicodeText instanceof Editable) return;
+        mUnicodeText = mEditableFactory.newEditable(mUnicodeText);
+    }
+
     CharSequence getUnicodeText() {
         return mUnicodeText;
     }
@@ -58,8 +117,6 @@ public class MongolTextStorage implements Editable {
     public void setText(CharSequence unicodeText) {
 
         if (unicodeText == null) unicodeText = "";
-        if (mUnicodeText == null) mUnicodeText = "";
-        if (mGlyphText == null) mGlyphText = "";
 
         clearSpans();
 
@@ -68,46 +125,29 @@ public class MongolTextStorage implements Editable {
 
     }
 
-    private void updateGlyphTextForUnicodeRange(int start, int end) {
+    // takes over text that was already rendered on another thread
+    void setText(MongolPrecomputedText text) {
+        // the precomputed text didn't go through the filters, so it is set like any other text
+        if (getFilters().length > 0) {
+            setText(text.getText());
+            return;
+        }
 
-        if (!(mUnicodeText instanceof Spanned)) return;
+        clearSpans();
 
-        // add spans to glyph string
-        CharacterStyle[] spans = ((Spanned) mUnicodeText).getSpans(start, end, CharacterStyle.class);
-        for (CharacterStyle span : spans) {
-            final int unicodeStart = ((Spanned) mUnicodeText).getSpanStart(span);
-            final int unicodeEnd = ((Spanned) mUnicodeText).getSpanEnd(span);
-            ((SpannableStringBuilder) mGlyphText).setSpan(span, unicodeStart, unicodeEnd, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-        }
-    }
+        final int oldLength = length();
+        final int newLength = text.length();
+        if (mChangelistener != null)
+            mChangelistener.beforeTextChanged(mUnicodeText, 0, oldLength, newLength);
 
-    // go to the start of the Mongol word from the indicated position
-    private int getMongolWordStart(int position, CharSequence source) {
-        int wordStart = position;
-        for (int i = position - 1; i >= 0; i--) {
-            final char thisChar = source.charAt(i);
-            if (MongolCode.isMongolian(thisChar) || thisChar == MongolCode.Uni.NNBS) {
-                wordStart = i;
-            } else {
-                break;
-            }
-        }
-        return wordStart;
-    }
-
-    // go to the end of the Mongol word from the indicated position
-    private int getMongolWordEnd(int position, CharSequence source) {
-        int wordEnd = position;
-        final int length = source.length();
-        for (int i = position; i < length; i++) {
-            final char thisChar = source.charAt(i);
-            if (MongolCode.isMongolian(thisChar) || thisChar == MongolCode.Uni.NNBS) {
-                wordEnd = i + 1;
-            } else {
-                break;
-            }
+        // the precomputed text is immutable so it gets copied before any change
+        mUnicodeText = text.getText();
+        mGlyphText.setText(text.getGlyphText(), true);
+
+        if (mChangelistener != null) {
+            mChangelistener.onTextChanged(mUnicodeText, 0, oldLength, newLength);
+            mChangelistener.afterTextChanged(this);
         }
-        return wordEnd;
     }
 
     ////////////////////////////// Editable interface methods ///////////////////////////
@@ -125,10 +165,7 @@ public class MongolTextStorage implements Editable {
      */
     @Override
     public Editable replace(int st, int en, CharSequence source, int start, int end) {
-        if (!(mUnicodeText instanceof SpannableStringBuilder)) {
-            mUnicodeText = new SpannableStringBuilder(mUnicodeText);
-            mGlyphText = new SpannableStringBuilder(mGlyphText);
-        }
+        makeEditable();
         // swap start and end if in wrong order
         if (st > en) {
             int temp = st;
@@ -144,18 +181,18 @@ public class MongolTextStorage implements Editable {
         if (mChangelistener != null)
             mChangelistener.beforeTextChanged(mUnicodeText, st, en - st, end - start);
 
-        // replace glyphs (expand to the whole word preceding and following)
-        int wordStart = getMongolWordStart(st, mUnicodeText);
-        int wordEnd = getMongolWordEnd(en, mUnicodeText);
-        ((SpannableStringBuilder) mUnicodeText).replace(st, en, source, start, end);
-        int adjustedEnd = wordEnd + (end - start) - (en - st);
-        CharSequence unicodeReplacement = mUnicodeText.subSequence(wordStart, adjustedEnd);
-        String glyphReplacement = mRenderer.unicodeToMenksoftSameIndex(unicodeReplacement);
-        ((SpannableStringBuilder) mGlyphText).replace(wordStart, wordEnd, glyphReplacement);
-        updateGlyphTextForUnicodeRange(wordStart, adjustedEnd);
+        final int oldLength = mUnicodeText.length();
+        ((Editable) mUnicodeText).replace(st, en, source, start, end);
+        // the filters may have changed how much text was inserted
+        final int newLength = en - st + mUnicodeText.length() - oldLength;
+        mGlyphText.replace(st, en, newLength);
 
-        if (mChangelistener != null) {
-            mChangelistener.onTextChanged(mUnicodeText, st, en - st, end - start);
+        if (mChangelistener != null)
+            mChangelistener.onTextChanged(mUnicodeText, st, en - st, newLength);
+
+        if (mBatchEditNesting > 0) {
+            mBatchHasChanged = true;
+        } else if (mChangelistener != null) {
             mChangelistener.afterTextChanged(this);
         }
 
@@ -207,11 +244,10 @@ public class MongolTextStorage implements Editable {
 
     @Override
     public void clearSpans() {
-        if (!(mUnicodeText instanceof SpannableStringBuilder)) {
+        if (!(mUnicodeText instanceof Editable)) {
             return;
         }
-        ((SpannableStringBuilder) mUnicodeText).clearSpans();
-        ((SpannableStringBuilder) mGlyphText).clearSpans();
+        ((Editable) mUnicodeText).clearSpans();
 
         final int length = mUnicodeText.length();
         if (mChangelistener != null)
@@ -220,42 +256,33 @@ public class MongolTextStorage implements Editable {
 
     @Override
     public void setFilters(InputFilter[] filters) {
-        if (!(mUnicodeText instanceof SpannableStringBuilder)) {
+        if (!(mUnicodeText instanceof Editable)) {
             return;
         }
         // TODO: this is untested!
         int oldLength = mUnicodeText.length();
-        ((SpannableStringBuilder) mUnicodeText).setFilters(filters);
-        ((SpannableStringBuilder) mGlyphText).setFilters(filters);
+        ((Editable) mUnicodeText).setFilters(filters);
         if (mChangelistener != null)
             mChangelistener.onTextChanged(mUnicodeText, 0, oldLength, mUnicodeText.length());
     }
 
     @Override
     public InputFilter[] getFilters() {
-        if (!(mUnicodeText instanceof SpannableStringBuilder)) {
+        if (!(mUnicodeText instanceof Editable)) {
             return new InputFilter[0];
         }
-        return ((SpannableStringBuilder) mUnicodeText).getFilters();
+        return ((Editable) mUnicodeText).getFilters();
     }
 
     @Override
     public void getChars(int start, int end, char[] dest, int destoff) {
-        if (!(mUnicodeText instanceof SpannableStringBuilder)) {
-            ((String) mUnicodeText).getChars(start, end, dest, destoff);
-        } else {
-            ((SpannableStringBuilder) mUnicodeText).getChars(start, end, dest, destoff);
-        }
+        TextUtils.getChars(mUnicodeText, start, end, dest, destoff);
     }
 
     @Override
     public void setSpan(Object what, int start, int end, int flags) {
-        if (!(mUnicodeText instanceof SpannableStringBuilder)) {
-            mUnicodeText = new SpannableStringBuilder(mUnicodeText);
-            mGlyphText = new SpannableStringBuilder(mGlyphText);
-        }
-        ((SpannableStringBuilder) mUnicodeText).setSpan(what, start, end, flags);
-        ((SpannableStringBuilder) mGlyphText).setSpan(what, start, end, flags);
+        makeEditable();
+        ((Editable) mUnicodeText).setSpan(what, start, end, flags);
 
         if (mChangelistener != null)
             mChangelistener.onSpanChanged((Spanned) mUnicodeText, what, start, start, end, end);
@@ -266,11 +293,10 @@ public class MongolTextStorage implements Editable {
         if (!(mUnicodeText instanceof Spanned)) {
             return;
         }
-        if (!(mUnicodeText instanceof SpannableStringBuilder)) {
+        if (!(mUnicodeText instanceof Editable)) {
             return;
         }
-        ((SpannableStringBuilder) mUnicodeText).removeSpan(what);
-        ((SpannableStringBuilder) mGlyphText).removeSpan(what);
+        ((Editable) mUnicodeText).removeSpan(what);
 
         final int length = mUnicodeText.length();
         if (mChangelistener != null)
@@ -7,8 +7,11 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.text.Editable;
 import android.text.Selection;
 import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.SpannedString;
 import android.text.method.MovementMethod;
 import android.text.style.ClickableSpan;
 import android.util.AttributeSet;
@@ -20,6 +23,10 @@ import android.view.ViewTreeObserver;
 
 import androidx.annotation.ColorInt;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
 // TODO how to speed this up
 // use array instead of mLinesInfo list
 // only re-render changed words
@@ -56,6 +63,23 @@ public class MongolTextView extends View implements ViewTreeObserver.OnPreDrawLi
     private int mShadowColor;
     private float mSpacingMult = 1.0f;
     private float mSpacingAdd = 0.0f;
+    // the work of the last setTextAsync() until its text is set
+    private FutureTask<MongolPrecomputedText> mTextTask;
+    // the horizontal range of the view that the last onDraw() drew
+    private int mDrawnLeft;
+    private int mDrawnRight;
+    private final Rect mVisibleRect = new Rect();
+    private final ViewTreeObserver.OnScrollChangedListener mScrollChangedListener =
+            new ViewTreeObserver.OnScrollChangedListener() {
+                @Override
+                public void onScrollChanged() {
+                    // a scroll container moved lines that weren't drawn into sight
+                    if (getLocalVisibleRect(mVisibleRect)
+                            && (mVisibleRect.left < mDrawnLeft || mVisibleRect.right > mDrawnRight)) {
+                        invalidate();
+                    }
+                }
+            };
 
 
     public MongolTextView(Context context) {
@@ -131,12 +155,6 @@ public class MongolTextView extends View implements ViewTreeObserver.OnPreDrawLi
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
 
-        // TODO don't need to calculate this if using sticky width?
-        // TODO pass in a limit where we can stop measuring?
-        final CharSequence text = mTextStorage.getGlyphText();
-        Rect desiredSizeNoPadding = MongolLayout.getDesiredSize(text, 0, text.length(), mTextPaint);
-        int desiredHeight = desiredSizeNoPadding.height() + getPaddingTop() + getPaddingBottom();
-
         int widthMode = MeasureSpec.getMode(widthMeasureSpec);
         int widthSize = MeasureSpec.getSize(widthMeasureSpec);
         int heightMode = MeasureSpec.getMode(heightMeasureSpec);
@@ -147,11 +165,22 @@ public class MongolTextView extends View implements ViewTreeObserver.OnPreDrawLi
 
         //Measure Height
         if (heightMode == MeasureSpec.EXACTLY) {
+            // the whole text only has to be measured if the height depends on it
             height = heightSize;
-        } else if (heightMode == MeasureSpec.AT_MOST) {
-            height = Math.min(desiredHeight, heightSize);
         } else {
-            height = desiredHeight;
+            // TODO don't need to calculate this if using sticky width?
+            // TODO pass in a limit where we can stop measuring?
+            Rect desiredSizeNoPadding = mLayout.getMeasuredDesiredSize();
+            if (desiredSizeNoPadding == null) {
+                final CharSequence text = mTextStorage.getGlyphText();
+                desiredSizeNoPadding = MongolLayout.getDesiredSize(text, 0, text.length(), mTextPaint);
+            }
+            int desiredHeight = desiredSizeNoPadding.height() + getPaddingTop() + getPaddingBottom();
+            if (heightMode == MeasureSpec.AT_MOST) {
+                height = Math.min(desiredHeight, heightSize);
+            } else {
+                height = desiredHeight;
+            }
         }
 
         // add padding calculations
@@ -163,7 +192,12 @@ public class MongolTextView extends View implements ViewTreeObserver.OnPreDrawLi
             desiredWidth = mStickyWidth;
         } else {
             mLayout.setHeight(height - getPaddingTop() - getPaddingBottom());
-            desiredWidth = mLayout.getWidth() + getPaddingLeft() + getPaddingRight();
+            // Lines past a width limit don't have to be broken yet. Then the
+            // desired width is only known to be more than the limit.
+            int horizontalPadding = getPaddingLeft() + getPaddingRight();
+            int maxWidth = (widthMode == MeasureSpec.UNSPECIFIED)
+                    ? Integer.MAX_VALUE : Math.max(0, widthSize - horizontalPadding);
+            desiredWidth = mLayout.getWidth(maxWidth) + horizontalPadding;
         }
 
         //Measure Width
@@ -223,7 +257,8 @@ public class MongolTextView extends View implements ViewTreeObserver.OnPreDrawLi
                 w < mOnMeasureData[NEW_DESIRED_WIDTH_INDEX] &&
                 mStickyWidth == STICKY_WIDTH_UNDEFINED) {
 
-            mStickyWidth = mOnMeasureData[NEW_DESIRED_WIDTH_INDEX];
+            // the desired width may only have been measured up to the width limit
+            mStickyWidth = mLayout.getWidth() + getPaddingLeft() + getPaddingRight();
             getViewTreeObserver().addOnPreDrawListener(this);
         } else {
             mStickyWidth = STICKY_WIDTH_UNDEFINED;
@@ -241,13 +276,43 @@ public class MongolTextView extends View implements ViewTreeObserver.OnPreDrawLi
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
+        // Only the lines in sight, and a view width to either side of them for
+        // scrolling, are drawn. The canvas clip can't tell which lines those
+        // are, since with hardware acceleration it is the whole view even in a
+        // scroll container.
+        if (getLocalVisibleRect(mVisibleRect)) {
+            int margin = mVisibleRect.width();
+            mDrawnLeft = mVisibleRect.left - margin;
+            mDrawnRight = mVisibleRect.right + margin;
+        } else if (getWindowToken() != null) {
+            // out of sight, until a scroll brings it back
+            mDrawnLeft = 0;
+            mDrawnRight = 0;
+        } else {
+            // not attached, like when drawing to a bitmap
+            mDrawnLeft = 0;
+            mDrawnRight = getWidth();
+        }
+
         // draw the text on the canvas after adjusting for padding
         canvas.save();
         canvas.translate(getPaddingLeft(), getPaddingTop());
-        mLayout.draw(canvas);
+        mLayout.draw(canvas, mDrawnLeft - getPaddingLeft(), mDrawnRight - getPaddingLeft());
         canvas.restore();
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnScrollChangedListener(mScrollChangedListener);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnScrollChangedListener(mScrollChangedListener);
+        super.onDetachedFromWindow();
+    }
+
     @SuppressLint("ClickableViewAccessibility") // todo support accessibility
     @Override
     public boolean onTouchEvent(MotionEvent event) {
@@ -276,6 +341,7 @@ public class MongolTextView extends View implements ViewTreeObserver.OnPreDrawLi
     }
 
     public void setText(CharSequence text) {
+        cancelTextAsync();
         mTextStorage.setText(text);
         mLayout.setText(mTextStorage.getGlyphText());
         setSelection(mTextStorage.length());
@@ -283,6 +349,132 @@ public class MongolTextView extends View implements ViewTreeObserver.OnPreDrawLi
         requestLayout();
     }
 
+    /**
+     * Like TextView.setEditableFactory(), sets the kind of Editable that the text
+     * is kept in once it is edited. The default is SpannableStringBuilder. For long
+     * documents PieceTableEditable.FACTORY makes each edit take O(log n) time.
+     *
+     * @param factory for example PieceTableEditable.FACTORY
+     */
+    public void setEditableFactory(Editable.Factory factory) {
+        mTextStorage.setEditableFactory(factory);
+        mLayout.setText(mTextStorage.getGlyphText());
+        invalidate();
+    }
+
+    /**
+     * In lazy mode the Mongolian words are only rendered to glyphs when they are
+     * laid out instead of when the text is set or edited. A view with an exact
+     * height and an exact or limited width only breaks and draws the lines that
+     * fit in it, so opening a long text there only renders the beginning. A view
+     * that wraps its height or has an unlimited width, for example in a
+     * HorizontalScrollView, still measures and renders everything.
+     *
+     * @param lazy whether to render the glyphs on demand
+     */
+    public void setLazyGlyphRendering(boolean lazy) {
+        mTextStorage.setLazyGlyphRendering(lazy);
+        mLayout.setText(mTextStorage.getGlyphText());
+        invalidate();
+    }
+
+    /**
+     * Sets text that was rendered and measured ahead of time, possibly on another thread.
+     * Nothing has to be measured again if the height of the view (minus padding)
+     * and the line spacing are the same as in the params of the text.
+     *
+     * @param text made with params from getTextMetricsParams()
+     * @throws IllegalArgumentException if the text was measured with a different
+     *                                  text size, typeface or text style than this view uses
+     */
+    public void setPrecomputedText(MongolPrecomputedText text) {
+        if (!text.getParams().isSameTextMetrics(mTextPaint))
+            throw new IllegalArgumentException(
+                    "The text was measured with different text metrics than this view uses");
+        cancelTextAsync();
+        mTextStorage.setText(text);
+        setSelection(mTextStorage.length());
+        mLayout.setMeasuredLines(text.getLayout(), mTextStorage.getGlyphText());
+        invalidate();
+        requestLayout();
+    }
+
+    /**
+     * Renders, breaks and measures the text with the executor and then sets it on
+     * the main thread, so that long text like a book chapter doesn't block the UI.
+     * The old text is shown until then. If the text area has no height yet, for
+     * example before the first layout or when the height wraps empty text, only the
+     * rendering is done ahead of time and the lines are broken when the view is
+     * measured. The request is cancelled, even if the work has already started,
+     * when the text is set again by this or any other method. If the work fails,
+     * the text is set with setText() on the main thread instead.
+     *
+     * @param text     Unicode text, which may contain spans. It is copied, so it may
+     *                 be changed afterward.
+     * @param executor runs the work, for example a background thread pool
+     */
+    public void setTextAsync(CharSequence text, Executor executor) {
+        if (executor == null) throw new IllegalArgumentException("executor cannot be null");
+        cancelTextAsync();
+        if (text == null) text = "";
+        final CharSequence copy = (text instanceof Spanned)
+                ? new SpannedString(text) : text.toString();
+        final FutureTask<MongolPrecomputedText> task =
+                MongolPrecomputedText.newTask(copy, getTextMetricsParams());
+        mTextTask = task;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                task.run();
+                if (task.isCancelled()) return;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (task != mTextTask) return;
+                        mTextTask = null;
+                        MongolPrecomputedText precomputedText;
+                        try {
+                            precomputedText = task.get();
+                        } catch (ExecutionException e) {
+                            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                            // the work failed, so the text is set the slow way instead
+                            setText(copy);
+                            return;
+                        } catch (InterruptedException e) {
+                            setText(copy);
+                            return;
+                        }
+                        if (precomputedText.getParams().isSameTextMetrics(mTextPaint)) {
+                            setPrecomputedText(precomputedText);
+                        } else {
+                            // the text size or typeface changed in the meantime
+                            setText(copy);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void cancelTextAsync() {
+        if (mTextTask != null) {
+            mTextTask.cancel(false);
+            mTextTask = null;
+        }
+    }
+
+    /**
+     * @return the params for making a MongolPrecomputedText that this view can draw
+     * without measuring. The height is the current height of the text area, which is 0
+     * before the view is laid out. Use Params.Builder to give another height.
+     */
+    public MongolPrecomputedText.Params getTextMetricsParams() {
+        return new MongolPrecomputedText.Params.Builder(mTextPaint)
+                .setHeight(mLayout.getHeight())
+                .setLineSpacing(mSpacingAdd, mSpacingMult)
+                .build();
+    }
+
     public int getTextColor() {
         return mTextColor;
     }
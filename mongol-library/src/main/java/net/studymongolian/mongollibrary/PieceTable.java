@@ -0,0 +1,252 @@
+package net.studymongolian.mongollibrary;
+
+import java.nio.CharBuffer;
+
+// The chars of a PieceTableEditable.
+//
+// The text is a sequence of pieces, each of them a range of a char array that
+// never changes: the original text or a chunk of the chars that were added
+// later. An edit only splits and drops pieces and appends the new chars to the
+// current chunk. The pieces are the nodes of a treap (a binary tree that is
+// balanced by random priorities) in the order of the text, and each node knows
+// how many chars its subtree has, so finding a position, inserting and
+// deleting all take O(log n) time in the number of pieces.
+final class PieceTable {
+
+    private static final int ADD_CHUNK_LENGTH = 4096;
+
+    private static final class Piece {
+        final char[] buffer;
+        final int offset;
+        final int priority;
+        int length;
+        int size; // the chars of this subtree
+        Piece left;
+        Piece right;
+
+        Piece(char[] buffer, int offset, int length, int priority) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+            this.priority = priority;
+            this.size = length;
+        }
+    }
+
+    private Piece mRoot;
+    private char[] mAddChunk;
+    private int mAddChunkLength;
+    private int mRandom = 0x2545F491;
+
+    // the second tree of the last split()
+    private Piece mSplitRight;
+
+    // the piece that charAt() found last, so that reading in order is fast
+    private Piece mCachedPiece;
+    private int mCachedPieceStart;
+
+    PieceTable(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length > 0) {
+            char[] original = new char[length];
+            copyChars(text, start, end, original, 0);
+            mRoot = newPiece(original, 0, length);
+        }
+    }
+
+    int length() {
+        return size(mRoot);
+    }
+
+    char charAt(int index) {
+        if (index < 0 || index >= length())
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+        Piece piece = mCachedPiece;
+        if (piece == null || index < mCachedPieceStart
+                || index >= mCachedPieceStart + piece.length) {
+            piece = mRoot;
+            int pieceStart = 0;
+            while (true) {
+                int leftSize = size(piece.left);
+                if (index < pieceStart + leftSize) {
+                    piece = piece.left;
+                    continue;
+                }
+                pieceStart += leftSize;
+                if (index < pieceStart + piece.length) break;
+                pieceStart += piece.length;
+                piece = piece.right;
+            }
+            mCachedPiece = piece;
+            mCachedPieceStart = pieceStart;
+        }
+        return piece.buffer[piece.offset + index - mCachedPieceStart];
+    }
+
+    void getChars(int start, int end, char[] dest, int destOffset) {
+        if (start < 0 || start > end || end > length())
+            throw new IndexOutOfBoundsException(
+                    "range " + start + ", " + end + " of length " + length());
+        copy(mRoot, start, end, dest, destOffset);
+    }
+
+    /**
+     * Replaces [start, end) with text[textStart, textEnd).
+     */
+    void replace(int start, int end, CharSequence text, int textStart, int textEnd) {
+        mCachedPiece = null;
+        Piece before = split(mRoot, start);
+        split(mSplitRight, end - start);
+        Piece after = mSplitRight;
+        mSplitRight = null;
+        if (textEnd > textStart) before = appendChars(before, text, textStart, textEnd);
+        mRoot = merge(before, after);
+    }
+
+    int getPieceCount() {
+        return count(mRoot);
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length()];
+        copy(mRoot, 0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    private Piece newPiece(char[] buffer, int offset, int length) {
+        // xorshift
+        mRandom ^= mRandom << 13;
+        mRandom ^= mRandom >>> 17;
+        mRandom ^= mRandom << 5;
+        return new Piece(buffer, offset, length, mRandom);
+    }
+
+    private static int size(Piece piece) {
+        return (piece == null) ? 0 : piece.size;
+    }
+
+    private static int count(Piece piece) {
+        return (piece == null) ? 0 : 1 + count(piece.left) + count(piece.right);
+    }
+
+    private static void update(Piece piece) {
+        piece.size = size(piece.left) + piece.length + size(piece.right);
+    }
+
+    // Returns the tree of the first count chars of piece's tree and leaves the
+    // rest in mSplitRight. A piece that count is inside of is cut in two.
+    private Piece split(Piece piece, int count) {
+        if (piece == null) {
+            mSplitRight = null;
+            return null;
+        }
+        int leftSize = size(piece.left);
+        if (count <= leftSize) {
+            Piece left = split(piece.left, count);
+            piece.left = mSplitRight;
+            update(piece);
+            mSplitRight = piece;
+            return left;
+        }
+        int countInPiece = count - leftSize;
+        if (countInPiece < piece.length) {
+            Piece tail = newPiece(piece.buffer, piece.offset + countInPiece,
+                    piece.length - countInPiece);
+            Piece right = piece.right;
+            piece.length = countInPiece;
+            piece.right = null;
+            update(piece);
+            mSplitRight = merge(tail, right);
+            return piece;
+        }
+        piece.right = split(piece.right, countInPiece - piece.length);
+        update(piece);
+        return piece;
+    }
+
+    private static Piece merge(Piece left, Piece right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    // adds the chars to the end of tree
+    private Piece appendChars(Piece tree, CharSequence text, int start, int end) {
+        while (start < end) {
+            if (mAddChunk == null || mAddChunkLength == mAddChunk.length) {
+                mAddChunk = new char[Math.max(ADD_CHUNK_LENGTH, end - start)];
+                mAddChunkLength = 0;
+            }
+            int count = Math.min(end - start, mAddChunk.length - mAddChunkLength);
+            copyChars(text, start, start + count, mAddChunk, mAddChunkLength);
+            // typing adds to the end of the last piece instead of making a new one
+            if (!extendLastPiece(tree, mAddChunk, mAddChunkLength, count)) {
+                tree = merge(tree, newPiece(mAddChunk, mAddChunkLength, count));
+            }
+            mAddChunkLength += count;
+            start += count;
+        }
+        return tree;
+    }
+
+    private static boolean extendLastPiece(Piece tree, char[] buffer, int offset, int count) {
+        if (tree == null) return false;
+        Piece last = tree;
+        while (last.right != null) {
+            last = last.right;
+        }
+        if (last.buffer != buffer || last.offset + last.length != offset) return false;
+        last.length += count;
+        for (Piece piece = tree; piece != null; piece = piece.right) {
+            piece.size += count;
+        }
+        return true;
+    }
+
+    // copies [start, end) of piece's tree
+    private static void copy(Piece piece, int start, int end, char[] dest, int destOffset) {
+        if (piece == null || start >= end) return;
+        int leftSize = size(piece.left);
+        if (start < leftSize) {
+            copy(piece.left, start, Math.min(end, leftSize), dest, destOffset);
+        }
+        int pieceEnd = leftSize + piece.length;
+        int from = Math.max(start, leftSize);
+        int to = Math.min(end, pieceEnd);
+        if (from < to) {
+            System.arraycopy(piece.buffer, piece.offset + from - leftSize,
+                    dest, destOffset + from - start, to - from);
+        }
+        if (end > pieceEnd) {
+            int rightStart = Math.max(start, pieceEnd);
+            copy(piece.right, rightStart - pieceEnd, end - pieceEnd,
+                    dest, destOffset + rightStart - start);
+        }
+    }
+
+    static void copyChars(CharSequence text, int start, int end, char[] dest, int destOffset) {
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, dest, destOffset);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(start, end, dest, destOffset);
+        } else if (text instanceof PieceTableEditable) {
+            ((PieceTableEditable) text).getChars(start, end, dest, destOffset);
+        } else if (text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+            CharBuffer buffer = (CharBuffer) text;
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + buffer.position() + start,
+                    dest, destOffset, end - start);
+        } else {
+            for (int i = start; i < end; i++) {
+                dest[destOffset++] = text.charAt(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package net.studymongolian.mongollibrary;
+
+import androidx.annotation.NonNull;
+import android.text.Editable;
+import android.text.InputFilter;
+import android.text.NoCopySpan;
+import android.text.SpanWatcher;
+import android.text.Spanned;
+import android.text.TextWatcher;
+
+import java.lang.reflect.Array;
+import java.util.List;
+
+/**
+ * An Editable for long documents that can be used instead of
+ * SpannableStringBuilder. The chars are kept in a piece table and the spans in
+ * an interval tree, so an edit takes O(log n) time however long the text is,
+ * where SpannableStringBuilder has to move the gap and the spans after it.
+ *
+ * Spans have the same flags, order and behavior when text is edited as with
+ * SpannableStringBuilder. TextWatchers are notified of changes and SpanWatchers
+ * of spans that are added, moved and removed, also by an edit. Like with
+ * SpannableStringBuilder an edit moves every span after it, so while there is
+ * a SpanWatcher an edit also takes time for each of those spans.
+ *
+ * For a MongolTextView or MongolEditText use
+ * setEditableFactory(PieceTableEditable.FACTORY).
+ */
+public final class PieceTableEditable implements Editable {
+
+    public static final Editable.Factory FACTORY = new Editable.Factory() {
+        @Override
+        public Editable newEditable(CharSequence source) {
+            return new PieceTableEditable(source);
+        }
+    };
+
+    private static final InputFilter[] NO_FILTERS = new InputFilter[0];
+
+    private final PieceTable mText;
+    private final SpanTree mSpans = new SpanTree();
+    private InputFilter[] mFilters = NO_FILTERS;
+    private int mSpanWatcherCount;
+
+    public PieceTableEditable(CharSequence source) {
+        this(source, 0, source.length());
+    }
+
+    public PieceTableEditable(CharSequence source, int start, int end) {
+        mText = new PieceTable(source, start, end);
+        if (source instanceof Spanned) copySpans((Spanned) source, start, end, 0);
+    }
+
+    // the spans of source that are in [start, end), moved to destOffset
+    private void copySpans(Spanned source, int start, int end, int destOffset) {
+        Object[] spans = source.getSpans(start, end, Object.class);
+        for (Object span : spans) {
+            if (span instanceof NoCopySpan) continue;
+            int spanStart = Math.max(source.getSpanStart(span), start);
+            int spanEnd = Math.min(source.getSpanEnd(span), end);
+            if (mSpans.getStart(span) >= 0) continue;
+            setSpan(span, spanStart - start + destOffset, spanEnd - start + destOffset,
+                    source.getSpanFlags(span));
+        }
+    }
+
+    private void checkRange(String operation, int start, int end) {
+        if (start < 0 || start > end || end > length())
+            throw new IndexOutOfBoundsException(operation + " " + start + ", " + end
+                    + " of length " + length());
+    }
+
+    @Override
+    public PieceTableEditable replace(int st, int en, CharSequence source, int start, int end) {
+        checkRange("replace", st, en);
+        for (InputFilter filter : mFilters) {
+            CharSequence filtered = filter.filter(source, start, end, this, st, en);
+            if (filtered != null) {
+                source = filtered;
+                start = 0;
+                end = filtered.length();
+            }
+        }
+        if (source == this) {
+            source = new PieceTableEditable(source, start, end);
+            end -= start;
+            start = 0;
+        }
+
+        final int before = en - st;
+        final int after = end - start;
+        TextWatcher[] watchers = getSpans(st, en, TextWatcher.class);
+        for (TextWatcher watcher : watchers) {
+            watcher.beforeTextChanged(this, st, before, after);
+        }
+
+        mText.replace(st, en, source, start, end);
+        List<SpanTree.Change> changes = mSpans.replace(st, en, after, mSpanWatcherCount > 0);
+        for (SpanTree.Change change : changes) {
+            if (change.isRemoved) {
+                if (change.what instanceof SpanWatcher) mSpanWatcherCount--;
+                sendSpanRemoved(change.what, change.oldStart, change.oldEnd);
+            } else {
+                sendSpanChanged(change.what, change.oldStart, change.oldEnd,
+                        mSpans.getStart(change.what), mSpans.getEnd(change.what));
+            }
+        }
+        if (source instanceof Spanned) copySpans((Spanned) source, start, end, st);
+
+        for (TextWatcher watcher : watchers) {
+            watcher.onTextChanged(this, st, before, after);
+        }
+        for (TextWatcher watcher : watchers) {
+            watcher.afterTextChanged(this);
+        }
+        return this;
+    }
+
+    @Override
+    public PieceTableEditable replace(int st, int en, CharSequence text) {
+        return replace(st, en, text, 0, text.length());
+    }
+
+    @Override
+    public PieceTableEditable insert(int where, CharSequence text, int start, int end) {
+        return replace(where, where, text, start, end);
+    }
+
+    @Override
+    public PieceTableEditable insert(int where, CharSequence text) {
+        return replace(where, where, text, 0, text.length());
+    }
+
+    @Override
+    public PieceTableEditable delete(int st, int en) {
+        return replace(st, en, "", 0, 0);
+    }
+
+    @NonNull
+    @Override
+    public PieceTableEditable append(CharSequence text) {
+        return replace(length(), length(), text, 0, text.length());
+    }
+
+    @NonNull
+    @Override
+    public PieceTableEditable append(CharSequence text, int start, int end) {
+        return replace(length(), length(), text, start, end);
+    }
+
+    @NonNull
+    @Override
+    public PieceTableEditable append(char text) {
+        return append(String.valueOf(text));
+    }
+
+    @Override
+    public void clear() {
+        replace(0, length(), "", 0, 0);
+    }
+
+    @Override
+    public void clearSpans() {
+        if (mSpanWatcherCount == 0) {
+            mSpans.clear();
+            return;
+        }
+        // like SpannableStringBuilder the last span is removed first, so the
+        // watchers are told about the spans that were added after them
+        Object[] spans = mSpans.getAll();
+        for (int i = spans.length - 1; i >= 0; i--) {
+            removeSpan(spans[i]);
+        }
+    }
+
+    @Override
+    public void setFilters(InputFilter[] filters) {
+        if (filters == null) throw new IllegalArgumentException("filters is null");
+        mFilters = filters;
+    }
+
+    @Override
+    public InputFilter[] getFilters() {
+        return mFilters;
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dest, int destoff) {
+        mText.getChars(start, end, dest, destoff);
+    }
+
+    @Override
+    public void setSpan(Object what, int start, int end, int flags) {
+        checkRange("setSpan", start, end);
+        // like SpannableStringBuilder, which refuses these
+        if (start == end && (flags & Spanned.SPAN_POINT_MARK_MASK) == Spanned.SPAN_EXCLUSIVE_EXCLUSIVE)
+            return;
+        int oldStart = mSpans.getStart(what);
+        int oldEnd = mSpans.getEnd(what);
+        mSpans.put(what, start, end, flags);
+        if (oldStart < 0) {
+            if (what instanceof SpanWatcher) mSpanWatcherCount++;
+            for (SpanWatcher watcher : getSpans(start, end, SpanWatcher.class)) {
+                watcher.onSpanAdded(this, what, start, end);
+            }
+        } else {
+            sendSpanChanged(what, oldStart, oldEnd, start, end);
+        }
+    }
+
+    @Override
+    public void removeSpan(Object what) {
+        int start = mSpans.getStart(what);
+        int end = mSpans.getEnd(what);
+        if (!mSpans.remove(what)) return;
+        if (what instanceof SpanWatcher) mSpanWatcherCount--;
+        sendSpanRemoved(what, start, end);
+    }
+
+    private void sendSpanChanged(Object what, int oldStart, int oldEnd, int start, int end) {
+        if (mSpanWatcherCount == 0 || (oldStart == start && oldEnd == end)) return;
+        int from = Math.min(oldStart, start);
+        int to = Math.min(Math.max(oldEnd, end), length());
+        for (SpanWatcher watcher : getSpans(from, to, SpanWatcher.class)) {
+            watcher.onSpanChanged(this, what, oldStart, oldEnd, start, end);
+        }
+    }
+
+    private void sendSpanRemoved(Object what, int start, int end) {
+        if (mSpanWatcherCount == 0) return;
+        for (SpanWatcher watcher : getSpans(start, end, SpanWatcher.class)) {
+            watcher.onSpanRemoved(this, what, start, end);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T[] getSpans(int start, int end, Class<T> type) {
+        if (type == null) return (T[]) new Object[0];
+        List<Object> spans = mSpans.getSpans(start, end, type);
+        return spans.toArray((T[]) Array.newInstance(type, spans.size()));
+    }
+
+    @Override
+    public int getSpanStart(Object tag) {
+        return mSpans.getStart(tag);
+    }
+
+    @Override
+    public int getSpanEnd(Object tag) {
+        return mSpans.getEnd(tag);
+    }
+
+    @Override
+    public int getSpanFlags(Object tag) {
+        return mSpans.getFlags(tag);
+    }
+
+    @Override
+    public int nextSpanTransition(int start, int limit, Class type) {
+        if (type == null) type = Object.class;
+        return mSpans.nextSpanTransition(start, limit, type);
+    }
+
+    @Override
+    public int length() {
+        return mText.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return mText.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        checkRange("subSequence", start, end);
+        return new PieceTableEditable(this, start, end);
+    }
+
+    @Override
+    @NonNull
+    public String toString() {
+        return mText.toString();
+    }
+}
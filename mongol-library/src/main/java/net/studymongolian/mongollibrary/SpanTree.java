@@ -0,0 +1,424 @@
+package net.studymongolian.mongollibrary;
+
+import android.text.Spanned;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+// The spans of a PieceTableEditable, with the same meaning of the flags as in
+// SpannableStringBuilder.
+//
+// The spans are the nodes of a treap ordered by start (and then by the order
+// they were added in). Each node knows the largest end in its subtree, so the
+// spans at a position are found without looking at the others. When text is
+// replaced only the spans that touch the replaced range are moved one by one.
+// All spans after it are moved at once by a shift that is kept at the root of
+// their subtree and only passed down to the children when they are visited.
+// So an edit takes O(log n) time plus the time for the spans that it touches.
+final class SpanTree {
+
+    private static final int MARK = 1;
+    private static final int START_MASK = 0xF0;
+    private static final int END_MASK = 0x0F;
+    private static final int START_SHIFT = 4;
+
+    private static final class Span {
+        final Object what;
+        final long order;
+        int flags;
+        // start and end are right once all shifts of the ancestors are added
+        int start;
+        int end;
+        int maxEnd;
+        int shift; // not yet added to the children
+        final int priority;
+        Span left;
+        Span right;
+        Span parent;
+
+        Span(Object what, long order, int priority) {
+            this.what = what;
+            this.order = order;
+            this.priority = priority;
+        }
+    }
+
+    private static final Comparator<Span> SPAN_ORDER = new Comparator<Span>() {
+        @Override
+        public int compare(Span span1, Span span2) {
+            int priority1 = span1.flags & Spanned.SPAN_PRIORITY;
+            int priority2 = span2.flags & Spanned.SPAN_PRIORITY;
+            if (priority1 != priority2) return (priority1 > priority2) ? -1 : 1;
+            return (span1.order < span2.order) ? -1 : (span1.order == span2.order ? 0 : 1);
+        }
+    };
+
+    private static final Comparator<Span> ADDED_ORDER = new Comparator<Span>() {
+        @Override
+        public int compare(Span span1, Span span2) {
+            return (span1.order < span2.order) ? -1 : (span1.order == span2.order ? 0 : 1);
+        }
+    };
+
+    private final IdentityHashMap<Object, Span> mSpans = new IdentityHashMap<>();
+    private Span mRoot;
+    private long mNextOrder;
+    private int mRandom = 0x6D2B79F5;
+
+    // the second tree of the last split()
+    private Span mSplitRight;
+
+    int size() {
+        return mSpans.size();
+    }
+
+    /**
+     * Adds what, or moves it if it is already here.
+     */
+    void put(Object what, int start, int end, int flags) {
+        Span span = mSpans.get(what);
+        long order;
+        if (span != null) {
+            order = span.order;
+            span.start = getStart(span);
+            mRoot = remove(mRoot, span);
+        } else {
+            order = mNextOrder++;
+        }
+        span = new Span(what, order, nextPriority());
+        span.start = start;
+        span.end = end;
+        span.flags = flags;
+        mSpans.put(what, span);
+        insert(span);
+    }
+
+    /**
+     * @return whether what was here
+     */
+    boolean remove(Object what) {
+        Span span = mSpans.remove(what);
+        if (span == null) return false;
+        // the position has to be right for finding the span by it
+        span.start = getStart(span);
+        mRoot = remove(mRoot, span);
+        return true;
+    }
+
+    /**
+     * @return all spans in the order that they were added
+     */
+    Object[] getAll() {
+        List<Span> spans = new ArrayList<>(mSpans.values());
+        Collections.sort(spans, ADDED_ORDER);
+        Object[] result = new Object[spans.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = spans.get(i).what;
+        }
+        return result;
+    }
+
+    void clear() {
+        mSpans.clear();
+        mRoot = null;
+    }
+
+    /**
+     * @return the start of what, or -1 if it is not here
+     */
+    int getStart(Object what) {
+        Span span = mSpans.get(what);
+        return (span == null) ? -1 : getStart(span);
+    }
+
+    int getEnd(Object what) {
+        Span span = mSpans.get(what);
+        if (span == null) return -1;
+        return span.end + getAncestorShift(span);
+    }
+
+    int getFlags(Object what) {
+        Span span = mSpans.get(what);
+        return (span == null) ? 0 : span.flags;
+    }
+
+    /**
+     * Finds the spans of a kind that overlap [start, end] in the same way as
+     * SpannableStringBuilder.getSpans(), in the same order: by priority and
+     * then in the order that they were added.
+     */
+    List<Object> getSpans(int start, int end, Class<?> kind) {
+        List<Span> spans = new ArrayList<>();
+        collect(mRoot, start, end, kind, spans);
+        Collections.sort(spans, SPAN_ORDER);
+        List<Object> result = new ArrayList<>(spans.size());
+        for (Span span : spans) {
+            result.add(span.what);
+        }
+        return result;
+    }
+
+    /**
+     * @return the first start or end of a span of kind after start and before
+     * limit, or limit if there is none
+     */
+    int nextSpanTransition(int start, int limit, Class<?> kind) {
+        return nextTransition(mRoot, start, limit, kind);
+    }
+
+    /**
+     * A span that an edit moved or removed, and where it was before the edit.
+     */
+    static final class Change {
+        final Object what;
+        final int oldStart;
+        final int oldEnd;
+        final boolean isRemoved;
+
+        Change(Object what, int oldStart, int oldEnd, boolean isRemoved) {
+            this.what = what;
+            this.oldStart = oldStart;
+            this.oldEnd = oldEnd;
+            this.isRemoved = isRemoved;
+        }
+    }
+
+    /**
+     * Moves the spans for text [start, end) that is replaced by newLength chars.
+     *
+     * @param withShifted whether to also return the spans after the edit that
+     *                    were only shifted, which takes time for each of them
+     * @return the spans that moved and the spans that became empty and were
+     * removed
+     */
+    List<Change> replace(int start, int end, int newLength, boolean withShifted) {
+        List<Span> touched = new ArrayList<>();
+        collectTouching(mRoot, start, end, touched);
+        for (Span span : touched) {
+            mRoot = remove(mRoot, span);
+        }
+
+        List<Change> changes = new ArrayList<>(0);
+        List<Change> shiftedChanges = new ArrayList<>(0);
+        int shift = newLength - (end - start);
+        if (shift != 0) {
+            Span before = split(mRoot, end + 1, Long.MIN_VALUE);
+            Span after = mSplitRight;
+            mSplitRight = null;
+            addShift(after, shift);
+            if (withShifted) {
+                List<Span> shifted = new ArrayList<>();
+                collectTouching(after, Integer.MIN_VALUE, Integer.MAX_VALUE, shifted);
+                for (Span span : shifted) {
+                    // span.start is only the position until the tree is changed again
+                    shiftedChanges.add(new Change(
+                            span.what, span.start - shift, span.end - shift, false));
+                }
+            }
+            mRoot = merge(before, after);
+            if (mRoot != null) mRoot.parent = null;
+        }
+
+        for (Span span : touched) {
+            int oldStart = span.start;
+            int oldEnd = span.end;
+            int newStart = movePosition(oldStart, (span.flags & START_MASK) >> START_SHIFT,
+                    start, end, newLength);
+            int newEnd = movePosition(oldEnd, span.flags & END_MASK, start, end, newLength);
+            if (newEnd < newStart) newStart = newEnd;
+            if (newStart == newEnd && oldStart != oldEnd && end > start
+                    && (span.flags & Spanned.SPAN_POINT_MARK_MASK) == Spanned.SPAN_EXCLUSIVE_EXCLUSIVE) {
+                mSpans.remove(span.what);
+                changes.add(new Change(span.what, oldStart, oldEnd, true));
+                continue;
+            }
+            span.start = newStart;
+            span.end = newEnd;
+            insert(span);
+            if (newStart != oldStart || newEnd != oldEnd) {
+                changes.add(new Change(span.what, oldStart, oldEnd, false));
+            }
+        }
+        changes.addAll(shiftedChanges);
+        return changes;
+    }
+
+    // A POINT moves along with text that is inserted at it and a MARK stays
+    // before it. In replaced text a POINT goes to the end and a MARK to the
+    // start, except that the ends of the range stay where they are.
+    private static int movePosition(int position, int flag, int start, int end, int newLength) {
+        if (position < start) return position;
+        if (position > end || (position == end && end > start))
+            return position + newLength - (end - start);
+        if (position == start && end > start) return start;
+        return (flag == MARK) ? start : start + newLength;
+    }
+
+    private int nextPriority() {
+        // xorshift
+        mRandom ^= mRandom << 13;
+        mRandom ^= mRandom >>> 17;
+        mRandom ^= mRandom << 5;
+        return mRandom;
+    }
+
+    private static int getStart(Span span) {
+        return span.start + getAncestorShift(span);
+    }
+
+    private static int getAncestorShift(Span span) {
+        int shift = 0;
+        for (Span ancestor = span.parent; ancestor != null; ancestor = ancestor.parent) {
+            shift += ancestor.shift;
+        }
+        return shift;
+    }
+
+    private static void addShift(Span span, int shift) {
+        if (span == null) return;
+        span.start += shift;
+        span.end += shift;
+        span.maxEnd += shift;
+        span.shift += shift;
+    }
+
+    private static void pushShift(Span span) {
+        if (span.shift == 0) return;
+        addShift(span.left, span.shift);
+        addShift(span.right, span.shift);
+        span.shift = 0;
+    }
+
+    private static void update(Span span) {
+        int maxEnd = span.end;
+        if (span.left != null) {
+            span.left.parent = span;
+            maxEnd = Math.max(maxEnd, span.left.maxEnd);
+        }
+        if (span.right != null) {
+            span.right.parent = span;
+            maxEnd = Math.max(maxEnd, span.right.maxEnd);
+        }
+        span.maxEnd = maxEnd;
+    }
+
+    private static boolean isBefore(Span span, int start, long order) {
+        return span.start < start || (span.start == start && span.order < order);
+    }
+
+    // Returns the tree of the spans before (start, order) and leaves the
+    // others in mSplitRight. The parents of the two roots are not cleared.
+    private Span split(Span span, int start, long order) {
+        if (span == null) {
+            mSplitRight = null;
+            return null;
+        }
+        pushShift(span);
+        if (isBefore(span, start, order)) {
+            span.right = split(span.right, start, order);
+            update(span);
+            return span;
+        }
+        Span left = split(span.left, start, order);
+        span.left = mSplitRight;
+        update(span);
+        mSplitRight = span;
+        return left;
+    }
+
+    private static Span merge(Span left, Span right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            pushShift(left);
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        pushShift(right);
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    // span.start has to be its position with all shifts
+    private void insert(Span span) {
+        span.left = null;
+        span.right = null;
+        span.parent = null;
+        span.shift = 0;
+        span.maxEnd = span.end;
+        Span before = split(mRoot, span.start, span.order);
+        Span after = mSplitRight;
+        mSplitRight = null;
+        mRoot = merge(merge(before, span), after);
+        mRoot.parent = null;
+    }
+
+    // span.start has to be its position with all shifts
+    private static Span remove(Span tree, Span span) {
+        if (tree == null) return null;
+        pushShift(tree);
+        Span result;
+        if (tree == span) {
+            result = merge(tree.left, tree.right);
+        } else {
+            if (isBefore(span, tree.start, tree.order)) {
+                tree.left = remove(tree.left, span);
+            } else {
+                tree.right = remove(tree.right, span);
+            }
+            update(tree);
+            result = tree;
+        }
+        if (result != null) result.parent = null;
+        return result;
+    }
+
+    private static void collect(Span span, int start, int end, Class<?> kind, List<Span> out) {
+        if (span == null || span.maxEnd < start) return;
+        pushShift(span);
+        collect(span.left, start, end, kind, out);
+        if (span.start > end) return;
+        if (overlaps(span.start, span.end, start, end) && kind.isInstance(span.what)) {
+            out.add(span);
+        }
+        collect(span.right, start, end, kind, out);
+    }
+
+    // like SpannableStringBuilder, spans and ranges that are not empty don't
+    // overlap if they only touch
+    private static boolean overlaps(int spanStart, int spanEnd, int start, int end) {
+        if (spanStart > end || spanEnd < start) return false;
+        if (spanStart != spanEnd && start != end) {
+            if (spanStart == end || spanEnd == start) return false;
+        }
+        return true;
+    }
+
+    // the spans with start <= end and span end >= start
+    private static void collectTouching(Span span, int start, int end, List<Span> out) {
+        if (span == null || span.maxEnd < start) return;
+        pushShift(span);
+        collectTouching(span.left, start, end, out);
+        if (span.start > end) return;
+        if (span.end >= start) out.add(span);
+        collectTouching(span.right, start, end, out);
+    }
+
+    private static int nextTransition(Span span, int start, int limit, Class<?> kind) {
+        // a span can't end before it starts, so nothing here is after start
+        if (span == null || span.maxEnd <= start) return limit;
+        pushShift(span);
+        limit = nextTransition(span.left, start, limit, kind);
+        if (span.start >= limit) return limit;
+        if (kind.isInstance(span.what)) {
+            if (span.start > start) limit = span.start;
+            else if (span.end > start && span.end < limit) limit = span.end;
+        }
+        return nextTransition(span.right, start, limit, kind);
+    }
+}
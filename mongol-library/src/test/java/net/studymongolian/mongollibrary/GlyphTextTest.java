@@ -0,0 +1,167 @@
+package net.studymongolian.mongollibrary;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GlyphTextTest {
+
+    private static final char[] CHARS = {
+            MongolCode.Uni.A, MongolCode.Uni.E, MongolCode.Uni.I, MongolCode.Uni.O,
+            MongolCode.Uni.U, MongolCode.Uni.NA, MongolCode.Uni.BA, MongolCode.Uni.GA,
+            MongolCode.Uni.MA, MongolCode.Uni.LA, MongolCode.Uni.FVS1, MongolCode.Uni.MVS,
+            MongolCode.Uni.NNBS, MongolCode.Uni.ZWJ, MongolCode.Uni.MONGOLIAN_COMMA, ' ', 'a'};
+
+    @Test
+    public void deferred_rendersOnlyWhatIsRead() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append("ᠮᠣᠩᠭᠣᠯ ");
+        }
+        PieceTableEditable unicode = new PieceTableEditable(builder);
+        GlyphText glyphs = new GlyphText(unicode, MongolCode.INSTANCE);
+        glyphs.setDeferRendering(true);
+        glyphs.setText(unicode, false);
+        assertFalse(glyphs.isRendered(0));
+
+        char first = glyphs.charAt(0);
+        assertTrue(glyphs.isRendered(0));
+        assertFalse(glyphs.isRendered(unicode.length() - 1));
+        String expected = MongolCode.INSTANCE.unicodeToMenksoftSameIndex(builder);
+        assertEquals(expected.charAt(0), first);
+        assertEquals(expected, glyphs.toString());
+    }
+
+    @Test
+    public void lazy_rendersOnlyWhatIsRead() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append("ᠮᠣᠩᠭᠣᠯ ");
+        }
+        PieceTableEditable unicode = new PieceTableEditable(builder);
+        GlyphText glyphs = new GlyphText(unicode, MongolCode.INSTANCE);
+        glyphs.setLazy(true);
+        glyphs.setText(unicode, false);
+        assertFalse(glyphs.isRendered(0));
+
+        char[] chars = new char[10];
+        glyphs.getChars(0, 10, chars, 0);
+        assertTrue(glyphs.isRendered(0));
+        assertFalse(glyphs.isRendered(unicode.length() - 1));
+
+        // the end of a batch doesn't render what wasn't read
+        glyphs.setDeferRendering(true);
+        unicode.delete(0, 1);
+        glyphs.replace(0, 1, 0);
+        glyphs.setDeferRendering(false);
+        assertFalse(glyphs.isRendered(0));
+        assertFalse(glyphs.isRendered(unicode.length() - 1));
+        assertEquals(MongolCode.INSTANCE.unicodeToMenksoftSameIndex(unicode), glyphs.toString());
+    }
+
+    @Test
+    public void randomEdits_sameAsRenderingEverything() {
+        randomEdits(false, true);
+        randomEdits(false, false);
+        randomEdits(true, false);
+    }
+
+    private static void randomEdits(boolean isLazy, boolean isDeferred) {
+        Random random = new Random(5);
+        PieceTableEditable unicode = new PieceTableEditable(randomText(random, 3000));
+        GlyphText glyphs = new GlyphText(unicode, MongolCode.INSTANCE);
+        glyphs.setLazy(isLazy);
+        glyphs.setDeferRendering(isDeferred);
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(unicode.length() + 1);
+            int end = start + random.nextInt(Math.min(5, unicode.length() - start) + 1);
+            String insert = randomText(random, random.nextInt(4));
+            unicode.replace(start, end, insert);
+            glyphs.replace(start, end, insert.length());
+            assertEquals(unicode.length(), glyphs.length());
+
+            // read a little now and then, like a layout would
+            if (random.nextInt(10) == 0 && unicode.length() > 0) {
+                int index = random.nextInt(unicode.length());
+                String expected = MongolCode.INSTANCE.unicodeToMenksoftSameIndex(unicode);
+                assertEquals(expected.charAt(index), glyphs.charAt(index));
+            }
+        }
+        String expected = MongolCode.INSTANCE.unicodeToMenksoftSameIndex(unicode);
+        assertEquals(expected, glyphs.toString());
+        char[] chars = new char[expected.length()];
+        glyphs.getChars(0, chars.length, chars, 0);
+        assertEquals(expected, new String(chars));
+    }
+
+    @Test
+    public void notDeferred_rendersEdits() {
+        PieceTableEditable unicode = new PieceTableEditable("ᠮᠣᠩᠭᠣᠯ ᠪᠢᠴᠢᠭ");
+        GlyphText glyphs = new GlyphText(unicode, MongolCode.INSTANCE);
+        assertTrue(glyphs.isRendered(unicode.length() - 1));
+
+        unicode.insert(6, "ᠤᠨ");
+        glyphs.replace(6, 6, 2);
+        for (int i = 0; i < unicode.length(); i++) {
+            assertTrue(glyphs.isRendered(i));
+        }
+        assertEquals(MongolCode.INSTANCE.unicodeToMenksoftSameIndex(unicode), glyphs.toString());
+    }
+
+    @Test
+    public void setDeferRendering_falseRendersEdits() {
+        PieceTableEditable unicode = new PieceTableEditable("ᠮᠣᠩᠭᠣᠯ ᠪᠢᠴᠢᠭ");
+        GlyphText glyphs = new GlyphText(unicode, MongolCode.INSTANCE);
+        glyphs.setDeferRendering(true);
+        unicode.delete(0, 1);
+        glyphs.replace(0, 1, 0);
+        unicode.insert(5, "ᠤᠨ");
+        glyphs.replace(5, 5, 2);
+        assertFalse(glyphs.isRendered(0));
+        assertFalse(glyphs.isRendered(6));
+        // the other word wasn't changed
+        assertTrue(glyphs.isRendered(unicode.length() - 1));
+
+        glyphs.setDeferRendering(false);
+        assertTrue(glyphs.isRendered(0));
+        assertTrue(glyphs.isRendered(6));
+        assertEquals(MongolCode.INSTANCE.unicodeToMenksoftSameIndex(unicode), glyphs.toString());
+    }
+
+    @Test
+    public void setLazy_falseRendersEverything() {
+        PieceTableEditable unicode = new PieceTableEditable("ᠮᠣᠩᠭᠣᠯ ᠪᠢᠴᠢᠭ");
+        GlyphText glyphs = new GlyphText(unicode, MongolCode.INSTANCE);
+        glyphs.setLazy(true);
+        glyphs.setText(unicode, false);
+        assertFalse(glyphs.isRendered(0));
+
+        glyphs.setLazy(false);
+        assertTrue(glyphs.isRendered(0));
+        assertTrue(glyphs.isRendered(unicode.length() - 1));
+    }
+
+    @Test
+    public void spans_comeFromUnicodeText() {
+        PieceTableEditable unicode = new PieceTableEditable("ᠮᠣ ᠮᠣ");
+        GlyphText glyphs = new GlyphText(unicode, MongolCode.INSTANCE);
+        Object span = new Object();
+        unicode.setSpan(span, 3, 5, android.text.Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        assertEquals(3, glyphs.getSpanStart(span));
+        assertEquals(5, glyphs.getSpanEnd(span));
+        assertEquals(1, glyphs.getSpans(0, 5, Object.class).length);
+        assertEquals(3, glyphs.nextSpanTransition(0, 5, Object.class));
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(CHARS[random.nextInt(CHARS.length)]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package net.studymongolian.mongollibrary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntervalSetTest {
+
+    @Test
+    public void add_mergesTouchingRanges() {
+        IntervalSet set = new IntervalSet();
+        set.add(0, 2);
+        set.add(4, 6);
+        assertEquals(2, set.getRangeCount());
+        set.add(2, 4);
+        assertEquals(1, set.getRangeCount());
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(5));
+        assertFalse(set.contains(6));
+    }
+
+    @Test
+    public void remove_splitsRange() {
+        IntervalSet set = new IntervalSet();
+        set.add(0, 10);
+        set.remove(3, 5);
+        assertEquals(2, set.getRangeCount());
+        assertTrue(set.contains(2));
+        assertFalse(set.contains(3));
+        assertFalse(set.contains(4));
+        assertTrue(set.contains(5));
+    }
+
+    @Test
+    public void nextMissingAndNextContained() {
+        IntervalSet set = new IntervalSet();
+        set.add(2, 4);
+        set.add(6, 8);
+        assertEquals(0, set.nextMissing(0, 10));
+        assertEquals(4, set.nextMissing(2, 10));
+        assertEquals(3, set.nextMissing(2, 3));
+        assertEquals(2, set.nextContained(0, 10));
+        assertEquals(3, set.nextContained(3, 10));
+        assertEquals(6, set.nextContained(4, 10));
+        assertEquals(5, set.nextContained(4, 5));
+        assertEquals(10, set.nextContained(8, 10));
+    }
+
+    @Test
+    public void replace_deleteJoinsRanges() {
+        IntervalSet set = new IntervalSet();
+        set.add(0, 10);
+        set.replace(3, 5, 0);
+        assertEquals(1, set.getRangeCount());
+        assertEquals(8, set.nextMissing(0, 20));
+    }
+
+    @Test
+    public void randomOperations_sameAsList() {
+        Random random = new Random(3);
+        IntervalSet set = new IntervalSet();
+        List<Boolean> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(false);
+        }
+        for (int i = 0; i < 5000; i++) {
+            int start = random.nextInt(expected.size() + 1);
+            int end = start + random.nextInt(Math.min(20, expected.size() - start) + 1);
+            switch (random.nextInt(3)) {
+                case 0:
+                    set.add(start, end);
+                    for (int k = start; k < end; k++) expected.set(k, true);
+                    break;
+                case 1:
+                    set.remove(start, end);
+                    for (int k = start; k < end; k++) expected.set(k, false);
+                    break;
+                default:
+                    int newLength = random.nextInt(20);
+                    set.replace(start, end, newLength);
+                    for (int k = start; k < end; k++) expected.remove(start);
+                    for (int k = 0; k < newLength; k++) expected.add(start, false);
+            }
+            int ranges = 0;
+            for (int k = 0; k < expected.size(); k++) {
+                assertEquals(expected.get(k), set.contains(k));
+                if (expected.get(k) && (k == 0 || !expected.get(k - 1))) ranges++;
+            }
+            assertEquals(ranges, set.getRangeCount());
+        }
+    }
+}
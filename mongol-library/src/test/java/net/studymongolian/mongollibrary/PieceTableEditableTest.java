@@ -0,0 +1,285 @@
+package net.studymongolian.mongollibrary;
+
+import android.text.Editable;
+import android.text.InputFilter;
+import android.text.SpanWatcher;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.TextWatcher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+// These only use the Android interfaces and constants, so they run on the JVM.
+public class PieceTableEditableTest {
+
+    @Test
+    public void replace_randomEdits_sameAsStringBuilder() {
+        Random random = new Random(1);
+        StringBuilder expected = new StringBuilder("ᠮᠣᠩᠭᠣᠯ");
+        PieceTableEditable text = new PieceTableEditable(expected);
+        for (int i = 0; i < 5000; i++) {
+            int start = random.nextInt(expected.length() + 1);
+            int end = start + random.nextInt(Math.min(10, expected.length() - start) + 1);
+            String insert = randomText(random, random.nextInt(8));
+            expected.replace(start, end, insert);
+            text.replace(start, end, insert);
+            assertEquals(expected.length(), text.length());
+        }
+        assertEquals(expected.toString(), text.toString());
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals(expected.charAt(i), text.charAt(i));
+        }
+        char[] chars = new char[expected.length()];
+        text.getChars(0, chars.length, chars, 0);
+        assertEquals(expected.toString(), new String(chars));
+        assertEquals(expected.substring(3, 9), text.subSequence(3, 9).toString());
+    }
+
+    @Test
+    public void replace_sourceIsItself() {
+        PieceTableEditable text = new PieceTableEditable("abc");
+        text.append(text, 0, 2);
+        assertEquals("abcab", text.toString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void replace_outOfRange() {
+        new PieceTableEditable("abc").replace(2, 4, "x");
+    }
+
+    @Test
+    public void setSpan_pointAndMark() {
+        PieceTableEditable text = new PieceTableEditable("abcdef");
+        Object exclusive = new Object();
+        Object inclusive = new Object();
+        Object point = new Object();
+        Object mark = new Object();
+        text.setSpan(exclusive, 2, 4, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(inclusive, 2, 4, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        text.setSpan(point, 4, 4, Spanned.SPAN_POINT_POINT);
+        text.setSpan(mark, 4, 4, Spanned.SPAN_MARK_MARK);
+
+        text.insert(4, "xx");
+        assertSpan(text, exclusive, 2, 4);
+        assertSpan(text, inclusive, 2, 6);
+        assertSpan(text, point, 6, 6);
+        assertSpan(text, mark, 4, 4);
+
+        text.insert(2, "y");
+        assertSpan(text, exclusive, 3, 5);
+        assertSpan(text, inclusive, 2, 7);
+        assertSpan(text, point, 7, 7);
+        assertSpan(text, mark, 5, 5);
+    }
+
+    @Test
+    public void delete_removesEmptyExclusiveSpans() {
+        PieceTableEditable text = new PieceTableEditable("abcdef");
+        Object exclusive = new Object();
+        Object inclusive = new Object();
+        Object after = new Object();
+        text.setSpan(exclusive, 2, 4, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(inclusive, 2, 4, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        text.setSpan(after, 5, 6, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.delete(1, 4);
+        assertEquals(-1, text.getSpanStart(exclusive));
+        assertSpan(text, inclusive, 1, 1);
+        assertSpan(text, after, 2, 3);
+    }
+
+    @Test
+    public void getSpans_overlapAndOrder() {
+        PieceTableEditable text = new PieceTableEditable("abcdefgh");
+        String first = "first";
+        String second = "second";
+        String important = "important";
+        Integer other = 1;
+        text.setSpan(first, 0, 3, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(second, 2, 6, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(important, 3, 5,
+                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE | (1 << Spanned.SPAN_PRIORITY_SHIFT));
+        text.setSpan(other, 2, 4, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+        assertArrayEquals(new String[]{important, first, second},
+                text.getSpans(0, 8, String.class));
+        // spans that only touch the range are not in it
+        assertArrayEquals(new String[0], text.getSpans(6, 8, String.class));
+        assertArrayEquals(new String[]{second}, text.getSpans(5, 8, String.class));
+        assertArrayEquals(new String[]{first, second}, text.getSpans(2, 2, String.class));
+        assertEquals(4, text.getSpans(0, 8, Object.class).length);
+        assertEquals(0, text.getSpans(0, 8, Long.class).length);
+    }
+
+    @Test
+    public void nextSpanTransition() {
+        PieceTableEditable text = new PieceTableEditable("abcdefgh");
+        text.setSpan("a", 1, 3, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan("b", 2, 6, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(1, 4, 5, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        assertEquals(1, text.nextSpanTransition(0, 8, String.class));
+        assertEquals(2, text.nextSpanTransition(1, 8, String.class));
+        assertEquals(3, text.nextSpanTransition(2, 8, String.class));
+        assertEquals(6, text.nextSpanTransition(3, 8, String.class));
+        assertEquals(8, text.nextSpanTransition(6, 8, String.class));
+        assertEquals(4, text.nextSpanTransition(3, 8, null));
+    }
+
+    @Test
+    public void manySpans_sameAsSlowList() {
+        Random random = new Random(7);
+        PieceTableEditable text = new PieceTableEditable(randomText(random, 200));
+        List<Object> spans = new ArrayList<>();
+        List<int[]> ranges = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            int start = random.nextInt(text.length());
+            int end = start + random.nextInt(Math.min(20, text.length() - start) + 1);
+            Object span = new Object();
+            text.setSpan(span, start, end, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+            spans.add(span);
+            ranges.add(new int[]{start, end});
+        }
+        for (int i = 0; i < 1000; i++) {
+            int where = random.nextInt(text.length() + 1);
+            int count = random.nextInt(3) + 1;
+            text.insert(where, randomText(random, count));
+            for (int[] range : ranges) {
+                // INCLUSIVE_INCLUSIVE spans grow with text inserted at their ends
+                if (range[0] > where) range[0] += count;
+                if (range[1] >= where) range[1] += count;
+            }
+        }
+        for (int i = 0; i < spans.size(); i++) {
+            assertSpan(text, spans.get(i), ranges.get(i)[0], ranges.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void replace_notifiesTextWatchers() {
+        PieceTableEditable text = new PieceTableEditable("abc");
+        final StringBuilder calls = new StringBuilder();
+        TextWatcher watcher = new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                calls.append("before ").append(start).append(count).append(after).append(' ');
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                calls.append("on ").append(s).append(' ');
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                calls.append("after");
+            }
+        };
+        text.setSpan(watcher, 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        text.replace(1, 2, "xy");
+        assertEquals("before 112 on axyc after", calls.toString());
+    }
+
+    @Test
+    public void replace_notifiesSpanWatchers() {
+        PieceTableEditable text = new PieceTableEditable("abcdefgh");
+        final StringBuilder calls = new StringBuilder();
+        SpanWatcher watcher = new SpanWatcher() {
+            @Override
+            public void onSpanAdded(Spannable s, Object what, int start, int end) {
+                calls.append("added ").append(what).append(start).append(end).append(' ');
+            }
+
+            @Override
+            public void onSpanRemoved(Spannable s, Object what, int start, int end) {
+                calls.append("removed ").append(what).append(start).append(end).append(' ');
+            }
+
+            @Override
+            public void onSpanChanged(Spannable s, Object what,
+                                      int ostart, int oend, int nstart, int nend) {
+                calls.append("changed ").append(what)
+                        .append(ostart).append(oend).append(nstart).append(nend).append(' ');
+            }
+
+            @Override
+            public String toString() {
+                return "w";
+            }
+        };
+        text.setSpan(watcher, 0, 8, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        text.setSpan("x", 2, 4, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan("y", 5, 6, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan("z", 1, 2, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        assertEquals("added w08 added x24 added y56 added z12 ", calls.toString());
+
+        calls.setLength(0);
+        text.delete(1, 4);
+        assertEquals("changed w0805 removed z12 removed x24 changed y5623 ", calls.toString());
+
+        // a POINT start moves along with the text inserted at it
+        calls.setLength(0);
+        text.insert(2, "ab");
+        assertEquals("changed w0507 changed y2345 ", calls.toString());
+
+        // the watcher is removed last, so it isn't told about itself
+        calls.setLength(0);
+        text.clearSpans();
+        assertEquals("removed y45 ", calls.toString());
+    }
+
+    @Test
+    public void replace_appliesFilters() {
+        PieceTableEditable text = new PieceTableEditable("");
+        text.setFilters(new InputFilter[]{new InputFilter() {
+            @Override
+            public CharSequence filter(CharSequence source, int start, int end,
+                                       Spanned dest, int dstart, int dend) {
+                return source.subSequence(start, end).toString().toUpperCase();
+            }
+        }});
+        text.append("abc");
+        assertEquals("ABC", text.toString());
+    }
+
+    @Test
+    public void factory_copiesSpans() {
+        PieceTableEditable source = new PieceTableEditable("abcdef");
+        Object span = new Object();
+        source.setSpan(span, 1, 3, Spanned.SPAN_EXCLUSIVE_INCLUSIVE);
+        Editable copy = PieceTableEditable.FACTORY.newEditable(source);
+        assertEquals("abcdef", copy.toString());
+        assertSpan(copy, span, 1, 3);
+        assertEquals(Spanned.SPAN_EXCLUSIVE_INCLUSIVE, copy.getSpanFlags(span));
+        assertSame(span, copy.getSpans(0, 6, Object.class)[0]);
+    }
+
+    @Test
+    public void typing_extendsLastPiece() {
+        PieceTable text = new PieceTable("ᠠᠪ", 0, 2);
+        for (int i = 0; i < 1000; i++) {
+            text.replace(1 + i, 1 + i, "ᠡ", 0, 1);
+        }
+        assertEquals(1002, text.length());
+        assertEquals(3, text.getPieceCount());
+    }
+
+    private static void assertSpan(Spanned text, Object span, int start, int end) {
+        assertEquals("start", start, text.getSpanStart(span));
+        assertEquals("end", end, text.getSpanEnd(span));
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('ᠠ' + random.nextInt(0x23)));
+        }
+        return builder.toString();
+    }
+}